@@ -0,0 +1,117 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.TriggerMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public enum BacklogPolicy {
+    /** Every message schedules a build. */
+    ALL("Build for every message"),
+    /** Only the latest messages of a backlog schedule a build. */
+    LATEST("Build for the latest messages only"),
+    /** A backlog schedules a single build carrying all its messages. */
+    AGGREGATE("Single build for all messages");
+
+    public static final String MESSAGE_COUNT = "CI_MESSAGE_COUNT";
+    public static final String MESSAGES = "CI_MESSAGES";
+
+    private final String displayName;
+
+    BacklogPolicy(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public static BacklogPolicy fromString(String value) {
+        for (BacklogPolicy p : values()) {
+            if (p.name().equalsIgnoreCase(value)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the expired messages and the ones older than maxAgeInMs (if
+     * positive), in the order they were received.
+     */
+    public static List<TriggerMessage> dropStale(List<TriggerMessage> messages, long now, long maxAgeInMs) {
+        List<TriggerMessage> fresh = new ArrayList<TriggerMessage>(messages.size());
+        for (TriggerMessage m : messages) {
+            if (!m.isExpired(now) && !m.isOlderThan(now, maxAgeInMs)) {
+                fresh.add(m);
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Turns a batch of messages received together into the parameters of the
+     * builds to schedule, oldest first.
+     *
+     * @param size number of messages kept by {@link #LATEST}
+     */
+    public List<Map<String, String>> apply(List<TriggerMessage> messages, int size) {
+        if (messages.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Map<String, String>> builds = new ArrayList<Map<String, String>>();
+        switch (this) {
+            case LATEST:
+                for (TriggerMessage m : messages.subList(Math.max(0, messages.size() - Math.max(1, size)), messages.size())) {
+                    builds.add(m.getParams());
+                }
+                break;
+            case AGGREGATE:
+                TriggerMessage latest = messages.get(messages.size() - 1);
+                Map<String, String> params = new HashMap<String, String>(latest.getParams());
+                // Strings, whatever they contain: json-lib would turn JSON
+                // bodies into objects.
+                ArrayNode all = new ObjectMapper().createArrayNode();
+                for (TriggerMessage m : messages) {
+                    all.add(m.getParams().get("CI_MESSAGE"));
+                }
+                params.put(MESSAGE_COUNT, Integer.toString(messages.size()));
+                params.put(MESSAGES, all.toString());
+                builds.add(params);
+                break;
+            default:
+                for (TriggerMessage m : messages) {
+                    builds.add(m.getParams());
+                }
+        }
+        return builds;
+    }
+}
@@ -1,6 +1,18 @@
 package com.redhat.jenkins.plugins.ci;
 
+import com.redhat.jenkins.plugins.ci.messaging.MessagingStats;
+import com.redhat.jenkins.plugins.ci.messaging.SpanExporter;
+import com.redhat.jenkins.plugins.ci.messaging.TraceContext;
+import com.redhat.jenkins.plugins.ci.messaging.TraceSpan;
+import com.redhat.jenkins.plugins.ci.messaging.TriggerMessage;
+import hudson.Extension;
 import hudson.model.Cause;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.kohsuke.stapler.export.Exported;
 
@@ -29,9 +41,139 @@ import org.kohsuke.stapler.export.Exported;
  */
 public class CIBuildCause extends Cause {
 
+	static final String STAGE_RECEIVED = "received";
+	static final String STAGE_QUEUED = "queued";
+	static final String STAGE_STARTED = "started";
+
+	private final String providerName;
+	private final String traceparent;
+	private final String parentSpanId;
+	// Stage timestamps in ms, 0 when unknown.
+	private final long published;
+	private final long received;
+	private final long matched;
+	private final long queued;
+	private long started;
+
+	public CIBuildCause() {
+		this(null, null, 0, null, null);
+	}
+
+	/**
+	 * @param message the message that triggered the build, the latest one
+	 * when several did; null if unknown
+	 * @param matched time the trigger accepted the message
+	 * @param trace context of the build, continued by the messages it sends
+	 * @param parentSpanId span of the message that triggered the build, null
+	 * if it carried none
+	 */
+	public CIBuildCause(String providerName, TriggerMessage message, long matched, TraceContext trace,
+			String parentSpanId) {
+		this.providerName = providerName;
+		this.traceparent = trace == null ? null : trace.toString();
+		this.parentSpanId = parentSpanId;
+		this.published = message == null ? 0 : message.getTimestamp();
+		this.received = message == null ? 0 : message.getReceivedTime();
+		this.matched = matched;
+		this.queued = System.currentTimeMillis();
+	}
+
 	@Override
 	@Exported(visibility = 3)
 	public String getShortDescription() {
 		return "Triggered by CI message.";
 	}
+
+	/**
+	 * W3C traceparent of the build, null for builds from before tracing.
+	 */
+	@Exported
+	public String getTraceparent() {
+		return traceparent;
+	}
+
+	public String getParentSpanId() {
+		return parentSpanId;
+	}
+
+	@Exported
+	public String getProviderName() {
+		return providerName;
+	}
+
+	/**
+	 * Time the message was published, per the messaging server.
+	 */
+	@Exported
+	public long getPublished() {
+		return published;
+	}
+
+	@Exported
+	public long getReceived() {
+		return received;
+	}
+
+	/**
+	 * Time the trigger accepted the message, past its selector, deduplication
+	 * and backlog policy.
+	 */
+	@Exported
+	public long getMatched() {
+		return matched;
+	}
+
+	@Exported
+	public long getQueued() {
+		return queued;
+	}
+
+	@Exported
+	public long getStarted() {
+		return started;
+	}
+
+	/**
+	 * Records the latency of the stages reached so far, from the time the
+	 * message was published.
+	 */
+	void recordLatency(String jobName, String... stages) {
+		if (published == 0 || providerName == null) {
+			return;
+		}
+		for (String stage : stages) {
+			long time = stage.equals(STAGE_RECEIVED) ? received : stage.equals(STAGE_QUEUED) ? queued : started;
+			if (time != 0) {
+				MessagingStats.TRIGGER_LATENCY.labels(providerName, jobName, stage).observe((time - published) / 1000.0);
+			}
+		}
+	}
+
+	/**
+	 * Records the start of the triggered builds, and reports the time they
+	 * waited in the queue.
+	 */
+	@Extension
+	public static class StartListener extends RunListener<Run<?, ?>> {
+		@Override
+		public void onStarted(Run<?, ?> run, TaskListener listener) {
+			CIBuildCause cause = run.getCause(CIBuildCause.class);
+			if (cause == null || cause.getQueued() == 0) {
+				return;
+			}
+			cause.started = run.getStartTimeInMillis();
+			cause.recordLatency(run.getParent().getFullName(), STAGE_STARTED);
+			if (!SpanExporter.isEnabled()) {
+				return;
+			}
+			TraceContext trace = TraceContext.parse(cause.getTraceparent());
+			if (trace != null) {
+				Map<String, String> attributes = new LinkedHashMap<String, String>();
+				attributes.put("job", run.getParent().getFullName());
+				attributes.put("build", run.getId());
+				SpanExporter.exportSpan(new TraceSpan(TraceSpan.QUEUE_WAIT, trace, cause.getParentSpanId(),
+						cause.getQueued(), run.getStartTimeInMillis(), attributes));
+			}
+		}
+	}
 }
@@ -1,6 +1,14 @@
 package com.redhat.jenkins.plugins.ci;
+import com.redhat.jenkins.plugins.ci.messaging.Bulkhead;
 import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.MessagingEvents;
+import com.redhat.jenkins.plugins.ci.messaging.MessagingStats;
+import com.redhat.jenkins.plugins.ci.messaging.SpanExporter;
+import com.redhat.jenkins.plugins.ci.messaging.TraceContext;
+import com.redhat.jenkins.plugins.ci.messaging.TraceSpan;
+import com.redhat.jenkins.plugins.ci.messaging.TriggerMessage;
 import hudson.Extension;
+import hudson.model.Action;
 import hudson.model.Item;
 import hudson.model.ParameterValue;
 import hudson.model.AbstractProject;
@@ -14,19 +22,29 @@ import hudson.triggers.TriggerDescriptor;
 import java.io.IOException;
 import java.io.ObjectStreamException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.WeakHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
+import jenkins.util.Timer;
 
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 
 /*
  * The MIT License
@@ -56,7 +74,19 @@ public class CIBuildTrigger extends Trigger<AbstractProject<?, ?>> {
 
 	private String selector;
 	private String providerName;
+	private Integer messageMaxAge;
+	private BacklogPolicy backlogPolicy;
+	private Integer backlogSize;
+	private Integer dedupeWindow;
+	private String dedupeProperty;
+	private Boolean shadow;
 	public static final transient WeakHashMap<String, CITriggerThread> triggerInfo = new WeakHashMap<String, CITriggerThread>();
+	private static final transient Map<String, ScheduledFuture<?>> pendingStops = new HashMap<String, ScheduledFuture<?>>();
+	/** Threads interrupted but maybe not done yet, guarded by triggerInfo. */
+	private static final transient Set<CITriggerThread> stopping = new HashSet<CITriggerThread>();
+	private static final long STOP_GRACE_MILLIS = Long.getLong(CIBuildTrigger.class.getName() + ".stopGraceMillis", 5000);
+	/** Longest the old subscription waits for its replacement to be up. */
+	private static final long HANDOVER_MILLIS = Long.getLong(CIBuildTrigger.class.getName() + ".handoverMillis", 30000);
 	private transient boolean providerUpdated;
 
 	@DataBoundConstructor
@@ -71,6 +101,84 @@ public class CIBuildTrigger extends Trigger<AbstractProject<?, ?>> {
 		this.providerName = providerName;
 	}
 
+	/**
+	 * Messages older than this many minutes are dropped instead of triggering
+	 * a build, 0 keeps all of them.
+	 */
+	public int getMessageMaxAge() {
+		return messageMaxAge == null ? 0 : messageMaxAge;
+	}
+
+	@DataBoundSetter
+	public void setMessageMaxAge(int messageMaxAge) {
+		this.messageMaxAge = messageMaxAge > 0 ? messageMaxAge : null;
+	}
+
+	public BacklogPolicy getBacklogPolicy() {
+		return backlogPolicy == null ? BacklogPolicy.ALL : backlogPolicy;
+	}
+
+	@DataBoundSetter
+	public void setBacklogPolicy(BacklogPolicy backlogPolicy) {
+		this.backlogPolicy = backlogPolicy == BacklogPolicy.ALL ? null : backlogPolicy;
+	}
+
+	public int getBacklogSize() {
+		return backlogSize == null ? 1 : backlogSize;
+	}
+
+	@DataBoundSetter
+	public void setBacklogSize(int backlogSize) {
+		this.backlogSize = backlogSize > 1 ? backlogSize : null;
+	}
+
+	/**
+	 * Number of message IDs remembered to drop redelivered messages, 0 turns
+	 * deduplication off.
+	 */
+	public int getDedupeWindow() {
+		return dedupeWindow == null ? 0 : dedupeWindow;
+	}
+
+	@DataBoundSetter
+	public void setDedupeWindow(int dedupeWindow) {
+		this.dedupeWindow = dedupeWindow > 0 ? dedupeWindow : null;
+	}
+
+	/**
+	 * Message property holding the ID used for deduplication, null for the
+	 * message ID itself.
+	 */
+	public String getDedupeProperty() {
+		return dedupeProperty;
+	}
+
+	@DataBoundSetter
+	public void setDedupeProperty(String dedupeProperty) {
+		this.dedupeProperty = StringUtils.stripToNull(dedupeProperty);
+	}
+
+	/**
+	 * In shadow mode messages are received and matched as usual, but the
+	 * builds are only recorded in the {@link ShadowProjection} of the job.
+	 */
+	public boolean isShadow() {
+		return shadow != null && shadow;
+	}
+
+	@DataBoundSetter
+	public void setShadow(boolean shadow) {
+		this.shadow = shadow ? Boolean.TRUE : null;
+	}
+
+	@Override
+	public Collection<? extends Action> getProjectActions() {
+		if (isShadow() && job != null) {
+			return Collections.singletonList(new ShadowTriggerAction(job));
+		}
+		return Collections.emptyList();
+	}
+
 	@Override
 	public void start(AbstractProject<?, ?> project, boolean newInstance) {
 		super.start(project, newInstance);
@@ -110,7 +218,9 @@ public class CIBuildTrigger extends Trigger<AbstractProject<?, ?>> {
     @Override
 	public void stop() {
 		super.stop();
-		stopTriggerThread();
+		// Jenkins stops the trigger right before starting its replacement on
+		// every job save, so give start() a chance to take over the thread.
+		scheduleStopTriggerThread(job.getFullName());
 	}
 
 	private void startTriggerThread() {
@@ -124,17 +234,42 @@ public class CIBuildTrigger extends Trigger<AbstractProject<?, ?>> {
 		}
 		if (job.isDisabled()) {
             log.info("Job '" + job.getFullName() + "' is disabled, not subscribing.");
+            stopTriggerThread();
         } else {
             try {
-                stopTriggerThread();
 	            JMSMessagingProvider provider = GlobalCIConfiguration.get()
 			            .getProvider(providerName);
+                CITriggerThread current;
+                synchronized (triggerInfo) {
+                    cancelStopTriggerThread(job.getFullName());
+                    current = triggerInfo.get(job.getFullName());
+                }
+                if (current != null && current.isAlive() && current.getProvider() != null
+                        && current.getProvider().isSameSubscription(provider)
+                        && StringUtils.equals(current.getSelector(), selector)) {
+                    log.fine("Provider and selector unchanged, keeping subscription of job '" + job.getFullName() + "'.");
+                    return;
+                }
+                if (current != null && current.getProvider() != null
+                        && current.getProvider().getName().equals(provider.getName())) {
+                    // Same provider, the new subscription would reuse the
+                    // client ID held by the current one: break before make.
+                    stopTriggerThread();
+                    current = null;
+                }
                 CITriggerThread trigger = new CITriggerThread(provider, job
                         .getFullName(), selector);
                 trigger.setName("CIBuildTrigger-" + job.getFullName() + "-" + provider.getClass().getSimpleName());
 	            trigger.setDaemon(true);
                 trigger.start();
-                triggerInfo.put(job.getFullName(), trigger);
+                synchronized (triggerInfo) {
+                    triggerInfo.put(job.getFullName(), trigger);
+                }
+                if (current != null) {
+                    // Different provider: close the old subscription once the
+                    // new one is up.
+                    handOver(current, trigger);
+                }
             } catch (Exception e) {
                 log.log(Level.SEVERE, "Unhandled exception in trigger start.", e);
             }
@@ -142,15 +277,139 @@ public class CIBuildTrigger extends Trigger<AbstractProject<?, ?>> {
 	}
 
 	private void stopTriggerThread() {
-        CITriggerThread thread = triggerInfo.get(job.getFullName());
+		stopTriggerThread(job.getFullName());
+	}
+
+	/**
+	 * The trigger threads by job full name, a snapshot.
+	 */
+	public static Map<String, CITriggerThread> getTriggerThreads() {
+		synchronized (triggerInfo) {
+			return new TreeMap<String, CITriggerThread>(triggerInfo);
+		}
+	}
+
+	public static boolean hasTriggerThread(String fullName) {
+		synchronized (triggerInfo) {
+			return triggerInfo.containsKey(fullName);
+		}
+	}
+
+	static void stopTriggerThread(String fullName) {
+        CITriggerThread thread;
+        synchronized (triggerInfo) {
+            cancelStopTriggerThread(fullName);
+            thread = triggerInfo.remove(fullName);
+        }
         if (thread != null) {
-            try {
-                thread.sendInterrupt();
-            } catch (Exception e) {
-                log.log(Level.SEVERE, "Unhandled exception in trigger stop.", e);
-            }
+            stopThread(thread);
         }
-        triggerInfo.remove(job.getFullName());;
+	}
+
+	private static void handOver(final CITriggerThread old, final CITriggerThread replacement) {
+		synchronized (triggerInfo) {
+			stopping.add(old);
+		}
+		Timer.get().submit(new Runnable() {
+			@Override
+			public void run() {
+				long deadline = System.currentTimeMillis() + HANDOVER_MILLIS;
+				try {
+					while (replacement.isAlive() && System.currentTimeMillis() < deadline
+							&& replacement.getSubscriptionState() != CITriggerThread.SubscriptionState.RECEIVING) {
+						Thread.sleep(100);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				stopThread(old);
+			}
+		});
+	}
+
+	private static void stopThread(CITriggerThread thread) {
+		synchronized (triggerInfo) {
+			stopping.add(thread);
+		}
+		try {
+			thread.sendInterrupt();
+		} catch (Exception e) {
+			log.log(Level.SEVERE, "Unhandled exception in trigger stop.", e);
+		} finally {
+			synchronized (triggerInfo) {
+				stopping.remove(thread);
+			}
+		}
+	}
+
+	/**
+	 * Waits until no trigger thread of the job is subscribed through the
+	 * provider, so that its subscription can be removed. A stop still in its
+	 * grace period is done right away.
+	 *
+	 * @return false if the job is still subscribed through the provider
+	 */
+	static boolean awaitStopped(String fullName, String providerName, long timeoutMillis) throws InterruptedException {
+		boolean pending;
+		synchronized (triggerInfo) {
+			pending = pendingStops.containsKey(fullName) && isOn(triggerInfo.get(fullName), providerName);
+		}
+		if (pending) {
+			stopTriggerThread(fullName);
+		}
+		List<CITriggerThread> threads = new ArrayList<CITriggerThread>();
+		synchronized (triggerInfo) {
+			if (isOn(triggerInfo.get(fullName), providerName)) {
+				return false;
+			}
+			for (CITriggerThread t : stopping) {
+				if (t.getJobname().equals(fullName) && isOn(t, providerName)) {
+					threads.add(t);
+				}
+			}
+		}
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		for (CITriggerThread t : threads) {
+			t.join(Math.max(1, deadline - System.currentTimeMillis()));
+			if (t.isAlive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isOn(CITriggerThread thread, String providerName) {
+		return thread != null && thread.isAlive() && thread.getProvider() != null
+				&& thread.getProvider().getName().equals(providerName);
+	}
+
+	private static void scheduleStopTriggerThread(final String fullName) {
+		synchronized (triggerInfo) {
+			if (!triggerInfo.containsKey(fullName) || pendingStops.containsKey(fullName)) {
+				return;
+			}
+			pendingStops.put(fullName, Timer.get().schedule(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (triggerInfo) {
+						if (pendingStops.remove(fullName) == null) {
+							// Taken over by a restarted trigger.
+							return;
+						}
+					}
+					stopTriggerThread(fullName);
+				}
+			}, STOP_GRACE_MILLIS, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	private static void cancelStopTriggerThread(String fullName) {
+		synchronized (triggerInfo) {
+			ScheduledFuture<?> pending = pendingStops.remove(fullName);
+			if (pending != null) {
+				pending.cancel(false);
+			}
+		}
 	}
 
 	public String getSelector() {
@@ -161,10 +420,126 @@ public class CIBuildTrigger extends Trigger<AbstractProject<?, ?>> {
 		this.selector = selector;
 	}
 
+	/**
+	 * Schedules the builds for a batch of messages received together (e.g. the
+	 * backlog of a durable subscription), after dropping duplicates and
+	 * applying the age limit and the backlog policy of this trigger.
+	 */
+	public void scheduleBuilds(List<TriggerMessage> messages) {
+		int matched = messages.size();
+		DedupeStore dedupe = null;
+		if (getDedupeWindow() > 0) {
+			dedupe = DedupeStore.forJob(job, getDedupeWindow());
+			List<TriggerMessage> unique = dedupe.filter(messages, getDedupeProperty());
+			if (unique.size() < messages.size()) {
+				log.info("Dropped " + (messages.size() - unique.size()) + " duplicate message(s) for job '" + job.getFullName() + "'.");
+				MessagingStats.DROPPED.labels(providerName, job.getFullName(), "duplicate").inc(messages.size() - unique.size());
+			}
+			messages = unique;
+		}
+		List<TriggerMessage> fresh = BacklogPolicy.dropStale(messages, System.currentTimeMillis(),
+				TimeUnit.MINUTES.toMillis(getMessageMaxAge()));
+		if (fresh.size() < messages.size()) {
+			log.info("Dropped " + (messages.size() - fresh.size()) + " expired or stale message(s) for job '" + job.getFullName() + "'.");
+			MessagingStats.DROPPED.labels(providerName, job.getFullName(), "stale").inc(messages.size() - fresh.size());
+		}
+		List<Map<String, String>> builds = getBacklogPolicy().apply(fresh, getBacklogSize());
+		if (builds.size() < fresh.size()) {
+			log.info("Collapsed " + fresh.size() + " message(s) into " + builds.size() + " build(s) for job '" + job.getFullName() + "'.");
+			MessagingStats.DROPPED.labels(providerName, job.getFullName(), "collapsed").inc(fresh.size() - builds.size());
+		}
+		if (isShadow()) {
+			ShadowProjection projection = ShadowProjection.forJob(job.getFullName());
+			projection.record(matched, matched - messages.size(), messages.size() - fresh.size(), fresh.size() - builds.size());
+			for (int i = 0; i < builds.size(); i++) {
+				projection.wouldSchedule(builds.get(i), fresh.get(fresh.size() - builds.size() + i));
+			}
+			log.fine("Shadow trigger of job '" + job.getFullName() + "' would schedule " + builds.size() + " build(s).");
+			if (dedupe != null) {
+				dedupe.saveIfDue();
+			}
+			return;
+		}
+		if (SpanExporter.isEnabled()) {
+			reportReceiveSpans(fresh);
+		}
+		// Bounded per provider, so that a flood on one provider cannot hog the
+		// build queue at the expense of the triggers of the others.
+		Bulkhead bulkhead = Bulkhead.forProvider(providerName);
+		try {
+			bulkhead.acquireDispatcher();
+		} catch (InterruptedException e) {
+			log.info("Interrupted, not scheduling " + builds.size() + " build(s) of job '" + job.getFullName() + "'.");
+			Thread.currentThread().interrupt();
+			return;
+		}
+		try {
+			// Measured from the oldest message of the batch, the one that
+			// waited the longest.
+			long received = Long.MAX_VALUE;
+			for (TriggerMessage m : fresh) {
+				received = Math.min(received, m.getReceived());
+			}
+			MessagingStats.Histogram latency = MessagingStats.QUEUE_LATENCY.labels(providerName, job.getFullName());
+			long matchedTime = System.currentTimeMillis();
+			for (int i = 0; i < builds.size(); i++) {
+				Map<String, String> params = builds.get(i);
+				// Every policy builds for the last messages of the batch, in
+				// order: all of them, the latest ones, or the very latest.
+				TriggerMessage message = fresh.get(fresh.size() - builds.size() + i);
+				MessagingEvents.Span span = MessagingEvents.begin(MessagingEvents.Stage.SCHEDULE);
+				scheduleBuild(params, message, matchedTime);
+				String body = params.get("CI_MESSAGE");
+				span.end(providerName, job.getFullName(), null, body == null ? 0 : body.length(), 1);
+				latency.observeNanos(System.nanoTime() - received);
+			}
+		} finally {
+			bulkhead.releaseDispatcher();
+			// Only once the builds are in the queue: a restart in between
+			// builds twice rather than not at all.
+			if (dedupe != null) {
+				dedupe.saveIfDue();
+			}
+		}
+	}
+
+	private void reportReceiveSpans(List<TriggerMessage> messages) {
+		long now = System.currentTimeMillis();
+		for (TriggerMessage m : messages) {
+			TraceContext trace = m.getTraceContext();
+			if (trace == null) {
+				continue;
+			}
+			Map<String, String> attributes = new LinkedHashMap<String, String>();
+			attributes.put("provider", providerName);
+			attributes.put("job", job.getFullName());
+			if (m.getMessageId() != null) {
+				attributes.put("messageId", m.getMessageId());
+			}
+			// Across hosts, as good as their clocks.
+			if (m.getTimestamp() != 0) {
+				SpanExporter.exportSpan(new TraceSpan(TraceSpan.BROKER_DWELL, trace.newChild(), trace.getSpanId(),
+						m.getTimestamp(), m.getReceivedTime(), attributes));
+			}
+			SpanExporter.exportSpan(new TraceSpan(TraceSpan.MATCH, trace.newChild(), trace.getSpanId(),
+					m.getReceivedTime(), now, attributes));
+		}
+	}
+
 	public void scheduleBuild(Map<String, String> messageParams) {
+		scheduleBuild(messageParams, null, 0);
+	}
+
+	private void scheduleBuild(Map<String, String> messageParams, TriggerMessage message, long matched) {
 	    List<ParameterValue> definedParameters = getDefinedParameters(job);
 	    List<ParameterValue> buildParameters = getUpdatedParameters(messageParams, definedParameters);
-		job.scheduleBuild2(0, new CIBuildCause(), new ParametersAction(buildParameters), new CIEnvironmentContributingAction(messageParams, buildParameters));
+	    // The build continues the trace of its message, or starts one.
+	    TraceContext parent = TraceContext.parse(messageParams.get(TraceContext.PROPERTY));
+	    TraceContext trace = parent == null ? TraceContext.newRoot() : parent.newChild();
+	    CIBuildCause cause = new CIBuildCause(providerName, message, matched, trace,
+	            parent == null ? null : parent.getSpanId());
+		job.scheduleBuild2(0, cause, new ParametersAction(buildParameters), new CIEnvironmentContributingAction(messageParams, buildParameters));
+		cause.recordLatency(job.getFullName(), CIBuildCause.STAGE_RECEIVED, CIBuildCause.STAGE_QUEUED);
 	}
 
 	private List<ParameterValue> getUpdatedParameters(Map<String, String> messageParams, List<ParameterValue> definedParams) {
@@ -217,6 +592,15 @@ public class CIBuildTrigger extends Trigger<AbstractProject<?, ?>> {
             return items;
         }
 
+        public ListBoxModel doFillBacklogPolicyItems(@QueryParameter String backlogPolicy) {
+            BacklogPolicy current = BacklogPolicy.fromString(backlogPolicy);
+            ListBoxModel items = new ListBoxModel();
+            for (BacklogPolicy p : BacklogPolicy.values()) {
+                items.add(new ListBoxModel.Option(p.getDisplayName(), p.name(), p == current));
+            }
+            return items;
+        }
+
 	    public CIBuildTriggerDescriptor() {
 	        super(CIBuildTrigger.class);
 	    }
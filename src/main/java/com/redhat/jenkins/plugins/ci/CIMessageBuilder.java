@@ -1,6 +1,7 @@
 package com.redhat.jenkins.plugins.ci;
 
 import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.SendOptions;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.BuildListener;
@@ -8,6 +9,7 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
+import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 
 import java.io.IOException;
@@ -50,6 +52,9 @@ public class CIMessageBuilder extends Builder {
     private MESSAGE_TYPE messageType;
     private String messageProperties;
     private String messageContent;
+    private SendOptions.DeliveryMode deliveryMode;
+    private Integer priority;
+    private Integer timeToLive;
 
     public MESSAGE_TYPE getMessageType() {
         return messageType;
@@ -70,6 +75,29 @@ public class CIMessageBuilder extends Builder {
         this.messageContent = messageContent;
     }
 
+    public SendOptions.DeliveryMode getDeliveryMode() {
+        return deliveryMode;
+    }
+    public void setDeliveryMode(SendOptions.DeliveryMode deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
+    public Integer getPriority() {
+        return priority;
+    }
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+    public Integer getTimeToLive() {
+        return timeToLive;
+    }
+    public void setTimeToLive(Integer timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public SendOptions getSendOptions() {
+        return new SendOptions(deliveryMode, priority, timeToLive);
+    }
+
     @DataBoundConstructor
     public CIMessageBuilder(final String providerName,
                             final MESSAGE_TYPE messageType,
@@ -88,7 +116,8 @@ public class CIMessageBuilder extends Builder {
                 getProviderName(),
                 getMessageType(),
                 getMessageProperties(),
-                getMessageContent());
+                getMessageContent(),
+                getSendOptions());
     }
 
     public String getProviderName() {
@@ -142,11 +171,15 @@ public class CIMessageBuilder extends Builder {
 
 
         @Override
-        public CIMessageBuilder newInstance(StaplerRequest sr, JSONObject jo) {
-            return new CIMessageBuilder(jo.getString("providerName"),
+        public CIMessageBuilder newInstance(StaplerRequest sr, JSONObject jo) throws FormException {
+            CIMessageBuilder step = new CIMessageBuilder(jo.getString("providerName"),
                     MESSAGE_TYPE.fromString(jo.getString("messageType")),
                     jo.getString("messageProperties"),
                     jo.getString("messageContent"));
+            step.setDeliveryMode(SendOptions.DeliveryMode.fromString(jo.optString("deliveryMode")));
+            step.setPriority(SendOptions.parsePriority(jo.optString("priority"), "priority"));
+            step.setTimeToLive(SendOptions.parseTimeToLive(jo.optString("timeToLive"), "timeToLive"));
+            return step;
         }
 
         @Override
@@ -172,6 +205,18 @@ public class CIMessageBuilder extends Builder {
             return "CI Notifier";
         }
 
+        public ListBoxModel doFillDeliveryModeItems(@QueryParameter String deliveryMode) {
+            return SendOptions.DeliveryMode.items(deliveryMode, true);
+        }
+
+        public FormValidation doCheckPriority(@QueryParameter String priority) {
+            return SendOptions.checkPriority(priority);
+        }
+
+        public FormValidation doCheckTimeToLive(@QueryParameter String timeToLive) {
+            return SendOptions.checkTimeToLive(timeToLive);
+        }
+
         public ListBoxModel doFillProviderNameItems() {
             ListBoxModel items = new ListBoxModel();
             for (JMSMessagingProvider provider: GlobalCIConfiguration.get().getConfigs()) {
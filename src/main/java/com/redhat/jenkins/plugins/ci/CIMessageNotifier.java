@@ -1,6 +1,7 @@
 package com.redhat.jenkins.plugins.ci;
 
 import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.SendOptions;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.BuildListener;
@@ -10,6 +11,7 @@ import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
+import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 
 import java.io.IOException;
@@ -54,6 +56,10 @@ import com.redhat.utils.PluginUtils;
     private MESSAGE_TYPE messageType;
     private String messageProperties;
     private String messageContent;
+    private SendOptions.DeliveryMode deliveryMode;
+    private Integer priority;
+    private Integer timeToLive;
+    private boolean async;
 
     public MESSAGE_TYPE getMessageType() {
         return messageType;
@@ -74,6 +80,36 @@ import com.redhat.utils.PluginUtils;
         this.messageContent = messageContent;
     }
 
+    public SendOptions.DeliveryMode getDeliveryMode() {
+        return deliveryMode;
+    }
+    public void setDeliveryMode(SendOptions.DeliveryMode deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
+    public Integer getPriority() {
+        return priority;
+    }
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+    public Integer getTimeToLive() {
+        return timeToLive;
+    }
+    public void setTimeToLive(Integer timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public SendOptions getSendOptions() {
+        return new SendOptions(deliveryMode, priority, timeToLive);
+    }
+
     @DataBoundConstructor
     public CIMessageNotifier(final String providerName,
                              final MESSAGE_TYPE messageType,
@@ -101,9 +137,19 @@ import com.redhat.utils.PluginUtils;
 
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+        if (isAsync()) {
+            listener.getLogger().println("Sending " + getMessageType().toDisplayName() + " CI message in the background.");
+            MessageUtils.sendMessageAsync(build, listener, getProviderName(), getMessageType(),
+                    PluginUtils.getSubstitutedValue(getMessageProperties(), build.getEnvironment(listener)),
+                    PluginUtils.getSubstitutedValue(getMessageContent(), build.getEnvironment(listener)),
+                    getSendOptions(),
+                    new CIMessageSendAction.Recorder(build, getMessageType()));
+            return true;
+        }
         return MessageUtils.sendMessage(build, listener, getProviderName(), getMessageType(),
                 PluginUtils.getSubstitutedValue(getMessageProperties(), build.getEnvironment(listener)),
-                PluginUtils.getSubstitutedValue(getMessageContent(), build.getEnvironment(listener)));
+                PluginUtils.getSubstitutedValue(getMessageContent(), build.getEnvironment(listener)),
+                getSendOptions());
     }
 
     public String getProviderName() {
@@ -156,11 +202,16 @@ import com.redhat.utils.PluginUtils;
         }
 
         @Override
-        public CIMessageNotifier newInstance(StaplerRequest sr, JSONObject jo) {
-            return new CIMessageNotifier(jo.getString("providerName"),
+        public CIMessageNotifier newInstance(StaplerRequest sr, JSONObject jo) throws FormException {
+            CIMessageNotifier step = new CIMessageNotifier(jo.getString("providerName"),
                     MESSAGE_TYPE.fromString(jo.getString("messageType")),
                     jo.getString("messageProperties"),
                     jo.getString("messageContent"));
+            step.setDeliveryMode(SendOptions.DeliveryMode.fromString(jo.optString("deliveryMode")));
+            step.setPriority(SendOptions.parsePriority(jo.optString("priority"), "priority"));
+            step.setTimeToLive(SendOptions.parseTimeToLive(jo.optString("timeToLive"), "timeToLive"));
+            step.setAsync(jo.optBoolean("async"));
+            return step;
         }
 
         @Override
@@ -195,6 +246,18 @@ import com.redhat.utils.PluginUtils;
             return items;
         }
 
+        public ListBoxModel doFillDeliveryModeItems(@QueryParameter String deliveryMode) {
+            return SendOptions.DeliveryMode.items(deliveryMode, true);
+        }
+
+        public FormValidation doCheckPriority(@QueryParameter String priority) {
+            return SendOptions.checkPriority(priority);
+        }
+
+        public FormValidation doCheckTimeToLive(@QueryParameter String timeToLive) {
+            return SendOptions.checkTimeToLive(timeToLive);
+        }
+
         public ListBoxModel doFillProviderNameItems() {
             ListBoxModel items = new ListBoxModel();
             for (JMSMessagingProvider provider: GlobalCIConfiguration.get().getConfigs()) {
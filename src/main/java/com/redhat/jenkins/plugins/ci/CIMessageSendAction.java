@@ -0,0 +1,157 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.utils.MessageUtils;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.model.Action;
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CIMessageSendAction implements Action {
+
+    private static final Logger log = Logger.getLogger(CIMessageSendAction.class.getName());
+
+    private final List<Outcome> outcomes = new ArrayList<Outcome>();
+
+    public static class Outcome {
+        private final MESSAGE_TYPE messageType;
+        // All guarded by this.
+        private boolean pending;
+        private boolean sent;
+        private long timestamp;
+
+        public Outcome(MESSAGE_TYPE messageType, boolean sent, long timestamp) {
+            this.messageType = messageType;
+            this.sent = sent;
+            this.timestamp = timestamp;
+        }
+
+        public MESSAGE_TYPE getMessageType() {
+            return messageType;
+        }
+
+        /**
+         * @return true while the message is still being sent
+         */
+        public synchronized boolean isPending() {
+            return pending;
+        }
+
+        public synchronized boolean isSent() {
+            return sent;
+        }
+
+        public synchronized Date getTimestamp() {
+            return new Date(timestamp);
+        }
+
+        synchronized void complete(boolean sent) {
+            this.pending = false;
+            this.sent = sent;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized List<Outcome> getOutcomes() {
+        return Collections.unmodifiableList(new ArrayList<Outcome>(outcomes));
+    }
+
+    private synchronized void add(Outcome outcome) {
+        outcomes.add(outcome);
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Attaches the outcome of a message about to be sent in the background to
+     * the build, from the build thread. Jenkins saves it with the build.
+     */
+    public static Outcome pending(Run<?, ?> build, MESSAGE_TYPE type) {
+        CIMessageSendAction action;
+        synchronized (build) {
+            action = build.getAction(CIMessageSendAction.class);
+            if (action == null) {
+                action = new CIMessageSendAction();
+                build.addAction(action);
+            }
+        }
+        Outcome outcome = new Outcome(type, false, System.currentTimeMillis());
+        outcome.pending = true;
+        action.add(outcome);
+        return outcome;
+    }
+
+    /**
+     * {@link MessageUtils.SendCallback} recording the outcome on the build.
+     */
+    public static class Recorder implements MessageUtils.SendCallback {
+        private final Run<?, ?> build;
+        private final MESSAGE_TYPE type;
+        private final Outcome outcome;
+
+        /**
+         * To be created on the build thread, before the message is sent.
+         */
+        public Recorder(Run<?, ?> build, MESSAGE_TYPE type) {
+            this.build = build;
+            this.type = type;
+            this.outcome = pending(build, type);
+        }
+
+        @Override
+        public void onCompletion(boolean sent) {
+            if (!sent) {
+                log.warning("Unable to send " + type + " CI message for " + build + ".");
+            }
+            outcome.complete(sent);
+            // The build saves the outcome when it completes, only a send that
+            // outlived it has to save it again.
+            if (!build.isBuilding()) {
+                try {
+                    build.save();
+                } catch (IOException e) {
+                    log.log(Level.FINE, "Unable to save CI message outcome of " + build, e);
+                }
+            }
+        }
+    }
+}
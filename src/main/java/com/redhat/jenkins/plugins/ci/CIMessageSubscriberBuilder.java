@@ -1,7 +1,9 @@
 package com.redhat.jenkins.plugins.ci;
 
+import com.redhat.jenkins.plugins.ci.messaging.Bulkhead;
 import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
 import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingWorker;
+import com.redhat.jenkins.plugins.ci.messaging.MessagingEvents;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.BuildListener;
@@ -14,6 +16,7 @@ import hudson.tasks.Builder;
 import hudson.util.FormValidation;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import hudson.util.ListBoxModel;
@@ -115,10 +118,40 @@ import org.kohsuke.stapler.StaplerRequest;
 
     public String waitforCIMessage(Run<?, ?> build, Launcher launcher, TaskListener listener) {
         GlobalCIConfiguration config = GlobalCIConfiguration.get();
-        JMSMessagingWorker worker =
-                config.getProvider(getProviderName()).createWorker(build
-                        .getParent().getName());
-        return worker.waitForMessage(build, selector, variable, timeout);
+        JMSMessagingProvider provider = config.getProvider(getProviderName());
+        int minutes = timeout == null || timeout <= 0 ? DEFAULT_TIMEOUT_IN_MINUTES : timeout;
+        long started = System.currentTimeMillis();
+        Bulkhead bulkhead = provider.getBulkhead();
+        // The slot is waited for within the timeout of the step.
+        if (bulkhead.getActiveConsumers() >= bulkhead.getMaxConsumers()) {
+            listener.getLogger().println(bulkhead.getMaxConsumers() + " builds are already waiting for a message from '"
+                    + provider.getName() + "', waiting for one of them to be done.");
+        }
+        try {
+            if (!bulkhead.acquireConsumer(minutes, TimeUnit.MINUTES)) {
+                String reason = "No message waited for: " + bulkhead.getMaxConsumers() + " other builds kept waiting for a message from '"
+                        + provider.getName() + "' for the " + minutes + " minutes of the timeout.";
+                listener.getLogger().println(reason);
+                log.warning(build + ": " + reason);
+                return null;
+            }
+        } catch (InterruptedException e) {
+            listener.getLogger().println("Interrupted while waiting to wait for a message from '" + provider.getName() + "'.");
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            JMSMessagingWorker worker = provider.createWorker(build
+                            .getParent().getName());
+            int remaining = (int) Math.max(1, minutes - TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - started));
+            MessagingEvents.Span span = MessagingEvents.begin(MessagingEvents.Stage.WAIT);
+            String message = worker.waitForMessage(build, selector, variable, remaining);
+            span.end(provider.getName(), build.getParent().getFullName(), null,
+                    message == null ? 0 : message.length(), message == null ? 0 : 1);
+            return message;
+        } finally {
+            bulkhead.releaseConsumer();
+        }
     }
 
     @Override
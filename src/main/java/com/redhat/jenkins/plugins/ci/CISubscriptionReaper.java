@@ -0,0 +1,244 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.DurableSubscriptions;
+import com.redhat.jenkins.plugins.ci.messaging.DurableSubscriptions.Subscription;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.MessagingStats;
+import com.redhat.jenkins.plugins.ci.messaging.SelectorProfile;
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Extension
+public class CISubscriptionReaper extends AsyncPeriodicWork {
+
+    private static final Logger log = Logger.getLogger(CISubscriptionReaper.class.getName());
+    /** Time for the trigger thread holding a subscription to stop. */
+    private static final long STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    public CISubscriptionReaper() {
+        super("CI subscription reaper");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return HOUR;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        // Disabled jobs do not subscribe, so a subscription made before they
+        // were recorded would go unnoticed.
+        for (AbstractProject<?, ?> p : Jenkins.getInstance().getAllItems(AbstractProject.class)) {
+            if (p.isDisabled()) {
+                adopt(p.getFullName(), p.getTrigger(CIBuildTrigger.class));
+            }
+        }
+        int removed = 0;
+        for (Subscription s : DurableSubscriptions.get().getSubscriptions()) {
+            if (!isInUse(s) && remove(s)) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            listener.getLogger().println("Removed " + removed + " orphaned subscription(s)");
+        }
+    }
+
+    /**
+     * A subscription is in use as long as its job is enabled, has a
+     * {@link CIBuildTrigger} for the same provider and it is the current
+     * subscription of that job.
+     */
+    static boolean isInUse(Subscription s) {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return true;
+        }
+        AbstractProject<?, ?> p = jenkins.getItemByFullName(s.getJobname(), AbstractProject.class);
+        if (p == null || p.isDisabled()) {
+            return false;
+        }
+        CIBuildTrigger trigger = p.getTrigger(CIBuildTrigger.class);
+        if (trigger == null || !s.getProviderName().equals(trigger.getProviderName())) {
+            return false;
+        }
+        return s.equals(DurableSubscriptions.get().getCurrent(s.getProviderName(), s.getJobname()));
+    }
+
+    /**
+     * Records the subscription the trigger of a job would have made, if none
+     * is recorded: jobs subscribed before subscriptions were recorded.
+     */
+    static void adopt(String jobname, CIBuildTrigger trigger) {
+        if (trigger == null || trigger.getProviderName() == null
+                || DurableSubscriptions.get().getCurrent(trigger.getProviderName(), jobname) != null) {
+            return;
+        }
+        JMSMessagingProvider provider = GlobalCIConfiguration.get().getProvider(trigger.getProviderName());
+        if (provider != null) {
+            String subscriptionId = provider.createWorker(jobname).getSubscriptionId();
+            if (subscriptionId != null) {
+                DurableSubscriptions.get().record(provider.getName(), jobname, subscriptionId);
+            }
+        }
+    }
+
+    static boolean remove(Subscription s) {
+        JMSMessagingProvider provider = GlobalCIConfiguration.get().getProvider(s.getProviderName());
+        if (provider == null) {
+            log.warning("Messaging provider '" + s.getProviderName() + "' no longer exists, forgetting subscription " + s + ".");
+            DurableSubscriptions.get().forget(s);
+            return false;
+        }
+        try {
+            // The client ID is taken as long as the thread is connected.
+            if (!CIBuildTrigger.awaitStopped(s.getJobname(), s.getProviderName(), STOP_TIMEOUT_MILLIS)) {
+                log.info("Subscription " + s + " is still held by a trigger thread, not removing it yet.");
+                return false;
+            }
+            // Only the removal is serialized, the wait above takes up to STOP_TIMEOUT_MILLIS.
+            synchronized (CISubscriptionReaper.class) {
+                if (!DurableSubscriptions.get().getSubscriptions(s.getJobname()).contains(s)) {
+                    // Removed meanwhile.
+                    return false;
+                }
+                if (provider.createWorker(s.getJobname()).removeSubscription(s.getJobname(), s.getSubscriptionId())) {
+                    DurableSubscriptions.get().forget(s);
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Unhandled exception removing subscription " + s + ".", e);
+        }
+        return false;
+    }
+
+    /**
+     * Removes the orphaned subscriptions of a job in the background, so job
+     * deletion or renaming does not wait on the messaging server. Nothing is
+     * submitted when the job has none, e.g. saved without changing its
+     * trigger.
+     */
+    static void reap(String jobname) {
+        final List<Subscription> orphaned = new ArrayList<Subscription>();
+        for (Subscription s : DurableSubscriptions.get().getSubscriptions(jobname)) {
+            if (!isInUse(s)) {
+                orphaned.add(s);
+            }
+        }
+        if (orphaned.isEmpty()) {
+            return;
+        }
+        Timer.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+                try {
+                    for (Subscription s : orphaned) {
+                        // Unless taken up again meanwhile.
+                        if (!isInUse(s)) {
+                            remove(s);
+                        }
+                    }
+                } finally {
+                    SecurityContextHolder.setContext(old);
+                }
+            }
+        });
+    }
+
+    @Extension
+    public static class JobListener extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof AbstractProject) {
+                CIBuildTrigger.stopTriggerThread(item.getFullName());
+                adopt(item.getFullName(), ((AbstractProject<?, ?>) item).getTrigger(CIBuildTrigger.class));
+                DedupeStore.forget(item.getFullName());
+                MessagingStats.forgetJob(item.getFullName());
+                SelectorProfile.forgetJob(item.getFullName());
+                ShadowProjection.forget(item.getFullName());
+                reap(item.getFullName());
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (item instanceof AbstractProject) {
+                AbstractProject<?, ?> p = (AbstractProject<?, ?>) item;
+                CIBuildTrigger.stopTriggerThread(oldFullName);
+                DedupeStore.forget(oldFullName);
+                MessagingStats.forgetJob(oldFullName);
+                SelectorProfile.forgetJob(oldFullName);
+                ShadowProjection.forget(oldFullName);
+                CIBuildTrigger trigger = p.getTrigger(CIBuildTrigger.class);
+                adopt(oldFullName, trigger);
+                if (trigger != null) {
+                    // Subscribe again under the new name.
+                    trigger.start(p, false);
+                }
+                reap(oldFullName);
+            }
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            if (item instanceof AbstractProject) {
+                AbstractProject<?, ?> p = (AbstractProject<?, ?>) item;
+                CIBuildTrigger trigger = p.getTrigger(CIBuildTrigger.class);
+                if (p.isDisabled() || trigger == null) {
+                    CIBuildTrigger.stopTriggerThread(p.getFullName());
+                    adopt(p.getFullName(), trigger);
+                } else if (!CIBuildTrigger.hasTriggerThread(p.getFullName())) {
+                    // Re-enabled job.
+                    trigger.start(p, false);
+                }
+                // Only finds something to do when the trigger was disabled,
+                // removed or moved to another provider.
+                reap(p.getFullName());
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.redhat.jenkins.plugins.ci;
 
 import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
 import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingWorker;
+import com.redhat.jenkins.plugins.ci.messaging.SubscriptionStats;
 import hudson.security.ACL;
 
 import java.util.logging.Logger;
@@ -37,17 +38,61 @@ import org.acegisecurity.context.SecurityContextHolder;
     private static final Integer WAIT_HOURS = 1;
     private static final Integer WAIT_SECONDS = 2;
 
+    private final JMSMessagingProvider provider;
     private final JMSMessagingWorker messagingWorker;
     private final String jobname;
     private final String selector;
+    private volatile SubscriptionState state = SubscriptionState.SUBSCRIBING;
+
+    public enum SubscriptionState {
+        SUBSCRIBING("Subscribing"),
+        RECEIVING("Receiving"),
+        RETRYING("Waiting to retry"),
+        STOPPED("Stopped");
+
+        private final String displayName;
+
+        SubscriptionState(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
 
     public CITriggerThread(JMSMessagingProvider messagingProvider,
                            String jobname, String selector) {
+        this.provider = messagingProvider;
         this.jobname = jobname;
         this.selector = selector;
         this.messagingWorker = messagingProvider.createWorker(this.jobname);
     }
 
+    public JMSMessagingProvider getProvider() {
+        return provider;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    public String getJobname() {
+        return jobname;
+    }
+
+    public SubscriptionState getSubscriptionState() {
+        return isAlive() ? state : SubscriptionState.STOPPED;
+    }
+
+    public SubscriptionStats getStats() {
+        return messagingWorker.getStats();
+    }
+
+    public int getBuffered() {
+        return messagingWorker.getBuffered();
+    }
+
     public void sendInterrupt() {
         messagingWorker.prepareForInterrupt();
         this.interrupt();
@@ -62,9 +107,12 @@ import org.acegisecurity.context.SecurityContextHolder;
         SecurityContext old = ACL.impersonate(ACL.SYSTEM);
         try {
             while (!Thread.currentThread().isInterrupted()) {
+                state = SubscriptionState.SUBSCRIBING;
                 if (messagingWorker.subscribe(jobname, selector)) {
+                    state = SubscriptionState.RECEIVING;
                     messagingWorker.receive(jobname, WAIT_HOURS * 60 * 60 * 1000);
                 } else {
+                    state = SubscriptionState.RETRYING;
                     // Should not get here unless subscribe failed. This could be
                     // because global configuration may not yet be available or
                     // because we were interrupted. If not the latter, let's sleep
@@ -85,6 +133,7 @@ import org.acegisecurity.context.SecurityContextHolder;
                     }
                 }
             }
+            state = SubscriptionState.STOPPED;
             log.info("Shutting down trigger thread for job '" + jobname + "'.");
             messagingWorker.unsubscribe(jobname);
         } finally {
@@ -0,0 +1,295 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.TriggerMessage;
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import hudson.model.Job;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Remembers the IDs of the messages that triggered a job, so that a message
+ * delivered more than once only builds once.
+ * <p>
+ * The most recent IDs are kept exactly, in memory. Older ones, and all of them
+ * across restarts, are kept in a pair of Bloom filters saved with the job: a
+ * message has about one chance in a million of being taken for a duplicate.
+ */
+public class DedupeStore {
+
+    private static final Logger log = Logger.getLogger(DedupeStore.class.getName());
+    private static final String FILENAME = "jms-messaging-dedupe.xml";
+    private static final double FALSE_POSITIVE_RATE = 1e-6;
+    // The IDs seen since are forgotten when Jenkins crashes, and the
+    // messages carrying them build again.
+    private static final long SAVE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(
+            Integer.getInteger(DedupeStore.class.getName() + ".saveIntervalSeconds", 60));
+
+    private static final Map<String, DedupeStore> stores = new HashMap<String, DedupeStore>();
+
+    private int window;
+    private int bits;
+    private int hashes;
+    // Filled with the last IDs, then becomes previous and starts over.
+    private byte[] current;
+    private int currentCount;
+    private byte[] previous;
+    private long suppressed;
+
+    private transient LinkedHashMap<String, Boolean> recent;
+    private transient File file;
+    private transient boolean dirty;
+    private transient boolean rotated;
+    private transient long lastSaved;
+
+    private DedupeStore(File file, int window) {
+        this.file = file;
+        this.window = window;
+    }
+
+    /**
+     * @param window number of IDs to remember for sure, the filters remember
+     * between one and two times as many
+     */
+    public static DedupeStore forJob(Job<?, ?> job, int window) {
+        synchronized (stores) {
+            DedupeStore store = stores.get(job.getFullName());
+            if (store == null || !store.file.equals(getFile(job))) {
+                store = new DedupeStore(getFile(job), window);
+                store.load();
+                stores.put(job.getFullName(), store);
+            }
+            store.resize(window);
+            return store;
+        }
+    }
+
+    /**
+     * Looks the store of a job up without loading, creating or resizing it.
+     *
+     * @return null if the job has no store in memory
+     */
+    public static DedupeStore getIfLoaded(String fullName) {
+        synchronized (stores) {
+            return stores.get(fullName);
+        }
+    }
+
+    /**
+     * Saves what the stores did not save yet.
+     */
+    @Terminator
+    public static void saveAll() {
+        List<DedupeStore> all;
+        synchronized (stores) {
+            all = new ArrayList<DedupeStore>(stores.values());
+        }
+        for (DedupeStore store : all) {
+            store.save();
+        }
+    }
+
+    /**
+     * Drops the in-memory state of a job that was deleted or renamed.
+     */
+    public static void forget(String fullName) {
+        synchronized (stores) {
+            stores.remove(fullName);
+        }
+    }
+
+    private static File getFile(Job<?, ?> job) {
+        return new File(job.getRootDir(), FILENAME);
+    }
+
+    /**
+     * @param property message parameter holding the ID, null to use the
+     * message ID
+     * @return the messages not seen before, in order
+     */
+    public synchronized List<TriggerMessage> filter(List<TriggerMessage> messages, String property) {
+        List<TriggerMessage> unique = new ArrayList<TriggerMessage>(messages.size());
+        for (TriggerMessage m : messages) {
+            String id = property != null ? m.getParams().get(property) : m.getMessageId();
+            if (!isDuplicate(id)) {
+                unique.add(m);
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Records the ID as seen.
+     *
+     * @return true if it was seen before; false for null
+     */
+    public synchronized boolean isDuplicate(String id) {
+        if (id == null) {
+            return false;
+        }
+        if (recent.get(id) != null || mightContain(current, id) || (previous != null && mightContain(previous, id))) {
+            recent.put(id, Boolean.TRUE);
+            suppressed++;
+            dirty = true;
+            return true;
+        }
+        recent.put(id, Boolean.TRUE);
+        add(current, id);
+        if (++currentCount >= window) {
+            previous = current;
+            current = new byte[bytes()];
+            currentCount = 0;
+            rotated = true;
+        }
+        dirty = true;
+        return false;
+    }
+
+    /**
+     * Number of duplicates dropped since the job started deduplicating.
+     */
+    public synchronized long getSuppressedCount() {
+        return suppressed;
+    }
+
+    /**
+     * Saves once in a while rather than after every batch, each save writes
+     * both filters. Always saves when the filters were rotated, the IDs of
+     * the previous window would be lost otherwise.
+     */
+    public synchronized void saveIfDue() {
+        if (rotated || System.currentTimeMillis() - lastSaved >= SAVE_INTERVAL_MILLIS) {
+            save();
+        }
+    }
+
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            new XmlFile(Jenkins.XSTREAM, file).write(this);
+            dirty = false;
+            rotated = false;
+            lastSaved = System.currentTimeMillis();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to save the IDs of the messages that triggered a build to " + file, e);
+        }
+    }
+
+    private void load() {
+        XmlFile xml = new XmlFile(Jenkins.XSTREAM, file);
+        if (xml.exists()) {
+            try {
+                xml.unmarshal(this);
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Unable to load the IDs of the messages that triggered a build from " + file, e);
+                current = null;
+            }
+        }
+    }
+
+    private void resize(final int window) {
+        if (recent == null || this.window != window) {
+            recent = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > window;
+                }
+            };
+        }
+        int bits = Math.max(64, (int) Math.ceil(-window * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2))));
+        int hashes = Math.max(1, (int) Math.round((double) bits / window * Math.log(2)));
+        if (current == null || this.window != window || this.bits != bits || this.hashes != hashes
+                || current.length != (bits + 7) / 8) {
+            // Filters of another size cannot be reused.
+            this.window = window;
+            this.bits = bits;
+            this.hashes = hashes;
+            current = new byte[bytes()];
+            currentCount = 0;
+            previous = null;
+        }
+    }
+
+    private int bytes() {
+        return (bits + 7) / 8;
+    }
+
+    private void add(byte[] filter, String id) {
+        long h = hash(id);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1 + i * h2);
+            filter[bit >>> 3] |= (byte) (1 << (bit & 7));
+        }
+    }
+
+    private boolean mightContain(byte[] filter, String id) {
+        long h = hash(id);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1 + i * h2);
+            if ((filter[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(int combined) {
+        return (combined < 0 ? ~combined : combined) % bits;
+    }
+
+    // 64-bit FNV-1a, finished with the MurmurHash3 mix.
+    private static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,145 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.SubscriptionStats;
+import com.redhat.jenkins.plugins.ci.messaging.TriggerMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Builds a trigger in shadow mode would have scheduled, to size the load of a
+ * trigger before enabling it. Kept in memory only.
+ */
+public final class ShadowProjection {
+
+    /** Would-be builds kept with their parameters. */
+    static final int RECENT = 20;
+    /** Longest parameter value kept, the message body can be large. */
+    static final int VALUE_LENGTH = 200;
+
+    private static final ConcurrentMap<String, ShadowProjection> projections = new ConcurrentHashMap<String, ShadowProjection>();
+
+    // Received counts the matching messages, matched the would-be builds.
+    private final SubscriptionStats stats = new SubscriptionStats();
+    private final LinkedList<Build> recent = new LinkedList<Build>();
+    private long duplicates;
+    private long stale;
+    private long collapsed;
+
+    public static ShadowProjection forJob(String jobName) {
+        ShadowProjection p = projections.get(jobName);
+        if (p == null) {
+            ShadowProjection created = new ShadowProjection();
+            p = projections.putIfAbsent(jobName, created);
+            if (p == null) {
+                p = created;
+            }
+        }
+        return p;
+    }
+
+    public static void forget(String jobName) {
+        projections.remove(jobName);
+    }
+
+    /**
+     * Records a batch of matching messages and what the trigger made of them.
+     */
+    synchronized void record(int messages, int duplicates, int stale, int collapsed) {
+        stats.received(messages);
+        this.duplicates += duplicates;
+        this.stale += stale;
+        this.collapsed += collapsed;
+    }
+
+    synchronized void wouldSchedule(Map<String, String> params, TriggerMessage message) {
+        stats.matched(1);
+        recent.addFirst(new Build(System.currentTimeMillis(), message == null ? null : message.getMessageId(), params));
+        if (recent.size() > RECENT) {
+            recent.removeLast();
+        }
+    }
+
+    public SubscriptionStats getStats() {
+        return stats;
+    }
+
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    public synchronized long getStale() {
+        return stale;
+    }
+
+    public synchronized long getCollapsed() {
+        return collapsed;
+    }
+
+    /**
+     * Latest would-be builds first.
+     */
+    public synchronized List<Build> getRecent() {
+        return Collections.unmodifiableList(new ArrayList<Build>(recent));
+    }
+
+    public static final class Build {
+        private final long timestamp;
+        private final String messageId;
+        private final Map<String, String> params;
+
+        Build(long timestamp, String messageId, Map<String, String> params) {
+            this.timestamp = timestamp;
+            this.messageId = messageId;
+            Map<String, String> kept = new LinkedHashMap<String, String>();
+            for (Map.Entry<String, String> e : params.entrySet()) {
+                String value = e.getValue();
+                kept.put(e.getKey(), value != null && value.length() > VALUE_LENGTH
+                        ? value.substring(0, VALUE_LENGTH) + "..." : value);
+            }
+            this.params = Collections.unmodifiableMap(kept);
+        }
+
+        public Date getTimestamp() {
+            return new Date(timestamp);
+        }
+
+        public String getMessageId() {
+            return messageId;
+        }
+
+        public Map<String, String> getParams() {
+            return params;
+        }
+    }
+}
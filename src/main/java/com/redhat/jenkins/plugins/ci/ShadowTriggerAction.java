@@ -0,0 +1,112 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.SubscriptionStats;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Projected load of a trigger in shadow mode, on the page of its job.
+ */
+public class ShadowTriggerAction implements Action {
+
+    private final AbstractProject<?, ?> job;
+
+    public ShadowTriggerAction(AbstractProject<?, ?> job) {
+        this.job = job;
+    }
+
+    public String getIconFileName() {
+        return "monitor.png";
+    }
+
+    public String getDisplayName() {
+        return "CI Trigger Shadow";
+    }
+
+    public String getUrlName() {
+        return "ci-shadow";
+    }
+
+    public AbstractProject<?, ?> getJob() {
+        return job;
+    }
+
+    public ShadowProjection getProjection() {
+        return ShadowProjection.forJob(job.getFullName());
+    }
+
+    public List<Window> getWindows() {
+        List<Window> windows = new ArrayList<Window>();
+        SubscriptionStats stats = getProjection().getStats();
+        long duration = job.getEstimatedDuration();
+        for (int window : SubscriptionStats.WINDOWS) {
+            windows.add(new Window(window, stats.getReceivedRate(window), stats.getMatchedRate(window), duration));
+        }
+        return windows;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.1f", value);
+    }
+
+    public static final class Window {
+        private final int seconds;
+        private final double messages;
+        private final double builds;
+        private final long duration;
+
+        Window(int seconds, double messages, double builds, long duration) {
+            this.seconds = seconds;
+            this.messages = messages;
+            this.builds = builds;
+            this.duration = duration;
+        }
+
+        public String getLabel() {
+            return seconds / 60 + " min";
+        }
+
+        public String getMessagesPerHour() {
+            return format(messages * 3600);
+        }
+
+        public String getBuildsPerHour() {
+            return format(builds * 3600);
+        }
+
+        /**
+         * Executors the builds would keep busy, from the estimated duration of
+         * the job; "-" when the job has not built yet.
+         */
+        public String getExecutors() {
+            return duration < 0 ? "-" : format(builds * duration / 1000);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.MessageOutbox;
+import com.redhat.jenkins.plugins.ci.messaging.SelectorProfile;
+import com.redhat.jenkins.plugins.ci.messaging.SubscriptionStats;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Lists the job subscriptions and what they are doing, under Manage Jenkins.
+ * Everything shown is read from the trigger threads, nothing is kept for the
+ * page.
+ */
+@Extension
+public class SubscriptionsLink extends ManagementLink {
+
+    private static final int RANKED = 20;
+
+    @Override
+    public String getIconFileName() {
+        return "network.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "CI Messaging Subscriptions";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Job subscriptions to the CI messaging providers, with their throughput and lag.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "ci-subscriptions";
+    }
+
+    public List<String> getWindows() {
+        List<String> windows = new ArrayList<String>();
+        for (int window : SubscriptionStats.WINDOWS) {
+            windows.add(window / 60 + " min");
+        }
+        return windows;
+    }
+
+    public List<Subscription> getSubscriptions() {
+        List<Subscription> subscriptions = new ArrayList<Subscription>();
+        for (Map.Entry<String, CITriggerThread> e : CIBuildTrigger.getTriggerThreads().entrySet()) {
+            subscriptions.add(new Subscription(e.getKey(), e.getValue()));
+        }
+        return subscriptions;
+    }
+
+    public List<Provider> getProviders() {
+        List<Provider> providers = new ArrayList<Provider>();
+        for (JMSMessagingProvider p : GlobalCIConfiguration.get().getConfigs()) {
+            providers.add(new Provider(p));
+        }
+        return providers;
+    }
+
+    public List<Selector> getMostExpensiveSelectors() {
+        return selectors(SelectorProfile.mostExpensive(RANKED));
+    }
+
+    public List<Selector> getLeastSelectiveSelectors() {
+        return selectors(SelectorProfile.leastSelective(RANKED));
+    }
+
+    public boolean isCpuTime() {
+        return SelectorProfile.isCpuTime();
+    }
+
+    private static List<Selector> selectors(List<SelectorProfile> profiles) {
+        List<Selector> selectors = new ArrayList<Selector>(profiles.size());
+        for (SelectorProfile p : profiles) {
+            selectors.add(new Selector(p));
+        }
+        return selectors;
+    }
+
+    private static String rate(double perSecond) {
+        return String.format(Locale.ENGLISH, "%.2f", perSecond);
+    }
+
+    public static final class Subscription {
+        private final String jobName;
+        private final CITriggerThread thread;
+        private final SubscriptionStats stats;
+
+        Subscription(String jobName, CITriggerThread thread) {
+            this.jobName = jobName;
+            this.thread = thread;
+            this.stats = thread.getStats();
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public AbstractProject<?, ?> getJob() {
+            return Jenkins.getInstance().getItemByFullName(jobName, AbstractProject.class);
+        }
+
+        public String getProviderName() {
+            return thread.getProvider().getName();
+        }
+
+        public String getSelector() {
+            return thread.getSelector();
+        }
+
+        public String getState() {
+            return thread.getSubscriptionState().getDisplayName();
+        }
+
+        public List<String> getRates() {
+            List<String> rates = new ArrayList<String>();
+            for (int window : SubscriptionStats.WINDOWS) {
+                rates.add(rate(stats.getReceivedRate(window)));
+            }
+            return rates;
+        }
+
+        public String getMatchRatio() {
+            double ratio = stats.getMatchRatio(SubscriptionStats.WINDOWS[SubscriptionStats.WINDOWS.length - 1]);
+            return ratio < 0 ? "-" : Math.round(ratio * 100) + "%";
+        }
+
+        public long getTotalReceived() {
+            return stats.getTotalReceived();
+        }
+
+        public long getTotalMatched() {
+            return stats.getTotalMatched();
+        }
+
+        public String getLastMessage() {
+            long last = stats.getLastReceived();
+            return last == 0 ? "never" : Util.getPastTimeString(System.currentTimeMillis() - last) + " ago";
+        }
+
+        public int getBuffered() {
+            return thread.getBuffered();
+        }
+
+        /**
+         * Duplicate messages dropped by the trigger, "-" when it does not
+         * drop duplicates or has not received anything yet.
+         */
+        public String getDuplicates() {
+            AbstractProject<?, ?> job = getJob();
+            CIBuildTrigger trigger = job == null ? null : job.getTrigger(CIBuildTrigger.class);
+            if (trigger == null || trigger.getDedupeWindow() <= 0) {
+                return "-";
+            }
+            DedupeStore store = DedupeStore.getIfLoaded(job.getFullName());
+            return store == null ? "-" : String.valueOf(store.getSuppressedCount());
+        }
+
+        /**
+         * Builds of the job waiting in the queue.
+         */
+        public int getQueued() {
+            AbstractProject<?, ?> job = getJob();
+            return job == null ? 0 : Jenkins.getInstance().getQueue().getItems(job).size();
+        }
+    }
+
+    public static final class Provider {
+        private final JMSMessagingProvider provider;
+
+        Provider(JMSMessagingProvider provider) {
+            this.provider = provider;
+        }
+
+        public String getName() {
+            return provider.getName();
+        }
+
+        public String getCircuitState() {
+            return provider.getCircuitBreaker().getState().name();
+        }
+
+        public int getActiveCalls() {
+            return provider.getBulkhead().getActiveCalls();
+        }
+
+        public int getQueuedCalls() {
+            return provider.getBulkhead().getQueuedCalls();
+        }
+
+        /**
+         * Messages waiting in the outbox.
+         */
+        public int getPending() {
+            return MessageOutbox.get().getPendingCount(provider.getName());
+        }
+    }
+
+    public static final class Selector {
+        private final SelectorProfile profile;
+
+        Selector(SelectorProfile profile) {
+            this.profile = profile;
+        }
+
+        public String getJobName() {
+            return profile.getJobName();
+        }
+
+        public AbstractProject<?, ?> getJob() {
+            String jobName = profile.getJobName();
+            return jobName == null ? null : Jenkins.getInstance().getItemByFullName(jobName, AbstractProject.class);
+        }
+
+        public String getProviderName() {
+            return profile.getProviderName();
+        }
+
+        public String getKind() {
+            return profile.getKind().getDisplayName();
+        }
+
+        public String getSelector() {
+            String selector = profile.getSelector();
+            return selector == null || selector.isEmpty() ? "(all)" : selector;
+        }
+
+        /**
+         * Evaluations in Jenkins, "server" when the messaging server evaluates it.
+         */
+        public String getEvaluations() {
+            long evaluations = profile.getEvaluations();
+            return evaluations == 0 ? "server" : Long.toString(evaluations);
+        }
+
+        public long getMatches() {
+            return profile.getMatches();
+        }
+
+        public String getMicrosPerEvaluation() {
+            return String.format(Locale.ENGLISH, "%.1f", profile.getNanosPerEvaluation() / 1000.0);
+        }
+
+        public String getTotalMillis() {
+            return String.format(Locale.ENGLISH, "%.1f", profile.getNanos() / 1000000.0);
+        }
+
+        public String getMatchRatio() {
+            double ratio = profile.getMatchRatio();
+            return ratio < 0 ? "-" : Math.round(ratio * 100) + "%";
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.redhat.jenkins.plugins.ci.Messages;
 import hudson.Extension;
 import hudson.model.Descriptor;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
 import org.apache.activemq.ActiveMQConnectionFactory;
@@ -12,6 +13,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
+import javax.jms.Message;
 import javax.jms.Session;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,6 +51,9 @@ public class ActiveMqMessagingProvider extends JMSMessagingProvider {
     private String topic;
     private String user;
     private Secret password;
+    private SendOptions.DeliveryMode deliveryMode;
+    private Integer priority;
+    private Integer timeToLive;
     private transient static final Logger log = Logger.getLogger(ActiveMqMessagingProvider.class.getName());
 
     private transient Connection connection;
@@ -91,11 +96,37 @@ public class ActiveMqMessagingProvider extends JMSMessagingProvider {
         this.password = Secret.fromString(password);
     }
 
+    @DataBoundSetter
+    public void setDeliveryMode(SendOptions.DeliveryMode deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
+
+    @DataBoundSetter
+    public void setPriority(int priority) {
+        this.priority = SendOptions.validatePriority(priority);
+    }
+
+    @DataBoundSetter
+    public void setTimeToLive(int timeToLive) {
+        this.timeToLive = SendOptions.validateTimeToLive(timeToLive);
+    }
+
     @Override
     public Descriptor<JMSMessagingProvider> getDescriptor() {
         return Jenkins.getInstance().getDescriptorByType(ActiveMqMessagingProviderDescriptor.class);
     }
 
+    @Override
+    public boolean isSameSubscription(JMSMessagingProvider other) {
+        if (!super.isSameSubscription(other)) {
+            return false;
+        }
+        ActiveMqMessagingProvider that = (ActiveMqMessagingProvider) other;
+        return StringUtils.equals(broker, that.broker) && StringUtils.equals(topic, that.topic)
+                && StringUtils.equals(user, that.user)
+                && StringUtils.equals(Secret.toString(password), Secret.toString(that.password));
+    }
+
     public String getBroker() {
         return broker;
     }
@@ -112,6 +143,23 @@ public class ActiveMqMessagingProvider extends JMSMessagingProvider {
         return password;
     }
 
+    public SendOptions.DeliveryMode getDeliveryMode() {
+        return deliveryMode == null ? SendOptions.DeliveryMode.PERSISTENT : deliveryMode;
+    }
+
+    public int getPriority() {
+        return priority == null ? Message.DEFAULT_PRIORITY : priority;
+    }
+
+    public int getTimeToLive() {
+        return timeToLive == null ? 0 : timeToLive;
+    }
+
+    @Override
+    public SendOptions getSendOptions() {
+        return new SendOptions(getDeliveryMode(), getPriority(), getTimeToLive());
+    }
+
     @Override
     public JMSMessagingWorker createWorker(String jobname) {
         return new ActiveMqMessagingWorker(this, jobname);
@@ -126,6 +174,18 @@ public class ActiveMqMessagingProvider extends JMSMessagingProvider {
             return "Active MQ";
         }
 
+        public ListBoxModel doFillDeliveryModeItems(@QueryParameter String deliveryMode) {
+            return SendOptions.DeliveryMode.items(deliveryMode, false);
+        }
+
+        public FormValidation doCheckPriority(@QueryParameter String priority) {
+            return SendOptions.checkPriority(priority);
+        }
+
+        public FormValidation doCheckTimeToLive(@QueryParameter String timeToLive) {
+            return SendOptions.checkTimeToLive(timeToLive);
+        }
+
         public FormValidation doTestConnection(@QueryParameter("broker") String broker,
                                                @QueryParameter("topic") String topic,
                                                @QueryParameter("user") String user,
@@ -5,21 +5,20 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.jenkins.plugins.ci.CIBuildTrigger;
 import com.redhat.jenkins.plugins.ci.CIEnvironmentContributingAction;
-import com.redhat.utils.MessageUtils;
 import hudson.EnvVars;
-import hudson.model.Result;
 import hudson.model.Run;
-import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
 import org.apache.activemq.ActiveMQConnectionFactory;
-import org.apache.commons.lang.text.StrSubstitutor;
+import org.apache.activemq.ActiveMQMessageConsumer;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.DeliveryMode;
 import javax.jms.Destination;
+import javax.jms.InvalidDestinationException;
 import javax.jms.JMSException;
+import javax.jms.JMSSecurityException;
 import javax.jms.MapMessage;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
@@ -28,15 +27,19 @@ import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.jms.Topic;
 import javax.jms.TopicSubscriber;
-import java.io.StringReader;
 import java.net.Inet4Address;
 import java.net.UnknownHostException;
 import java.sql.Time;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -68,20 +71,30 @@ import static com.redhat.utils.MessageUtils.JSON_TYPE;
  */
 public class ActiveMqMessagingWorker extends JMSMessagingWorker {
     private static final Logger log = Logger.getLogger(ActiveMqMessagingWorker.class.getName());
-
+    private static final int MAX_BATCH_SIZE = 1000;
 
     private final ActiveMqMessagingProvider provider;
 
     private Connection connection;
-    private TopicSubscriber subscriber;
+    private volatile TopicSubscriber subscriber;
+    private boolean wasConnected;
+    private String selector;
+    private SelectorProfile profile;
 
     public ActiveMqMessagingWorker(ActiveMqMessagingProvider provider, String jobname) {
         this.provider = provider;
         this.jobname = jobname;
     }
 
+    @Override
+    public ActiveMqMessagingProvider getProvider() {
+        return provider;
+    }
+
     @Override
     public boolean subscribe(String jobname, String selector) {
+        this.selector = selector;
+        this.profile = SelectorProfile.get(provider.getName(), SelectorProfile.Kind.TRIGGER, jobname, selector);
 
         if (provider.getTopic() != null) {
             while (!Thread.currentThread().isInterrupted()) {
@@ -90,6 +103,10 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
                         if (!connect()) {
                             return false;
                         }
+                        if (wasConnected) {
+                            MessagingStats.RECONNECTS.labels(provider.getName()).inc();
+                        }
+                        wasConnected = true;
                     }
                     if (subscriber == null) {
                         log.info("Subscribing job '" + jobname + "' to " + provider.getTopic() + " topic.");
@@ -99,6 +116,8 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
                         subscriber = session
                                 .createDurableSubscriber(destination, jobname,
                                         selector, false);
+                        DurableSubscriptions.get().record(provider.getName(), jobname, getSubscriptionId());
+                        MessagingStats.SUBSCRIPTIONS.labels(provider.getName()).inc();
                         log.info("Successfully subscribed job '" + jobname + "' to " + provider.getTopic() + " topic with selector: " + selector);
                     } else {
                         log.fine("Already subscribed to " + provider.getTopic() + " topic with selector: " + selector + " for job '" + jobname);
@@ -143,22 +162,11 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
                 provider.getPassword().getPlainText(),
                 provider.getBroker());
 
-        String ip = null;
-        try {
-            ip = Inet4Address.getLocalHost().getHostAddress();
-        } catch (UnknownHostException e) {
-            log.severe("Unable to get localhost IP address.");
-        }
         Connection connectiontmp = null;
         try {
             connectiontmp = connectionFactory
                     .createConnection();
-            String url = "";
-            if (Jenkins.getInstance() != null) {
-                url = Jenkins.getInstance().getRootUrl();
-            }
-            connectiontmp.setClientID(provider.getName() + "_"
-                    + url + "_" + ip + "_" + jobname);
+            connectiontmp.setClientID(getClientId());
             connectiontmp.start();
         } catch (JMSException e) {
             log.severe("Unable to connect to " + provider.getBroker() + " " + e.getMessage());
@@ -169,11 +177,74 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
         return true;
     }
 
+    /**
+     * The JMS client ID used for the durable subscription of this job. Together
+     * with the job name (the subscription name) it identifies the subscription
+     * on the broker.
+     */
+    public String getClientId() {
+        String ip = null;
+        try {
+            ip = Inet4Address.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            log.severe("Unable to get localhost IP address.");
+        }
+        String url = "";
+        if (Jenkins.getInstance() != null) {
+            url = Jenkins.getInstance().getRootUrl();
+        }
+        return provider.getName() + "_" + url + "_" + ip + "_" + jobname;
+    }
+
+    @Override
+    public String getSubscriptionId() {
+        return getClientId();
+    }
+
+    @Override
+    public boolean removeSubscription(String jobname, String subscriptionId) {
+        Connection connection = null;
+        Session session = null;
+        try {
+            ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(provider.getUser(),
+                    provider.getPassword().getPlainText(),
+                    provider.getBroker());
+            connection = connectionFactory.createConnection();
+            connection.setClientID(subscriptionId);
+            connection.start();
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session.unsubscribe(jobname);
+            log.info("Removed durable subscription '" + jobname + "' of client '" + subscriptionId + "' from " + provider.getBroker() + ".");
+            return true;
+        } catch (InvalidDestinationException e) {
+            // Nothing to remove, the broker does not know this subscription.
+            log.fine("No durable subscription '" + jobname + "' for client '" + subscriptionId + "' on " + provider.getBroker() + ".");
+            return true;
+        } catch (JMSException e) {
+            log.log(Level.WARNING, "Unable to remove durable subscription '" + jobname + "' of client '" + subscriptionId + "'.", e);
+            return false;
+        } finally {
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (JMSException e) {
+                }
+            }
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                }
+            }
+        }
+    }
+
     @Override
     public void unsubscribe(String jobname) {
         log.info("Unsubcribing job '" + jobname + "' from the CI topic.");
         disconnect();
         if (subscriber != null) {
+            MessagingStats.SUBSCRIPTIONS.labels(provider.getName()).dec();
             try {
                 subscriber.close();
             } catch (Exception se) {
@@ -217,10 +288,16 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
         return "";
     }
 
-    private void process (String jobname, Message message) {
+    private TriggerMessage toTriggerMessage(Message message) {
+        MessagingEvents.Span span = MessagingEvents.begin(MessagingEvents.Stage.DECODE);
+        String body = "";
+        String id = null;
         try {
             Map<String, String> params = new HashMap<String, String>();
-            params.put("CI_MESSAGE", getMessageBody(message));
+            body = getMessageBody(message);
+            // A text message may have no text at all.
+            MessagingStats.MESSAGE_SIZE.labels(provider.getName(), "received").observe(body == null ? 0 : body.length());
+            params.put("CI_MESSAGE", body);
 
             @SuppressWarnings("unchecked")
             Enumeration<String> e = message.getPropertyNames();
@@ -230,9 +307,41 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
                     params.put(s, message.getObjectProperty(s).toString());
                 }
             }
-           super.trigger(jobname, formatMessage(message), params);
+            // Messages from the outbox keep their ID when sent again, the JMS
+            // one only survives broker redeliveries.
+            id = message.getStringProperty(OutgoingMessage.ID_PROPERTY);
+            if (id == null) {
+                id = message.getJMSMessageID();
+            }
+            final Message source = message;
+            return new TriggerMessage(id, null, params, message.getJMSTimestamp(), message.getJMSExpiration()) {
+                @Override
+                public String getSummary() {
+                    return formatMessage(source);
+                }
+            };
         } catch (Exception e) {
             log.log(Level.SEVERE, "Unhandled exception processing message:\n" + formatMessage(message), e);
+        } finally {
+            span.end(provider.getName(), jobname, id, body == null ? 0 : body.length(), 1);
+        }
+        return null;
+    }
+
+    private void process (String jobname, List<Message> messages) {
+        // The broker evaluates the selector, all of them match.
+        MessagingStats.RECEIVED.labels(provider.getName(), jobname).inc(messages.size());
+        getStats().received(messages.size());
+        profile.matched(messages.size());
+        List<TriggerMessage> batch = new ArrayList<TriggerMessage>(messages.size());
+        for (Message message : messages) {
+            TriggerMessage m = toTriggerMessage(message);
+            if (m != null) {
+                batch.add(m);
+            }
+        }
+        if (!batch.isEmpty()) {
+            super.trigger(jobname, batch);
         }
     }
 
@@ -242,7 +351,17 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
         try {
             Message m = subscriber.receive(timeoutInMs); // In milliseconds!
             if (m != null) {
-                process(jobname, m);
+                MessagingEvents.Span span = MessagingEvents.begin(MessagingEvents.Stage.RECEIVE);
+                // Take whatever else is already waiting (e.g. the backlog of
+                // the durable subscription after a reconnect), so that the
+                // trigger backlog policy sees it as a whole.
+                List<Message> messages = new ArrayList<Message>();
+                messages.add(m);
+                while (messages.size() < MAX_BATCH_SIZE && (m = subscriber.receiveNoWait()) != null) {
+                    messages.add(m);
+                }
+                span.end(provider.getName(), jobname, null, 0, messages.size());
+                process(jobname, messages);
             } else {
                 log.info("No message received for the past " + timeoutInMs + " ms, re-subscribing job '" + jobname + "'.");
                 unsubscribe(jobname);
@@ -257,6 +376,14 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
         }
     }
 
+    @Override
+    public int getBuffered() {
+        // Pushed by the broker ahead of receive, up to the prefetch limit.
+        TopicSubscriber s = subscriber;
+        int prefetched = s instanceof ActiveMQMessageConsumer ? ((ActiveMQMessageConsumer) s).getMessageSize() : 0;
+        return super.getBuffered() + prefetched;
+    }
+
     @Override
     public boolean isConnected() {
         if (connection == null) {
@@ -278,12 +405,16 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
         }
     }
 
+    /**
+     * Publishes the messages over one connection. More than one message is
+     * published in a single transaction.
+     */
     @Override
-    public boolean sendMessage(Run<?, ?> build, TaskListener listener,
-                            MessageUtils.MESSAGE_TYPE type, String props, String content) {
+    protected boolean publish(List<OutgoingMessage> messages) {
         Connection connection = null;
         Session session = null;
         MessageProducer publisher = null;
+        boolean transacted = messages.size() > 1;
 
         try {
             String user = provider.getUser();
@@ -299,45 +430,48 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
                 connection = connectionFactory.createConnection();
                 connection.start();
 
-                session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                session = connection.createSession(transacted, transacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
                 Destination destination = session.createTopic(topic);
                 publisher = session.createProducer(destination);
-
-                TextMessage message;
-                message = session.createTextMessage("");
-                message.setJMSType(JSON_TYPE);
-
-                message.setStringProperty("CI_NAME", build.getParent().getName());
-                message.setStringProperty("CI_TYPE", type.getMessage());
-                if (!build.isBuilding()) {
-                    message.setStringProperty("CI_STATUS", (build.getResult()== Result.SUCCESS ? "passed" : "failed"));
+                MessageLog messageLog = MessageLog.forProvider(provider.getName());
+
+                for (OutgoingMessage m : messages) {
+                    SendOptions o = (m.getOptions() == null ? provider.getSendOptions() : m.getOptions().withDefaults(provider.getSendOptions()));
+                    TextMessage message = createMessage(session, m);
+                    publisher.send(message,
+                            o.getDeliveryMode() == SendOptions.DeliveryMode.NON_PERSISTENT ? DeliveryMode.NON_PERSISTENT : DeliveryMode.PERSISTENT,
+                            o.getPriority(),
+                            TimeUnit.MINUTES.toMillis(o.getTimeToLive()));
+                    final TextMessage sent = message;
+                    messageLog.log(MessageLog.Event.SENT, m.getJobname(), m.getId(),
+                            m.getContent() == null ? 0 : m.getContent().length(), new MessageLog.Payload() {
+                        @Override
+                        public String format() {
+                            return formatMessage(sent);
+                        }
+                    });
                 }
-
-                StrSubstitutor sub = new StrSubstitutor(build.getEnvironment(listener));
-
-                if (props != null && !props.trim().equals("")) {
-                    Properties p = new Properties();
-                    p.load(new StringReader(props));
-                    @SuppressWarnings("unchecked")
-                    Enumeration<String> e = (Enumeration<String>) p.propertyNames();
-                    while (e.hasMoreElements()) {
-                        String key = e.nextElement();
-                        message.setStringProperty(key, sub.replace(p.getProperty(key)));
-                    }
+                if (transacted) {
+                    session.commit();
+                    log.fine("Committed " + messages.size() + " message(s).");
                 }
-
-                message.setText(sub.replace(content));
-
-                publisher.send(message);
-                log.info("Sent " + type.toString() + " message for job '" + build.getParent().getName() + "':\n"
-                        + formatMessage(message));
             } else {
-                log.severe("One or more of the following is invalid (null): user, password, topic, broker.");
-                return false;
+                return failedLocally("One or more of the following is invalid (null): user, password, topic, broker.", null);
             }
 
         } catch (Exception e) {
-            log.log(Level.SEVERE, "Unhandled exception in perform.", e);
+            if (transacted && session != null) {
+                try {
+                    session.rollback();
+                } catch (JMSException je) {
+                }
+            }
+            if (e instanceof JMSException && !(e instanceof JMSSecurityException)) {
+                log.log(Level.SEVERE, "Unhandled exception in perform.", e);
+                return false;
+            }
+            // Refused credentials, or a message the client cannot build.
+            return failedLocally("Unable to send CI message(s) through '" + provider.getName() + "'.", e);
         } finally {
             if (publisher != null) {
                 try {
@@ -361,6 +495,16 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
         return true;
     }
 
+    private static TextMessage createMessage(Session session, OutgoingMessage m) throws JMSException {
+        TextMessage message = session.createTextMessage(m.getContent());
+        message.setJMSType(JSON_TYPE);
+        for (Map.Entry<String, String> e : m.getProperties().entrySet()) {
+            message.setStringProperty(e.getKey(), e.getValue());
+        }
+        message.setStringProperty(OutgoingMessage.ID_PROPERTY, m.getId());
+        return message;
+    }
+
     @Override
     public String waitForMessage(Run<?, ?> build, String selector, String variable, Integer timeout) {
         String user = provider.getUser(); //config.getUser();
@@ -379,10 +523,22 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
                 Connection connection = null;
                 MessageConsumer consumer = null;
                 try {
-                    ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(user, password, broker);
-                    connection = connectionFactory.createConnection();
-                    connection.setClientID(ip + "_" + UUID.randomUUID().toString());
-                    connection.start();
+                    final ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(user, password, broker);
+                    final String clientId = ip + "_" + UUID.randomUUID().toString();
+                    connection = provider.getCircuitBreaker().call(new Callable<Connection>() {
+                        @Override
+                        public Connection call() throws Exception {
+                            Connection c = connectionFactory.createConnection();
+                            c.setClientID(clientId);
+                            c.start();
+                            if (Thread.currentThread().isInterrupted()) {
+                                // Connected past the deadline, nobody is waiting for it.
+                                c.close();
+                                throw new InterruptedException();
+                            }
+                            return c;
+                        }
+                    }, provider.getSendDeadlineMillis(), provider.getBulkhead().getExecutor());
                     Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
                     Topic destination = session.createTopic(topic);
 
@@ -390,6 +546,8 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
 
                     Message message = consumer.receive(timeout*60*1000);
                     if (message != null) {
+                        SelectorProfile.get(provider.getName(), SelectorProfile.Kind.WAIT,
+                                build != null ? build.getParent().getFullName() : jobname, selector).matched(1);
                         String value = getMessageBody(message);
                         if (build != null) {
                             if (StringUtils.isNotEmpty(variable)) {
@@ -402,6 +560,12 @@ public class ActiveMqMessagingWorker extends JMSMessagingWorker {
                         return value;
                     }
                     log.info("Timed out waiting for message!");
+                } catch (CircuitBreaker.OpenException e) {
+                    log.warning(e.getMessage() + " Not waiting for message.");
+                } catch (RejectedExecutionException e) {
+                    log.warning(e.getMessage() + " Not waiting for message.");
+                } catch (TimeoutException e) {
+                    log.warning("Unable to connect to " + broker + " within " + provider.getSendDeadline() + " seconds, not waiting for message.");
                 } catch (Exception e) {
                     log.log(Level.SEVERE, "Unhandled exception waiting for message.", e);
                 } finally {
@@ -0,0 +1,219 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Resources a messaging provider may use, so that a degraded provider cannot
+ * take more than its share at the expense of the others.
+ */
+public class Bulkhead {
+
+    private static final int CALL_THREADS = Integer.getInteger(Bulkhead.class.getName() + ".callThreads", 8);
+    private static final int MAX_QUEUED_CALLS = Integer.getInteger(Bulkhead.class.getName() + ".maxQueuedCalls", 100);
+    private static final int MAX_ASYNC_SENDS = Integer.getInteger(Bulkhead.class.getName() + ".maxAsyncSends", 100);
+    private static final int ASYNC_THREADS = Integer.getInteger(Bulkhead.class.getName() + ".asyncThreads", 4);
+    private static final int MAX_CONSUMERS = Integer.getInteger(Bulkhead.class.getName() + ".maxConsumers", 20);
+    private static final int MAX_DISPATCHERS = Integer.getInteger(Bulkhead.class.getName() + ".maxDispatchers", 4);
+
+    private static final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<String, Bulkhead>();
+
+    private final String providerName;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor asyncExecutor;
+    private final int maxAsyncSends;
+    private final Semaphore asyncSends;
+    private final Semaphore consumers;
+    private final Semaphore dispatchers;
+    private final int maxConsumers;
+    private final int maxDispatchers;
+
+    private final AtomicLong rejectedCalls = new AtomicLong();
+    private final AtomicLong rejectedConsumers = new AtomicLong();
+
+    Bulkhead(String providerName, int callThreads, int maxQueuedCalls, int maxAsyncSends,
+             int maxConsumers, int maxDispatchers) {
+        this.providerName = providerName;
+        this.executor = new ThreadPoolExecutor(callThreads, callThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(maxQueuedCalls),
+                new NamingThreadFactory(new DaemonThreadFactory(), "CI messaging provider " + providerName),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        rejectedCalls.incrementAndGet();
+                        throw new RejectedExecutionException("Too many calls pending for messaging provider '"
+                                + Bulkhead.this.providerName + "'.");
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        // Never full, callers wait for a permit of asyncSends first.
+        this.asyncExecutor = new ThreadPoolExecutor(ASYNC_THREADS, ASYNC_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(maxAsyncSends),
+                new NamingThreadFactory(new DaemonThreadFactory(), "CI messaging provider " + providerName + " background sends"));
+        this.asyncExecutor.allowCoreThreadTimeOut(true);
+        this.maxAsyncSends = maxAsyncSends;
+        this.asyncSends = new Semaphore(maxAsyncSends);
+        this.maxConsumers = maxConsumers;
+        this.maxDispatchers = maxDispatchers;
+        this.consumers = new Semaphore(maxConsumers);
+        this.dispatchers = new Semaphore(maxDispatchers);
+    }
+
+    public static Bulkhead forProvider(String providerName) {
+        Bulkhead bulkhead = bulkheads.get(providerName);
+        if (bulkhead == null) {
+            Bulkhead b = new Bulkhead(providerName, CALL_THREADS, MAX_QUEUED_CALLS, MAX_ASYNC_SENDS,
+                    MAX_CONSUMERS, MAX_DISPATCHERS);
+            bulkhead = bulkheads.putIfAbsent(providerName, b);
+            if (bulkhead == null) {
+                bulkhead = b;
+                MessagingMetrics.register(b);
+            } else {
+                b.executor.shutdown();
+                b.asyncExecutor.shutdown();
+            }
+        }
+        return bulkhead;
+    }
+
+    public String getProviderName() {
+        return providerName;
+    }
+
+    /**
+     * Runs the calls made to the messaging server on behalf of builds (sends,
+     * outbox deliveries, connects). Refuses work with a
+     * {@link RejectedExecutionException} once all its threads are busy and
+     * its queue is full.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Runs the background sends, apart from {@link #getExecutor()} so that
+     * they neither hold up nor wait for the calls builds are blocked on.
+     */
+    public ExecutorService getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Waits for room for one more background send.
+     */
+    public void acquireAsyncSend() throws InterruptedException {
+        asyncSends.acquire();
+    }
+
+    public void releaseAsyncSend() {
+        asyncSends.release();
+    }
+
+    /**
+     * @return false if too many builds are already waiting for a message
+     * from this provider
+     */
+    public boolean tryAcquireConsumer() {
+        if (consumers.tryAcquire()) {
+            return true;
+        }
+        rejectedConsumers.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Waits for fewer than {@code maxConsumers} builds to be waiting for a
+     * message from this provider.
+     *
+     * @return false if none left within the timeout
+     */
+    public boolean acquireConsumer(long timeout, TimeUnit unit) throws InterruptedException {
+        if (consumers.tryAcquire(timeout, unit)) {
+            return true;
+        }
+        rejectedConsumers.incrementAndGet();
+        return false;
+    }
+
+    public int getMaxConsumers() {
+        return maxConsumers;
+    }
+
+    public void releaseConsumer() {
+        consumers.release();
+    }
+
+    /**
+     * Waits until fewer than {@code maxDispatchers} triggers of this provider
+     * are scheduling builds.
+     */
+    public void acquireDispatcher() throws InterruptedException {
+        dispatchers.acquire();
+    }
+
+    public void releaseDispatcher() {
+        dispatchers.release();
+    }
+
+    public int getActiveCalls() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueuedCalls() {
+        return executor.getQueue().size();
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+
+    public int getPendingAsyncSends() {
+        return maxAsyncSends - asyncSends.availablePermits();
+    }
+
+    public int getActiveConsumers() {
+        return maxConsumers - consumers.availablePermits();
+    }
+
+    public long getRejectedConsumers() {
+        return rejectedConsumers.get();
+    }
+
+    public int getActiveDispatchers() {
+        return maxDispatchers - dispatchers.availablePermits();
+    }
+}
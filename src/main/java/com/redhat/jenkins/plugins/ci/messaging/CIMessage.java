@@ -0,0 +1,80 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.ListBoxModel;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import java.io.Serializable;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CIMessage extends AbstractDescribableImpl<CIMessage> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final MESSAGE_TYPE messageType;
+    private final String messageProperties;
+    private final String messageContent;
+
+    @DataBoundConstructor
+    public CIMessage(MESSAGE_TYPE messageType, String messageProperties, String messageContent) {
+        this.messageType = messageType;
+        this.messageProperties = messageProperties;
+        this.messageContent = messageContent;
+    }
+
+    public MESSAGE_TYPE getMessageType() {
+        return messageType;
+    }
+
+    public String getMessageProperties() {
+        return messageProperties;
+    }
+
+    public String getMessageContent() {
+        return messageContent;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<CIMessage> {
+
+        @Override
+        public String getDisplayName() {
+            return "CI message";
+        }
+
+        public ListBoxModel doFillMessageTypeItems(@QueryParameter String messageType) {
+            MESSAGE_TYPE current = MESSAGE_TYPE.fromString(messageType);
+            ListBoxModel items = new ListBoxModel();
+            for (MESSAGE_TYPE t : MESSAGE_TYPE.values()) {
+                items.add(new ListBoxModel.Option(t.toDisplayName(), t.name(), (t == current) || items.size() == 0));
+            }
+            return items;
+        }
+    }
+}
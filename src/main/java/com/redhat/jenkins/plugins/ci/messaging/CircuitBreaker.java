@@ -0,0 +1,279 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = Logger.getLogger(CircuitBreaker.class.getName());
+
+    private static final int FAILURE_THRESHOLD = Integer.getInteger(CircuitBreaker.class.getName() + ".failureThreshold", 5);
+    private static final long OPEN_MILLIS = TimeUnit.SECONDS.toMillis(Integer.getInteger(CircuitBreaker.class.getName() + ".openSeconds", 30));
+
+    private static final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    public static enum State {
+        /** Calls go through. */
+        CLOSED(0),
+        /** One trial call goes through, the others are refused. */
+        HALF_OPEN(1),
+        /** Calls are refused. */
+        OPEN(2);
+
+        private final int value;
+
+        State(int value) {
+            this.value = value;
+        }
+
+        /**
+         * Numeric value for monitoring, the higher the less healthy.
+         */
+        public int getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Thrown instead of calling the provider while the circuit is open.
+     */
+    public static class OpenException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String providerName) {
+            super("Messaging provider '" + providerName + "' is failing, not calling it for now.");
+        }
+    }
+
+    /**
+     * Thrown by a call that failed for reasons of its own, e.g. a
+     * configuration error, which say nothing about the provider.
+     */
+    public static class LocalFailure extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public LocalFailure(String message) {
+            super(message);
+        }
+    }
+
+    private final String providerName;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    // All guarded by this.
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean trialInProgress;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong trips = new AtomicLong();
+
+    CircuitBreaker(String providerName, int failureThreshold, long openMillis) {
+        this.providerName = providerName;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public static CircuitBreaker forProvider(String providerName) {
+        CircuitBreaker breaker = breakers.get(providerName);
+        if (breaker == null) {
+            CircuitBreaker b = new CircuitBreaker(providerName, FAILURE_THRESHOLD, OPEN_MILLIS);
+            breaker = breakers.putIfAbsent(providerName, b);
+            if (breaker == null) {
+                breaker = b;
+                MessagingMetrics.register(b);
+            }
+        }
+        return breaker;
+    }
+
+    public String getProviderName() {
+        return providerName;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Number of calls refused because the circuit was open.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Number of calls that did not complete before their deadline.
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * Number of times the circuit opened.
+     */
+    public long getTripCount() {
+        return trips.get();
+    }
+
+    /**
+     * @return true if a call may go through, in which case its outcome must be
+     * reported with {@link #onSuccess()} or {@link #onFailure()}
+     */
+    public synchronized boolean tryAcquire() {
+        switch (getState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (!trialInProgress) {
+                    trialInProgress = true;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Gives back a permission obtained with {@link #tryAcquire()} without a
+     * verdict on the provider.
+     */
+    public synchronized void release() {
+        trialInProgress = false;
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Messaging provider '" + providerName + "' is back, closing its circuit.");
+        }
+        state = State.CLOSED;
+        failures = 0;
+        trialInProgress = false;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warning("Messaging provider '" + providerName + "' failed " + failures + " time(s) in a row, opening its circuit for "
+                        + TimeUnit.MILLISECONDS.toSeconds(openMillis) + " seconds.");
+                trips.incrementAndGet();
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+        trialInProgress = false;
+    }
+
+    /**
+     * Calls the provider, giving up after the deadline. A call that throws,
+     * times out or returns {@link Boolean#FALSE} counts as a failure, unless
+     * it throws {@link LocalFailure}.
+     *
+     * @param deadlineMillis 0 for no deadline
+     * @param executor runs the task, typically the provider {@link Bulkhead}
+     * one; null to run it in the calling thread, without deadline
+     * @throws OpenException if the circuit is open, the task was not run
+     * @throws LocalFailure if the task failed without the provider being at fault
+     * @throws RejectedExecutionException if the executor refused the task
+     * @throws TimeoutException if the deadline passed, the task is interrupted
+     */
+    public <T> T call(Callable<T> task, long deadlineMillis, ExecutorService executor) throws Exception {
+        if (!tryAcquire()) {
+            throw new OpenException(providerName);
+        }
+        boolean success = false;
+        boolean noVerdict = false;
+        try {
+            T result;
+            if (executor == null) {
+                result = task.call();
+            } else {
+                Future<T> future;
+                try {
+                    future = executor.submit(task);
+                } catch (RejectedExecutionException e) {
+                    // Too busy locally, this says nothing about the provider.
+                    noVerdict = true;
+                    throw e;
+                }
+                try {
+                    if (deadlineMillis > 0) {
+                        result = future.get(deadlineMillis, TimeUnit.MILLISECONDS);
+                    } else {
+                        result = future.get();
+                    }
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    timeouts.incrementAndGet();
+                    throw e;
+                } catch (InterruptedException e) {
+                    // The caller gave up, this says nothing about the provider.
+                    future.cancel(true);
+                    noVerdict = true;
+                    throw e;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+            }
+            success = !Boolean.FALSE.equals(result);
+            return result;
+        } catch (LocalFailure e) {
+            noVerdict = true;
+            throw e;
+        } finally {
+            if (noVerdict) {
+                release();
+            } else if (success) {
+                onSuccess();
+            } else {
+                onFailure();
+            }
+        }
+    }
+}
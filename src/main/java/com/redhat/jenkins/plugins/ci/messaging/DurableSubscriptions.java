@@ -0,0 +1,182 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Extension
+public class DurableSubscriptions {
+
+    private static final Logger log = Logger.getLogger(DurableSubscriptions.class.getName());
+    private static final String FILENAME = "jms-messaging-subscriptions.xml";
+
+    private List<Subscription> subscriptions = new ArrayList<Subscription>();
+
+    /**
+     * A subscription that a job made on a messaging server and that outlives the
+     * connection it was made with.
+     */
+    public static final class Subscription {
+        private final String providerName;
+        private final String jobname;
+        private final String subscriptionId;
+
+        public Subscription(String providerName, String jobname, String subscriptionId) {
+            this.providerName = providerName;
+            this.jobname = jobname;
+            this.subscriptionId = subscriptionId;
+        }
+
+        public String getProviderName() {
+            return providerName;
+        }
+
+        public String getJobname() {
+            return jobname;
+        }
+
+        public String getSubscriptionId() {
+            return subscriptionId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Subscription that = (Subscription) o;
+
+            if (providerName != null ? !providerName.equals(that.providerName) : that.providerName != null) return false;
+            if (jobname != null ? !jobname.equals(that.jobname) : that.jobname != null) return false;
+            return subscriptionId != null ? subscriptionId.equals(that.subscriptionId) : that.subscriptionId == null;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = providerName != null ? providerName.hashCode() : 0;
+            result = 31 * result + (jobname != null ? jobname.hashCode() : 0);
+            result = 31 * result + (subscriptionId != null ? subscriptionId.hashCode() : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return providerName + "/" + jobname + " (" + subscriptionId + ")";
+        }
+    }
+
+    public DurableSubscriptions() {
+        load();
+    }
+
+    public static DurableSubscriptions get() {
+        return Jenkins.getInstance().getExtensionList(DurableSubscriptions.class).get(DurableSubscriptions.class);
+    }
+
+    private static XmlFile getConfigFile() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return null;
+        }
+        return new XmlFile(Jenkins.XSTREAM, new File(jenkins.getRootDir(), FILENAME));
+    }
+
+    private synchronized void load() {
+        XmlFile file = getConfigFile();
+        if (file != null && file.exists()) {
+            try {
+                file.unmarshal(this);
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Unable to load durable subscriptions from " + file, e);
+            }
+        }
+        if (subscriptions == null) {
+            subscriptions = new ArrayList<Subscription>();
+        }
+    }
+
+    private synchronized void save() {
+        XmlFile file = getConfigFile();
+        if (file != null) {
+            try {
+                file.write(this);
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Unable to save durable subscriptions to " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Remembers a subscription made on the server, so it can be removed once the
+     * job no longer needs it. The most recently recorded subscription of a job on
+     * a provider is its current one, any older one is stale.
+     */
+    public synchronized void record(String providerName, String jobname, String subscriptionId) {
+        Subscription s = new Subscription(providerName, jobname, subscriptionId);
+        if (!s.equals(getCurrent(providerName, jobname))) {
+            subscriptions.remove(s);
+            subscriptions.add(s);
+            save();
+        }
+    }
+
+    public synchronized Subscription getCurrent(String providerName, String jobname) {
+        Subscription current = null;
+        for (Subscription s : subscriptions) {
+            if (s.getProviderName().equals(providerName) && s.getJobname().equals(jobname)) {
+                current = s;
+            }
+        }
+        return current;
+    }
+
+    public synchronized void forget(Subscription s) {
+        if (subscriptions.remove(s)) {
+            save();
+        }
+    }
+
+    public synchronized List<Subscription> getSubscriptions() {
+        return new ArrayList<Subscription>(subscriptions);
+    }
+
+    public synchronized List<Subscription> getSubscriptions(String jobname) {
+        List<Subscription> result = new ArrayList<Subscription>();
+        for (Subscription s : subscriptions) {
+            if (s.getJobname().equals(jobname)) {
+                result.add(s);
+            }
+        }
+        return result;
+    }
+}
@@ -3,6 +3,7 @@ package com.redhat.jenkins.plugins.ci.messaging;
 import hudson.Extension;
 import hudson.model.Descriptor;
 import jenkins.model.Jenkins;
+import org.apache.commons.lang3.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import java.util.logging.Logger;
@@ -45,6 +46,15 @@ public class FedMsgMessagingProvider extends JMSMessagingProvider {
         this.topic = topic;
     }
 
+    @Override
+    public boolean isSameSubscription(JMSMessagingProvider other) {
+        if (!super.isSameSubscription(other)) {
+            return false;
+        }
+        FedMsgMessagingProvider that = (FedMsgMessagingProvider) other;
+        return StringUtils.equals(hubAddr, that.hubAddr) && StringUtils.equals(topic, that.topic);
+    }
+
     public String getHubAddr() {
         return hubAddr;
     }
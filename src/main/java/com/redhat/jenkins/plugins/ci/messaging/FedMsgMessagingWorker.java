@@ -3,26 +3,21 @@ package com.redhat.jenkins.plugins.ci.messaging;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.redhat.jenkins.plugins.ci.CIEnvironmentContributingAction;
 import com.redhat.jenkins.plugins.ci.messaging.data.FedmsgMessage;
-import com.redhat.utils.MessageUtils;
 import hudson.EnvVars;
-import hudson.model.Result;
 import hudson.model.Run;
-import hudson.model.TaskListener;
 import net.sf.json.JSONObject;
-import org.apache.commons.lang.text.StrSubstitutor;
 import org.apache.commons.lang3.StringUtils;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMsg;
 import org.zeromq.jms.selector.ZmqMessageSelector;
 import org.zeromq.jms.selector.ZmqSimpleMessageSelector;
 
-import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,14 +47,19 @@ import java.util.logging.Logger;
 public class FedMsgMessagingWorker extends JMSMessagingWorker {
 
     private static final Logger log = Logger.getLogger(FedMsgMessagingWorker.class.getName());
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int PUBLISH_LINGER_MILLIS = Integer.getInteger(FedMsgMessagingWorker.class.getName() + ".publishLingerMillis", 5000);
     private final FedMsgMessagingProvider provider;
     public static final String DEFAULT_PREFIX = "org.fedoraproject";
 
     private ZMQ.Context context;
     private ZMQ.Poller poller;
     private ZMQ.Socket socket;
-    private boolean interrupt = false;
+    private volatile boolean interrupt = false;
     private String selector;
+    private ZmqMessageSelector selectorObj;
+    private SelectorProfile profile;
+    private boolean wasConnected;
 
     public FedMsgMessagingWorker(FedMsgMessagingProvider
                                          fedMsgMessagingProvider, String jobname) {
@@ -67,9 +67,28 @@ public class FedMsgMessagingWorker extends JMSMessagingWorker {
         this.jobname = jobname;
     }
 
+    @Override
+    public FedMsgMessagingProvider getProvider() {
+        return provider;
+    }
+
     @Override
     public boolean subscribe(String jobname, String selector) {
         this.selector = selector;
+        this.profile = SelectorProfile.get(provider.getName(), SelectorProfile.Kind.TRIGGER, jobname, selector);
+        try {
+            // Parsed once, not for every message.
+            selectorObj = ZmqSimpleMessageSelector.parse(selector);
+        } catch (Exception e) {
+            // It does not get any better until the job is reconfigured.
+            log.log(Level.SEVERE, "Invalid selector for job '" + jobname + "', retrying in " + RETRY_MINUTES + " minutes: " + selector, e);
+            try {
+                Thread.sleep(RETRY_MINUTES * 60 * 1000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
         if (provider.getTopic() != null) {
             while (!Thread.currentThread().isInterrupted()) {
                 try {
@@ -77,6 +96,10 @@ public class FedMsgMessagingWorker extends JMSMessagingWorker {
                         if (!connect()) {
                             return false;
                         }
+                        if (wasConnected) {
+                            MessagingStats.RECONNECTS.labels(provider.getName()).inc();
+                        }
+                        wasConnected = true;
                     }
                     if (socket == null) {
                         socket = context.socket(ZMQ.SUB);
@@ -90,6 +113,7 @@ public class FedMsgMessagingWorker extends JMSMessagingWorker {
                         socket.setLinger(0);
                         socket.connect(provider.getHubAddr());
                         poller.register(socket, ZMQ.Poller.POLLIN);
+                        MessagingStats.SUBSCRIPTIONS.labels(provider.getName()).inc();
                         log.info("Successfully subscribed job '" + jobname + "' to " + provider.getTopic() + " topic with selector: " + selector);
                     } else {
                         log.info("Already subscribed to " + provider.getTopic() + " topic with selector: " + selector + " for job '" + jobname);
@@ -151,16 +175,25 @@ public class FedMsgMessagingWorker extends JMSMessagingWorker {
         } catch (Exception e) {
             log.fine(e.getMessage());
         }
+        if (socket != null) {
+            MessagingStats.SUBSCRIPTIONS.labels(provider.getName()).dec();
+        }
         poller = null;
         context = null;
         socket = null;
     }
 
+    @Override
+    public boolean removeSubscription(String jobname, String subscriptionId) {
+        // ZMQ subscriptions live only as long as the socket, nothing is kept on the relay.
+        return true;
+    }
+
     private String formatMessage(FedmsgMessage data) {
         return data.getTopic();
     }
 
-    private void process(FedmsgMessage data) {
+    private TriggerMessage toTriggerMessage(FedmsgMessage data) {
         Map<String, String> params = new HashMap<String, String>();
         params.put("CI_MESSAGE", getMessageBody(data));
 
@@ -175,7 +208,9 @@ public class FedMsgMessagingWorker extends JMSMessagingWorker {
                 params.put(key, ((Integer)obj).toString());
             }
         }
-        trigger(jobname, formatMessage(data), params);
+        // fedmsg timestamps are in seconds.
+        return new TriggerMessage(data.getMsgId(), formatMessage(data), params,
+                data.getTimestamp().getTime() * 1000, 0);
     }
 
     private String getMessageBody(FedmsgMessage data) {
@@ -185,26 +220,57 @@ public class FedMsgMessagingWorker extends JMSMessagingWorker {
     @Override
     public void receive(String jobname, long timeoutInMs) {
         ObjectMapper mapper = new ObjectMapper();
+        MessagingStats.Counter received = MessagingStats.RECEIVED.labels(provider.getName(), jobname);
+        MessagingStats.Histogram sizes = MessagingStats.MESSAGE_SIZE.labels(provider.getName(), "received");
+        MessagingStats.Histogram selectorTime = MessagingStats.SELECTOR_TIME.labels(provider.getName());
+        MessageLog messageLog = MessageLog.forProvider(provider.getName());
         long start = new Date().getTime();
         try {
-            while ((new Date().getTime() - start) < timeoutInMs) {
+            // Checked between messages too, a busy topic never leaves the poller idle.
+            while (!interrupt && (new Date().getTime() - start) < timeoutInMs) {
                 if (poller.poll(1000) > 0) {
+                    List<TriggerMessage> batch = new ArrayList<TriggerMessage>();
                     for (Integer i = 0; i < poller.getSize(); i++) {
                         if (poller.pollin(i)) {
-                            ZMsg z = ZMsg.recvMsg(poller.getSocket(i));
-                            String json = z.getLast().toString();
-                            FedmsgMessage data = mapper.readValue(json, FedmsgMessage.class);
-                            data.getMsg().put("topic", data.getTopic());
-                            ZmqMessageSelector selectorObj =
-                                    ZmqSimpleMessageSelector.parse(selector);
-                            log.info("Evaluating selector: " + selectorObj.toString());
-                            if (!selectorObj.evaluate(data.getMsg())) {
-                                log.info("false");
-                                continue;
-                            }
-                            process(data);
+                            // Take whatever else is already waiting as well, so
+                            // that the trigger backlog policy sees it as a whole.
+                            ZMQ.Socket s = poller.getSocket(i);
+                            ZMsg z = ZMsg.recvMsg(s);
+                            int taken = 0;
+                            do {
+                                MessagingEvents.Span span = MessagingEvents.begin(MessagingEvents.Stage.RECEIVE);
+                                String json = z.getLast().toString();
+                                span.end(provider.getName(), jobname, null, json.length(), 1);
+                                received.inc();
+                                getStats().received(1);
+                                sizes.observe(json.length());
+                                span = MessagingEvents.begin(MessagingEvents.Stage.DECODE);
+                                final FedmsgMessage data = mapper.readValue(json, FedmsgMessage.class);
+                                data.getMsg().put("topic", data.getTopic());
+                                span.end(provider.getName(), jobname, data.getMsgId(), json.length(), 1);
+                                span = MessagingEvents.begin(MessagingEvents.Stage.SELECTOR);
+                                long evaluating = System.nanoTime();
+                                long cpu = SelectorProfile.time();
+                                boolean matches = selectorObj.evaluate(data.getMsg());
+                                profile.evaluated(matches, cpu);
+                                selectorTime.observeNanos(System.nanoTime() - evaluating);
+                                span.end(provider.getName(), jobname, data.getMsgId(), json.length(), 1);
+                                if (!matches) {
+                                    messageLog.log(MessageLog.Event.REJECTED, jobname, data.getMsgId(), json.length(), new MessageLog.Payload() {
+                                        @Override
+                                        public String format() {
+                                            return getMessageBody(data);
+                                        }
+                                    });
+                                    continue;
+                                }
+                                batch.add(toTriggerMessage(data));
+                            } while (++taken < MAX_BATCH_SIZE && (z = ZMsg.recvMsg(s, ZMQ.DONTWAIT)) != null);
                         }
                     }
+                    if (!batch.isEmpty()) {
+                        trigger(jobname, batch);
+                    }
                 } else {
                     if (interrupt) {
                         log.info("We have been interrupted...");
@@ -245,59 +311,57 @@ public class FedMsgMessagingWorker extends JMSMessagingWorker {
     public void disconnect() {
     }
 
+    /**
+     * Publishes all the messages over one socket, so the slow joiner delay is
+     * paid once. ZMQ has no transactions: a failure may leave the batch
+     * partially sent.
+     */
     @Override
-    public boolean sendMessage(Run<?, ?> build, TaskListener listener,
-                               MessageUtils.MESSAGE_TYPE type, String props,
-                               String content) {
+    protected boolean publish(List<OutgoingMessage> messages) {
+        // ZMQ PUB/SUB neither stores nor prioritizes messages, options do not apply.
+        String topic = DEFAULT_PREFIX;
+        if (provider.getTopic() != null && !provider.getTopic().equals("")) {
+            topic = provider.getTopic();
+        }
+        List<String> jsons = new ArrayList<String>(messages.size());
+        try {
+            for (OutgoingMessage m : messages) {
+                jsons.add(createMessage(topic, m).toJson().toString());
+            }
+        } catch (Exception e) {
+            return failedLocally("Unable to build the CI message(s) for '" + provider.getName() + "'.", e);
+        }
+
         ZMQ.Context context = ZMQ.context(1);
         ZMQ.Socket sock = context.socket(ZMQ.PUB);
-        sock.setLinger(0);
+        // Closing drops whatever is still queued after the linger, give the tail of a batch time to go out.
+        sock.setLinger(PUBLISH_LINGER_MILLIS);
         log.fine("pub address: " + provider.getPubAddr());
         sock.connect(provider.getPubAddr());
         try {
             Thread.sleep(5000);
         } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-
-        String topic = DEFAULT_PREFIX;
-        if (provider.getTopic() != null && !provider.getTopic().equals("")) {
-            topic = provider.getTopic();
-        }
-
-        HashMap<String, Object> message = new HashMap();
-        message.put("CI_NAME", build.getParent().getName());
-        message.put("CI_TYPE", type.getMessage());
-        if (!build.isBuilding()) {
-            message.put("CI_STATUS", (build.getResult()
-                    == Result.SUCCESS ? "passed" : "failed"));
+            // Nothing was sent yet, let the caller know and keep the interrupt for it.
+            Thread.currentThread().interrupt();
+            sock.close();
+            context.term();
+            return false;
         }
 
-        StrSubstitutor sub = null;
         try {
-            sub = new StrSubstitutor(build.getEnvironment(listener));
-            if (props != null && !props.trim().equals("")) {
-                Properties p = new Properties();
-                p.load(new StringReader(props));
-                @SuppressWarnings("unchecked")
-                Enumeration<String> e = (Enumeration<String>) p.propertyNames();
-                while (e.hasMoreElements()) {
-                    String key = e.nextElement();
-                    message.put(key, sub.replace(p.getProperty(key)));
-                }
+            MessageLog messageLog = MessageLog.forProvider(provider.getName());
+            for (int i = 0; i < messages.size(); i++) {
+                OutgoingMessage m = messages.get(i);
+                final String json = jsons.get(i);
+                sock.sendMore(topic);
+                sock.send(json);
+                messageLog.log(MessageLog.Event.SENT, m.getJobname(), m.getId(), json.length(), new MessageLog.Payload() {
+                    @Override
+                    public String format() {
+                        return json;
+                    }
+                });
             }
-
-            message.put("message-content", sub.replace(content));
-
-            FedmsgMessage blob = new FedmsgMessage();
-            blob.setMsg(message);
-            blob.setTopic(topic);
-            blob.setTimestamp((new java.util.Date()).getTime() / 1000);
-
-            sock.sendMore(blob.getTopic());
-            sock.send(blob.toJson().toString());
-            log.fine(blob.toJson().toString());
-
         } catch (Exception e) {
             log.log(Level.SEVERE, "Unhandled exception: ", e);
             return false;
@@ -309,6 +373,18 @@ public class FedMsgMessagingWorker extends JMSMessagingWorker {
         return true;
     }
 
+    private static FedmsgMessage createMessage(String topic, OutgoingMessage m) {
+        HashMap<String, Object> message = new HashMap<String, Object>(m.getProperties());
+        message.put("message-content", m.getContent());
+
+        FedmsgMessage blob = new FedmsgMessage();
+        blob.setMsgId(m.getId());
+        blob.setMsg(message);
+        blob.setTopic(topic);
+        blob.setTimestamp(m.getCreated() / 1000);
+        return blob;
+    }
+
     @Override
     public String waitForMessage(Run<?, ?> build, String selector, String variable, Integer timeout) {
         log.info("Waiting for message with selector: " + selector);
@@ -329,20 +405,29 @@ public class FedMsgMessagingWorker extends JMSMessagingWorker {
         long start = new Date().getTime();
 
         int timeoutInMs = timeout * 60 * 1000;
+        String waiting = build != null ? build.getParent().getFullName() : jobname;
+        SelectorProfile profile = SelectorProfile.get(provider.getName(), SelectorProfile.Kind.WAIT, waiting, selector);
+        MessageLog messageLog = MessageLog.forProvider(provider.getName());
         try {
+            ZmqMessageSelector selectorObj = ZmqSimpleMessageSelector.parse(selector);
             while ((new Date().getTime() - start) < timeoutInMs) {
                 if (lpoller.poll(1000) > 0) {
                     for (Integer i = 0; i < lpoller.getSize(); i++) {
                         if (lpoller.pollin(i)) {
                             ZMsg z = ZMsg.recvMsg(lpoller.getSocket(i));
                             String json = z.getLast().toString();
-                            FedmsgMessage data = mapper.readValue(json, FedmsgMessage.class);
+                            final FedmsgMessage data = mapper.readValue(json, FedmsgMessage.class);
                             data.getMsg().put("topic", data.getTopic());
-                            ZmqMessageSelector selectorObj =
-                                    ZmqSimpleMessageSelector.parse(selector);
-                            log.info("Evaluating selector: " + selectorObj.toString());
-                            if (!selectorObj.evaluate(data.getMsg())) {
-                                log.info("false");
+                            long cpu = SelectorProfile.time();
+                            boolean matches = selectorObj.evaluate(data.getMsg());
+                            profile.evaluated(matches, cpu);
+                            if (!matches) {
+                                messageLog.log(MessageLog.Event.REJECTED, waiting, data.getMsgId(), json.length(), new MessageLog.Payload() {
+                                    @Override
+                                    public String format() {
+                                        return getMessageBody(data);
+                                    }
+                                });
                                 continue;
                             }
                             String value = getMessageBody(data);
@@ -4,10 +4,12 @@ import hudson.ExtensionList;
 import hudson.model.Describable;
 import hudson.model.Descriptor;
 import jenkins.model.Jenkins;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,6 +39,9 @@ import java.util.logging.Logger;
 public abstract class JMSMessagingProvider implements Describable<JMSMessagingProvider>, Serializable {
 
     protected String name;
+    protected boolean useOutbox;
+    protected Integer sendDeadline;
+    public static final int DEFAULT_SEND_DEADLINE = 60;
     private static final Logger log = Logger.getLogger(JMSMessagingProvider.class.getName());
     public final static String DEFAULT_PROVIDERNAME = "default";
 
@@ -44,8 +49,70 @@ public abstract class JMSMessagingProvider implements Describable<JMSMessagingPr
         return name;
     }
 
+    /**
+     * Whether messages sent through this provider are queued in the local
+     * {@link MessageOutbox} instead of being sent from the build.
+     */
+    public boolean isUseOutbox() {
+        return useOutbox;
+    }
+
+    @DataBoundSetter
+    public void setUseOutbox(boolean useOutbox) {
+        this.useOutbox = useOutbox;
+    }
+
+    /**
+     * Seconds after which sending messages, or connecting to wait for one,
+     * is given up. 0 for no deadline.
+     */
+    public int getSendDeadline() {
+        return sendDeadline == null ? DEFAULT_SEND_DEADLINE : sendDeadline;
+    }
+
+    @DataBoundSetter
+    public void setSendDeadline(int sendDeadline) {
+        this.sendDeadline = sendDeadline;
+    }
+
+    public long getSendDeadlineMillis() {
+        return TimeUnit.SECONDS.toMillis(getSendDeadline());
+    }
+
+    /**
+     * Guards the calls made to the messaging server on behalf of builds.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return CircuitBreaker.forProvider(name);
+    }
+
+    /**
+     * Bounds the threads and calls this provider may take.
+     */
+    public Bulkhead getBulkhead() {
+        return Bulkhead.forProvider(name);
+    }
+
     public abstract JMSMessagingWorker createWorker(String jobname);
 
+    /**
+     * Whether a subscription made through the other provider is the one this
+     * provider would make: same name and same server settings. Providers are
+     * recreated on every save of the global configuration, so this is not
+     * identity.
+     */
+    public boolean isSameSubscription(JMSMessagingProvider other) {
+        return equals(other);
+    }
+
+    /**
+     * Options applied to the messages sent through this provider, unless the
+     * sending step overrides them.
+     */
+    public SendOptions getSendOptions() {
+        return SendOptions.DEFAULT;
+    }
+
     public static boolean isValidURL(String url) {
         try {
             new URI(url);
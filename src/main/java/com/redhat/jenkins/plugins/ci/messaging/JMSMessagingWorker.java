@@ -5,7 +5,11 @@ import com.redhat.utils.MessageUtils;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,28 +43,228 @@ public abstract class JMSMessagingWorker {
     private static final Logger log = Logger.getLogger(JMSMessagingWorker.class.getName());
     public static final Integer RETRY_MINUTES = 1;
 
+    private final SubscriptionStats stats = new SubscriptionStats();
+    private volatile boolean localFailure;
+
+    public abstract JMSMessagingProvider getProvider();
+
+    /**
+     * Activity of the subscription of {@link #jobname}.
+     */
+    public SubscriptionStats getStats() {
+        return stats;
+    }
+
     public abstract boolean subscribe(String jobname, String selector);
     public abstract void unsubscribe(String jobname);
+
+    /**
+     * Permanently removes any state kept on the messaging server on behalf of
+     * a job subscription (e.g. a durable subscription), so the server stops
+     * retaining messages for it.
+     *
+     * @param jobname the job the subscription was made for
+     * @param subscriptionId provider specific subscription identifier, as recorded in {@link DurableSubscriptions}
+     * @return true if nothing remains on the server for this subscription
+     */
+    public abstract boolean removeSubscription(String jobname, String subscriptionId);
+
+    /**
+     * The identifier {@link #subscribe} records for the subscription of
+     * {@link #jobname}, so that one made before it was recorded can still be
+     * removed.
+     *
+     * @return null if nothing is kept on the messaging server
+     */
+    public String getSubscriptionId() {
+        return null;
+    }
+
+    /**
+     * Messages received for the subscription that no build was scheduled
+     * for yet: the batch being scheduled, waiting for a dispatcher if need
+     * be, and whatever the client already holds for the next one.
+     */
+    public int getBuffered() {
+        return stats.getBuffered();
+    }
+
     public abstract void receive(String jobname, long timeoutInMs);
     public abstract boolean connect() throws Exception;
     public abstract boolean isConnected();
     public abstract void disconnect();
 
-    public abstract boolean sendMessage(Run<?, ?> build,
-                                     TaskListener listener,
-                                     MessageUtils.MESSAGE_TYPE type,
-                                     String props,
-                                     String content);
+    public boolean sendMessage(Run<?, ?> build,
+                               TaskListener listener,
+                               MessageUtils.MESSAGE_TYPE type,
+                               String props,
+                               String content) {
+        return sendMessage(build, listener, type, props, content, null);
+    }
+
+    /**
+     * @param options delivery options overriding the provider ones, may be null
+     */
+    public boolean sendMessage(Run<?, ?> build,
+                               TaskListener listener,
+                               MessageUtils.MESSAGE_TYPE type,
+                               String props,
+                               String content,
+                               SendOptions options) {
+        return sendMessages(build, listener, Collections.singletonList(new CIMessage(type, props, content)), options);
+    }
+
+    /**
+     * Sends several messages at once, see {@link #deliver}.
+     */
+    public boolean sendMessages(Run<?, ?> build,
+                                TaskListener listener,
+                                List<CIMessage> messages,
+                                SendOptions options) {
+        List<OutgoingMessage> outgoing;
+        try {
+            outgoing = OutgoingMessage.create(build, listener, messages, options);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return failedLocally("Unable to prepare CI message(s) for job '" + build.getParent().getName() + "'.", e);
+        }
+        return deliver(outgoing);
+    }
+
+    /**
+     * Delivers messages that were already resolved against their build, in
+     * order. Providers able to do so deliver them atomically and over a single
+     * connection.
+     *
+     * @return true if all the messages were handed to the messaging server
+     */
+    public final boolean deliver(List<OutgoingMessage> messages) {
+        String providerName = getProvider().getName();
+        MessagingStats.Histogram sizes = MessagingStats.MESSAGE_SIZE.labels(providerName, "sent");
+        long size = 0;
+        for (OutgoingMessage m : messages) {
+            int length = m.getContent() == null ? 0 : m.getContent().length();
+            sizes.observe(length);
+            size += length;
+        }
+        MessagingEvents.Span span = MessagingEvents.begin(MessagingEvents.Stage.SEND);
+        long start = System.nanoTime();
+        long startTime = System.currentTimeMillis();
+        boolean sent = false;
+        localFailure = false;
+        try {
+            sent = publish(messages);
+            return sent;
+        } finally {
+            span.end(providerName, messages.isEmpty() ? null : messages.get(0).getJobname(),
+                    messages.size() == 1 ? messages.get(0).getId() : null, size, messages.size());
+            MessagingStats.SEND_TIME.labels(providerName).observeNanos(System.nanoTime() - start);
+            MessagingStats.SENT.labels(providerName, sent ? "ok" : "failed").inc(messages.size());
+            // Retries from the outbox reuse the span ID, only the send that
+            // made it is reported.
+            if (sent && SpanExporter.isEnabled()) {
+                long end = System.currentTimeMillis();
+                for (OutgoingMessage m : messages) {
+                    TraceContext trace = m.getTraceContext();
+                    if (trace != null) {
+                        Map<String, String> attributes = new LinkedHashMap<String, String>();
+                        attributes.put("provider", providerName);
+                        attributes.put("job", m.getJobname());
+                        attributes.put("messageId", m.getId());
+                        attributes.put("type", m.getType().toString());
+                        SpanExporter.exportSpan(new TraceSpan(TraceSpan.SEND, trace, m.getParentSpanId(),
+                                startTime, end, attributes));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Does the work of {@link #deliver}.
+     *
+     * @return false if the messages were not sent, through
+     * {@link #failedLocally} when the messaging server is not at fault
+     */
+    protected abstract boolean publish(List<OutgoingMessage> messages);
+
+    /**
+     * Reports a send that failed because of the configuration or of the
+     * messages, e.g. missing credentials, rather than the messaging server.
+     *
+     * @param cause may be null
+     * @return false
+     */
+    protected boolean failedLocally(String reason, Throwable cause) {
+        log.log(Level.SEVERE, reason, cause);
+        localFailure = true;
+        return false;
+    }
+
+    /**
+     * @return true if the last send through this worker failed without the
+     * messaging server being at fault
+     */
+    public boolean isLocalFailure() {
+        return localFailure;
+    }
+
+    /**
+     * Wraps a send through this worker for {@link CircuitBreaker#call}, so
+     * that a send that failed locally does not count against the provider.
+     */
+    public Callable<Boolean> forCircuitBreaker(final Callable<Boolean> send) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                if (send.call()) {
+                    return true;
+                }
+                if (localFailure) {
+                    throw new CircuitBreaker.LocalFailure("CI message(s) not sent through '" + getProvider().getName()
+                            + "' because of the configuration or the messages, see the log above.");
+                }
+                return false;
+            }
+        };
+    }
 
     public abstract String waitForMessage(Run<?, ?> build, String selector,
                                           String variable, Integer timeout);
 
     public void trigger(String jobname, String messageSummary,
                         Map<String, String> params) {
+        trigger(jobname, Collections.singletonList(new TriggerMessage(messageSummary, params, 0, 0)));
+    }
+
+    /**
+     * Schedules builds for messages that were received together, so the
+     * trigger can apply its backlog policy to them as a whole.
+     */
+    public void trigger(String jobname, List<TriggerMessage> messages) {
         CIBuildTrigger trigger = findTrigger(jobname);
         if (trigger != null) {
-            log.info("Scheduling job '" + jobname + "' based on message:\n" + messageSummary);
-            trigger.scheduleBuild(params);
+            MessagingStats.MATCHED.labels(trigger.getProviderName(), jobname).inc(messages.size());
+            stats.matched(messages.size());
+            MessageLog messageLog = MessageLog.forProvider(trigger.getProviderName());
+            MessageLog.Event event = trigger.isShadow() ? MessageLog.Event.SHADOWED : MessageLog.Event.SCHEDULED;
+            for (final TriggerMessage m : messages) {
+                String body = m.getParams() == null ? null : m.getParams().get("CI_MESSAGE");
+                messageLog.log(event, jobname, m.getMessageId(), body == null ? -1 : body.length(), new MessageLog.Payload() {
+                    @Override
+                    public String format() {
+                        return m.getSummary();
+                    }
+                });
+            }
+            stats.setBuffered(messages.size());
+            try {
+                trigger.scheduleBuilds(messages);
+            } finally {
+                stats.setBuffered(0);
+            }
         } else {
             log.log(Level.WARNING, "Unable to find CIBuildTrigger for '" + jobname + "'.");
         }
@@ -0,0 +1,170 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Logs the messages received, matched and sent, one key=value line each.
+ *
+ * At INFO the lines are rate limited per provider and the payload is only
+ * captured for one message in {@link #SAMPLE_EVERY}. Setting this logger to
+ * FINE logs every message, FINEST every message with its payload, e.g. from
+ * a log recorder while debugging a trigger.
+ */
+public final class MessageLog {
+
+    private static final Logger log = Logger.getLogger(MessageLog.class.getName());
+
+    /** Lines per second and provider logged at INFO, 0 for none. */
+    static final double RATE = Double.parseDouble(System.getProperty(MessageLog.class.getName() + ".rate", "5"));
+    /** One message in this many is logged with its payload at INFO, 0 for none. */
+    static final long SAMPLE_EVERY = Long.getLong(MessageLog.class.getName() + ".sampleEvery", 100);
+
+    private static final ConcurrentMap<String, MessageLog> logs = new ConcurrentHashMap<String, MessageLog>();
+
+    public enum Event {
+        SCHEDULED("scheduled", true),
+        SHADOWED("shadowed", true),
+        REJECTED("rejected", false),
+        SENT("sent", true);
+
+        private final String name;
+        private final boolean info;
+
+        Event(String name, boolean info) {
+            this.name = name;
+            this.info = info;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Formats the payload, only called when it is logged.
+     */
+    public interface Payload {
+        String format();
+    }
+
+    private final String providerName;
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final double rate;
+    private double tokens;
+    private long refilled;
+
+    MessageLog(String providerName, double rate) {
+        this.providerName = providerName;
+        this.rate = rate;
+        this.tokens = rate;
+        this.refilled = System.nanoTime();
+    }
+
+    public static MessageLog forProvider(String providerName) {
+        String key = providerName == null ? "" : providerName;
+        MessageLog l = logs.get(key);
+        if (l == null) {
+            MessageLog created = new MessageLog(providerName, RATE);
+            l = logs.putIfAbsent(key, created);
+            if (l == null) {
+                l = created;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * @param size of the message body in characters, -1 if unknown
+     * @param payload null if there is none to capture
+     */
+    public void log(Event event, String jobName, String messageId, int size, Payload payload) {
+        long n = events.incrementAndGet();
+        if (log.isLoggable(Level.FINE)) {
+            boolean full = log.isLoggable(Level.FINEST);
+            log.log(full ? Level.FINEST : Level.FINE, format(event, jobName, messageId, size, 0, full ? payload : null));
+        } else if (event.info && log.isLoggable(Level.INFO)) {
+            if (tryAcquire(System.nanoTime())) {
+                boolean sampled = SAMPLE_EVERY > 0 && n % SAMPLE_EVERY == 0;
+                log.info(format(event, jobName, messageId, size, suppressed.getAndSet(0), sampled ? payload : null));
+            } else {
+                suppressed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Token bucket holding up to a second worth of lines.
+     */
+    synchronized boolean tryAcquire(long now) {
+        tokens = Math.min(rate, tokens + (now - refilled) / 1e9 * rate);
+        refilled = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    long getSuppressed() {
+        return suppressed.get();
+    }
+
+    String format(Event event, String jobName, String messageId, int size, long suppressed, Payload payload) {
+        StringBuilder sb = new StringBuilder("ci-message event=").append(event);
+        append(sb, "provider", providerName);
+        append(sb, "job", jobName);
+        append(sb, "messageId", messageId);
+        if (size >= 0) {
+            sb.append(" size=").append(size);
+        }
+        if (suppressed > 0) {
+            // Lines dropped by the rate limit since the previous one.
+            sb.append(" suppressed=").append(suppressed);
+        }
+        if (payload != null) {
+            sb.append('\n').append(payload.format());
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String key, String value) {
+        if (value == null) {
+            return;
+        }
+        sb.append(' ').append(key).append('=');
+        if (value.isEmpty() || value.indexOf(' ') >= 0 || value.indexOf('"') >= 0 || value.indexOf('=') >= 0) {
+            sb.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        } else {
+            sb.append(value);
+        }
+    }
+}
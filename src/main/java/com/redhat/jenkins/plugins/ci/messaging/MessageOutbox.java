@@ -0,0 +1,514 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Extension
+public class MessageOutbox {
+
+    private static final Logger log = Logger.getLogger(MessageOutbox.class.getName());
+    private static final String FILENAME = "jms-messaging-outbox.journal";
+
+    private static final int BATCH_SIZE = Integer.getInteger(MessageOutbox.class.getName() + ".batchSize", 100);
+    private static final int MAX_PENDING = Integer.getInteger(MessageOutbox.class.getName() + ".maxPending", 10000);
+    private static final boolean FSYNC = Boolean.getBoolean(MessageOutbox.class.getName() + ".fsync");
+    private static final long MIN_RETRY_MILLIS = 5 * 1000;
+    private static final long MAX_RETRY_MILLIS = 5 * 60 * 1000;
+    // Number of delivered messages after which the journal is rewritten.
+    private static final int COMPACT_THRESHOLD = 10000;
+
+    private static final String OP_ADD = "add";
+    private static final String OP_DONE = "done";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "CI message outbox"));
+
+    // All guarded by this.
+    private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<String, Entry>();
+    private FileOutputStream journalStream;
+    private Writer journal;
+    private int delivered;
+    private boolean flushQueued;
+    private ScheduledFuture<?> retry;
+    private int failures;
+
+    /**
+     * A message waiting to be delivered through a provider.
+     */
+    private static final class Entry {
+        private final String providerName;
+        private final OutgoingMessage message;
+
+        Entry(String providerName, OutgoingMessage message) {
+            this.providerName = providerName;
+            this.message = message;
+        }
+    }
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (MessageOutbox.this) {
+                flushQueued = false;
+                if (retry != null) {
+                    retry.cancel(false);
+                    retry = null;
+                }
+            }
+            try {
+                if (flush()) {
+                    scheduleRetry();
+                } else {
+                    synchronized (MessageOutbox.this) {
+                        failures = 0;
+                    }
+                }
+            } catch (Throwable t) {
+                log.log(Level.SEVERE, "Unhandled exception flushing the CI message outbox.", t);
+                scheduleRetry();
+            }
+        }
+    };
+
+    public MessageOutbox() {
+        load();
+    }
+
+    public static MessageOutbox get() {
+        return Jenkins.getInstance().getExtensionList(MessageOutbox.class).get(MessageOutbox.class);
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void deliverPendingMessages() {
+        MessageOutbox outbox = get();
+        if (outbox.getPendingCount() > 0) {
+            log.info(outbox.getPendingCount() + " CI message(s) left in the outbox, delivering.");
+            outbox.requestFlush();
+        }
+    }
+
+    @Terminator
+    public static void stopDelivering() {
+        // Whatever is left is delivered after the restart.
+        get().flusher.shutdownNow();
+    }
+
+    private static File getJournalFile() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return null;
+        }
+        return new File(jenkins.getRootDir(), FILENAME);
+    }
+
+    /**
+     * Queues the messages for delivery through the given provider. They are
+     * on disk when this returns, and delivered after any message queued
+     * before them for the same provider.
+     *
+     * @return false if the outbox is full or cannot be written, the caller
+     * should then send the messages itself
+     */
+    public synchronized boolean enqueue(String providerName, List<OutgoingMessage> messages) {
+        if (pending.size() + messages.size() > MAX_PENDING) {
+            log.warning("CI message outbox is full (" + pending.size() + " messages), not queuing "
+                    + messages.size() + " more.");
+            return false;
+        }
+        if (journal == null) {
+            // The journal could not be opened, nothing queued would survive a restart.
+            return false;
+        }
+        long offset;
+        try {
+            journal.flush();
+            offset = journalStream.getChannel().size();
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Unable to write to the CI message outbox.", e);
+            return false;
+        }
+        try {
+            for (OutgoingMessage m : messages) {
+                journal.write(mapper.writeValueAsString(toJson(providerName, m)));
+                journal.write('\n');
+            }
+            sync();
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Unable to write to the CI message outbox.", e);
+            // The caller sends them itself, they must not be sent again after a restart.
+            truncate(offset);
+            return false;
+        }
+        for (OutgoingMessage m : messages) {
+            pending.put(m.getId(), new Entry(providerName, m));
+        }
+        requestFlush();
+        return true;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized int getPendingCount(String providerName) {
+        int count = 0;
+        for (Entry e : pending.values()) {
+            if (e.providerName.equals(providerName)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private synchronized void requestFlush() {
+        if (!flushQueued) {
+            flushQueued = true;
+            flusher.execute(flushTask);
+        }
+    }
+
+    private synchronized void scheduleRetry() {
+        failures++;
+        long delay = Math.min(MAX_RETRY_MILLIS, MIN_RETRY_MILLIS << Math.min(failures - 1, 16));
+        if (!flushQueued && retry == null) {
+            retry = flusher.schedule(flushTask, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Delivers as many messages as possible. Each provider gets its messages
+     * in the order they were queued; one that fails is left alone until the
+     * next attempt, without holding back the others.
+     *
+     * @return true if a provider failed and a retry is needed
+     */
+    private boolean flush() {
+        boolean failed = false;
+        Set<String> blocked = new HashSet<String>();
+        GlobalCIConfiguration config = GlobalCIConfiguration.get();
+
+        Map<String, List<Entry>> batches;
+        while (!(batches = nextBatches(blocked)).isEmpty()) {
+            for (Map.Entry<String, List<Entry>> batch : batches.entrySet()) {
+                String providerName = batch.getKey();
+                JMSMessagingProvider provider = config == null ? null : config.getProvider(providerName);
+                if (provider == null) {
+                    log.warning("Messaging provider '" + providerName + "' does not exist, keeping "
+                            + getPendingCount(providerName) + " CI message(s) until it is configured again.");
+                    blocked.add(providerName);
+                    continue;
+                }
+
+                final List<OutgoingMessage> messages = new ArrayList<OutgoingMessage>(batch.getValue().size());
+                for (Entry e : batch.getValue()) {
+                    messages.add(e.message);
+                }
+                final JMSMessagingWorker worker = provider.createWorker(messages.get(0).getJobname());
+                boolean sent = false;
+                try {
+                    sent = provider.getCircuitBreaker().call(worker.forCircuitBreaker(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return worker.deliver(messages);
+                        }
+                    }), provider.getSendDeadlineMillis(), provider.getBulkhead().getExecutor());
+                } catch (CircuitBreaker.OpenException e) {
+                    log.fine(e.getMessage());
+                } catch (CircuitBreaker.LocalFailure e) {
+                    log.warning(e.getMessage());
+                } catch (RejectedExecutionException e) {
+                    log.fine(e.getMessage());
+                } catch (TimeoutException e) {
+                    log.warning("Delivering CI messages through '" + providerName + "' took more than "
+                            + provider.getSendDeadline() + " seconds, giving up.");
+                } catch (InterruptedException e) {
+                    // Shutting down, the messages are delivered after the restart.
+                    return false;
+                } catch (Exception e) {
+                    log.log(Level.WARNING, "Unhandled exception delivering CI messages through '" + providerName + "'.", e);
+                }
+                if (sent) {
+                    done(messages);
+                } else {
+                    log.warning("Unable to deliver " + messages.size() + " CI message(s) through '" + providerName
+                            + "', " + getPendingCount(providerName) + " message(s) waiting in the outbox.");
+                    blocked.add(providerName);
+                    failed = true;
+                }
+            }
+        }
+        return failed;
+    }
+
+    private synchronized Map<String, List<Entry>> nextBatches(Set<String> blocked) {
+        Map<String, List<Entry>> batches = new LinkedHashMap<String, List<Entry>>();
+        for (Entry e : pending.values()) {
+            if (blocked.contains(e.providerName)) {
+                continue;
+            }
+            List<Entry> batch = batches.get(e.providerName);
+            if (batch == null) {
+                batch = new ArrayList<Entry>();
+                batches.put(e.providerName, batch);
+            }
+            if (batch.size() < BATCH_SIZE) {
+                batch.add(e);
+            }
+        }
+        return batches;
+    }
+
+    private synchronized void done(List<OutgoingMessage> messages) {
+        for (OutgoingMessage m : messages) {
+            pending.remove(m.getId());
+        }
+        if (journal == null) {
+            return;
+        }
+        try {
+            for (OutgoingMessage m : messages) {
+                ObjectNode node = mapper.createObjectNode();
+                node.put("op", OP_DONE);
+                node.put("id", m.getId());
+                journal.write(mapper.writeValueAsString(node));
+                journal.write('\n');
+            }
+            delivered += messages.size();
+            // Rewriting the journal holds up every build queuing a message,
+            // so it is only done once in a while.
+            if (delivered >= COMPACT_THRESHOLD) {
+                compact();
+            } else {
+                sync();
+            }
+        } catch (IOException e) {
+            // The messages would be sent again after a restart, with the same IDs.
+            log.log(Level.WARNING, "Unable to record delivered CI messages in the outbox journal.", e);
+        }
+    }
+
+    /**
+     * Drops what a failed write left in the journal past the given length.
+     * The outbox is closed if that fails too.
+     */
+    private void truncate(long length) {
+        File file = getJournalFile();
+        // The writer may still hold part of the lines, it is not flushed again.
+        journal = null;
+        try {
+            journalStream.getChannel().truncate(length);
+            journalStream.close();
+            open(file);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Unable to roll back the CI message outbox " + file + ", no longer queuing CI messages."
+                    + " Messages of the failed write may be sent twice after a restart.", e);
+            try {
+                journalStream.close();
+            } catch (IOException ce) {
+            }
+            journal = null;
+        }
+    }
+
+    private void sync() throws IOException {
+        journal.flush();
+        if (FSYNC) {
+            journalStream.getFD().sync();
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the pending messages. The journal is
+     * open again afterwards, even if the rewrite failed.
+     */
+    private void compact() throws IOException {
+        File file = getJournalFile();
+        File tmp = new File(file.getPath() + ".tmp");
+        journal.close();
+        journal = null;
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            try {
+                for (Entry e : pending.values()) {
+                    w.write(mapper.writeValueAsString(toJson(e.providerName, e.message)));
+                    w.write('\n');
+                }
+                w.flush();
+                out.getFD().sync();
+            } finally {
+                w.close();
+            }
+            if (!tmp.renameTo(file)) {
+                // Windows does not replace on rename.
+                if (!file.delete() || !tmp.renameTo(file)) {
+                    throw new IOException("Unable to replace " + file + " with " + tmp);
+                }
+            }
+            delivered = 0;
+        } finally {
+            open(file);
+        }
+    }
+
+    private void open(File file) throws IOException {
+        journalStream = new FileOutputStream(file, true);
+        journal = new BufferedWriter(new OutputStreamWriter(journalStream, "UTF-8"));
+    }
+
+    private synchronized void load() {
+        File file = getJournalFile();
+        if (file == null) {
+            return;
+        }
+        if (file.exists()) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        JsonNode node = mapper.readTree(line);
+                        if (OP_ADD.equals(node.path("op").asText())) {
+                            Entry e = fromJson(node);
+                            pending.put(e.message.getId(), e);
+                        } else if (OP_DONE.equals(node.path("op").asText())) {
+                            pending.remove(node.path("id").asText());
+                        }
+                    } catch (Exception e) {
+                        // Typically the last line, cut short by a crash.
+                        log.log(Level.WARNING, "Skipping unreadable entry of the CI message outbox: " + line, e);
+                    }
+                }
+            } catch (IOException e) {
+                log.log(Level.SEVERE, "Unable to read the CI message outbox " + file, e);
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        }
+        try {
+            open(file);
+            compact();
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Unable to open the CI message outbox " + file, e);
+        }
+    }
+
+    private ObjectNode toJson(String providerName, OutgoingMessage m) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("op", OP_ADD);
+        node.put("id", m.getId());
+        node.put("provider", providerName);
+        node.put("job", m.getJobname());
+        node.put("type", m.getType().name());
+        node.put("created", m.getCreated());
+        if (m.getParentSpanId() != null) {
+            node.put("parentSpanId", m.getParentSpanId());
+        }
+        ObjectNode properties = node.putObject("properties");
+        for (Map.Entry<String, String> p : m.getProperties().entrySet()) {
+            properties.put(p.getKey(), p.getValue());
+        }
+        node.put("content", m.getContent());
+        SendOptions o = m.getOptions();
+        if (o != null) {
+            if (o.getDeliveryMode() != null) {
+                node.put("deliveryMode", o.getDeliveryMode().name());
+            }
+            if (o.getPriority() != null) {
+                node.put("priority", o.getPriority().intValue());
+            }
+            if (o.getTimeToLive() != null) {
+                node.put("timeToLive", o.getTimeToLive().intValue());
+            }
+        }
+        return node;
+    }
+
+    private Entry fromJson(JsonNode node) {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        Iterator<Map.Entry<String, JsonNode>> it = node.path("properties").fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> p = it.next();
+            properties.put(p.getKey(), p.getValue().asText());
+        }
+        SendOptions options = new SendOptions(
+                SendOptions.DeliveryMode.fromString(node.path("deliveryMode").asText(null)),
+                node.has("priority") ? node.get("priority").asInt() : null,
+                node.has("timeToLive") ? node.get("timeToLive").asInt() : null);
+        OutgoingMessage m = new OutgoingMessage(node.get("id").asText(),
+                node.path("job").asText(null),
+                MESSAGE_TYPE.valueOf(node.get("type").asText()),
+                properties,
+                node.path("content").asText(null),
+                options,
+                node.path("created").asLong(),
+                node.path("parentSpanId").asText(null));
+        return new Entry(node.get("provider").asText(), m);
+    }
+}
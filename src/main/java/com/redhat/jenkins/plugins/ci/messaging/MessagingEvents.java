@@ -0,0 +1,249 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * JDK Flight Recorder events for the stages a message goes through, so that
+ * recordings of a stalled controller show where the time went.
+ * <p>
+ * The plugin builds for Java 7, so the event types are defined at runtime
+ * through <code>jdk.jfr.EventFactory</code> when the JVM has it (JDK 11, and
+ * the JDK 8 updates with JFR). Elsewhere, and whenever no recording enables an
+ * event, {@link #begin} returns a span that does nothing.
+ */
+public final class MessagingEvents {
+
+    private static final Logger log = Logger.getLogger(MessagingEvents.class.getName());
+
+    public enum Stage {
+        RECEIVE("Receive", "Messages taken from the messaging server"),
+        DECODE("Decode", "Message turned into build parameters"),
+        SELECTOR("Selector Evaluation", "Selector evaluated in Jenkins against a message"),
+        SCHEDULE("Schedule Build", "Build put in the queue for a message"),
+        SEND("Send", "Messages published to the messaging server"),
+        WAIT("Wait For Message", "Build step waiting for a message");
+
+        private final String label;
+        private final String description;
+
+        Stage(String label, String description) {
+            this.label = label;
+            this.description = description;
+        }
+    }
+
+    private static final Recorder recorder = Recorder.create();
+
+    private MessagingEvents() {
+    }
+
+    public static boolean isAvailable() {
+        return recorder != null;
+    }
+
+    /**
+     * Starts timing a stage. Cheap when no recording enables its event.
+     */
+    public static Span begin(Stage stage) {
+        if (recorder == null) {
+            return Span.NONE;
+        }
+        return recorder.begin(stage);
+    }
+
+    /**
+     * A stage being timed, committed by {@link #end}.
+     */
+    public static final class Span {
+        static final Span NONE = new Span(null);
+
+        private final Object event;
+
+        private Span(Object event) {
+            this.event = event;
+        }
+
+        /**
+         * @param messageId null if there is none or more than one message
+         * @param size length of the message body or bodies, in characters
+         * @param count number of messages
+         */
+        public void end(String provider, String job, String messageId, long size, int count) {
+            if (event != null) {
+                recorder.end(event, provider, job, messageId, size, count);
+            }
+        }
+    }
+
+    /**
+     * Bound to the JFR API once it is known to be there.
+     */
+    private static final class Recorder {
+        private final Object[] factories;
+        private final Object[] types;
+        private final MethodHandle newEvent;
+        private final MethodHandle isEnabled;
+        private final MethodHandle begin;
+        private final MethodHandle end;
+        private final MethodHandle shouldCommit;
+        private final MethodHandle set;
+        private final MethodHandle commit;
+
+        private Recorder(Object[] factories, Object[] types, MethodHandle newEvent, MethodHandle isEnabled,
+                MethodHandle begin, MethodHandle end, MethodHandle shouldCommit, MethodHandle set, MethodHandle commit) {
+            this.factories = factories;
+            this.types = types;
+            this.newEvent = newEvent;
+            this.isEnabled = isEnabled;
+            this.begin = begin;
+            this.end = end;
+            this.shouldCommit = shouldCommit;
+            this.set = set;
+            this.commit = commit;
+        }
+
+        static Recorder create() {
+            Class<?> factoryClass;
+            try {
+                factoryClass = Class.forName("jdk.jfr.EventFactory");
+            } catch (ClassNotFoundException e) {
+                log.fine("No JDK Flight Recorder API, not emitting CI messaging events.");
+                return null;
+            } catch (LinkageError e) {
+                log.fine("No JDK Flight Recorder API, not emitting CI messaging events.");
+                return null;
+            }
+            try {
+                Class<?> elementClass = Class.forName("jdk.jfr.AnnotationElement");
+                Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+                Class<?> eventClass = Class.forName("jdk.jfr.Event");
+                Class<?> typeClass = Class.forName("jdk.jfr.EventType");
+                Constructor<?> element = elementClass.getConstructor(Class.class, Object.class);
+                Constructor<?> descriptor = descriptorClass.getConstructor(Class.class, String.class, List.class);
+                Method create = factoryClass.getMethod("create", List.class, List.class);
+                Method getEventType = factoryClass.getMethod("getEventType");
+                Class<? extends Annotation> name = annotation("jdk.jfr.Name");
+                Class<? extends Annotation> label = annotation("jdk.jfr.Label");
+                Class<? extends Annotation> description = annotation("jdk.jfr.Description");
+                Class<? extends Annotation> category = annotation("jdk.jfr.Category");
+                Class<? extends Annotation> stackTrace = annotation("jdk.jfr.StackTrace");
+
+                List<Object> fields = new ArrayList<Object>();
+                fields.add(descriptor.newInstance(String.class, "provider",
+                        Arrays.asList(element.newInstance(label, "Provider"))));
+                fields.add(descriptor.newInstance(String.class, "job",
+                        Arrays.asList(element.newInstance(label, "Job"))));
+                fields.add(descriptor.newInstance(String.class, "messageId",
+                        Arrays.asList(element.newInstance(label, "Message ID"))));
+                fields.add(descriptor.newInstance(long.class, "size",
+                        Arrays.asList(element.newInstance(label, "Size"),
+                                element.newInstance(description, "Length of the message bodies, in characters"))));
+                fields.add(descriptor.newInstance(int.class, "count",
+                        Arrays.asList(element.newInstance(label, "Messages"))));
+
+                Stage[] stages = Stage.values();
+                Object[] factories = new Object[stages.length];
+                Object[] types = new Object[stages.length];
+                for (Stage stage : stages) {
+                    List<Object> annotations = Arrays.asList(
+                            element.newInstance(name, "com.redhat.jenkins.plugins.ci." + stage.label.replace(" ", "")),
+                            element.newInstance(label, stage.label),
+                            element.newInstance(description, stage.description),
+                            element.newInstance(category, new String[] {"Jenkins", "CI Messaging"}),
+                            // The stage says where it comes from.
+                            element.newInstance(stackTrace, false));
+                    factories[stage.ordinal()] = create.invoke(null, annotations, fields);
+                    types[stage.ordinal()] = getEventType.invoke(factories[stage.ordinal()]);
+                }
+
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                MethodType objectToVoid = MethodType.methodType(void.class, Object.class);
+                return new Recorder(factories, types,
+                        lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(eventClass))
+                                .asType(MethodType.methodType(Object.class, Object.class)),
+                        lookup.findVirtual(typeClass, "isEnabled", MethodType.methodType(boolean.class))
+                                .asType(MethodType.methodType(boolean.class, Object.class)),
+                        lookup.findVirtual(eventClass, "begin", MethodType.methodType(void.class))
+                                .asType(objectToVoid),
+                        lookup.findVirtual(eventClass, "end", MethodType.methodType(void.class))
+                                .asType(objectToVoid),
+                        lookup.findVirtual(eventClass, "shouldCommit", MethodType.methodType(boolean.class))
+                                .asType(MethodType.methodType(boolean.class, Object.class)),
+                        lookup.findVirtual(eventClass, "set", MethodType.methodType(void.class, int.class, Object.class))
+                                .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class)),
+                        lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class))
+                                .asType(objectToVoid));
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Unable to define the CI messaging Flight Recorder events.", e);
+                return null;
+            }
+        }
+
+        private static Class<? extends Annotation> annotation(String name) throws ClassNotFoundException {
+            return Class.forName(name).asSubclass(Annotation.class);
+        }
+
+        Span begin(Stage stage) {
+            try {
+                if (!(boolean) isEnabled.invokeExact(types[stage.ordinal()])) {
+                    return Span.NONE;
+                }
+                Object event = (Object) newEvent.invokeExact(factories[stage.ordinal()]);
+                begin.invokeExact(event);
+                return new Span(event);
+            } catch (Throwable t) {
+                log.log(Level.FINE, "Unable to begin " + stage + " event.", t);
+                return Span.NONE;
+            }
+        }
+
+        void end(Object event, String provider, String job, String messageId, long size, int count) {
+            try {
+                end.invokeExact(event);
+                if ((boolean) shouldCommit.invokeExact(event)) {
+                    set.invokeExact(event, 0, (Object) provider);
+                    set.invokeExact(event, 1, (Object) job);
+                    set.invokeExact(event, 2, (Object) messageId);
+                    set.invokeExact(event, 3, (Object) size);
+                    set.invokeExact(event, 4, (Object) count);
+                    commit.invokeExact(event);
+                }
+            } catch (Throwable t) {
+                log.log(Level.FINE, "Unable to commit event.", t);
+            }
+        }
+    }
+}
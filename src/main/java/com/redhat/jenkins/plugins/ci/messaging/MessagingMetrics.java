@@ -0,0 +1,235 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import jenkins.metrics.api.Metrics;
+import jenkins.model.Jenkins;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Publishes the messaging metrics through the Metrics plugin, when it is
+ * installed. Nothing else in the plugin refers to the Metrics API, so that it
+ * stays an optional dependency.
+ */
+public final class MessagingMetrics {
+
+    private static final Logger log = Logger.getLogger(MessagingMetrics.class.getName());
+
+    public static final String PREFIX = "jms-messaging";
+
+    private MessagingMetrics() {
+    }
+
+    public static boolean isAvailable() {
+        Jenkins jenkins = Jenkins.getInstance();
+        return jenkins != null && jenkins.getPlugin("metrics") != null;
+    }
+
+    static void register(CircuitBreaker breaker) {
+        if (!isAvailable()) {
+            return;
+        }
+        try {
+            Registrar.register(breaker);
+        } catch (LinkageError e) {
+            log.log(Level.FINE, "Metrics API not usable, not publishing messaging metrics.", e);
+        }
+    }
+
+    static void register(Bulkhead bulkhead) {
+        if (!isAvailable()) {
+            return;
+        }
+        try {
+            Registrar.register(bulkhead);
+        } catch (LinkageError e) {
+            log.log(Level.FINE, "Metrics API not usable, not publishing messaging metrics.", e);
+        }
+    }
+
+    static void register(String name, Object series) {
+        if (!isAvailable()) {
+            return;
+        }
+        try {
+            if (series instanceof MessagingStats.Distribution) {
+                Registrar.register(name, (MessagingStats.Distribution) series);
+            } else {
+                Registrar.register(name, (MessagingStats.Counter) series);
+            }
+        } catch (LinkageError e) {
+            log.log(Level.FINE, "Metrics API not usable, not publishing messaging metrics.", e);
+        }
+    }
+
+    static void unregister(String name, Object series) {
+        if (!isAvailable()) {
+            return;
+        }
+        try {
+            Registrar.remove(name, series instanceof MessagingStats.Distribution);
+        } catch (LinkageError e) {
+            log.log(Level.FINE, "Metrics API not usable, not publishing messaging metrics.", e);
+        }
+    }
+
+    /**
+     * Only loaded once the Metrics plugin is known to be there.
+     */
+    private static final class Registrar {
+
+        private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+        static void register(final CircuitBreaker breaker) {
+            String name = MetricRegistry.name(PREFIX, "provider", breaker.getProviderName(), "circuit");
+            gauge(MetricRegistry.name(name, "state"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return breaker.getState().getValue();
+                }
+            });
+            gauge(MetricRegistry.name(name, "rejected"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return breaker.getRejectedCount();
+                }
+            });
+            gauge(MetricRegistry.name(name, "timeouts"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return breaker.getTimeoutCount();
+                }
+            });
+            gauge(MetricRegistry.name(name, "trips"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return breaker.getTripCount();
+                }
+            });
+        }
+
+        static void register(final Bulkhead bulkhead) {
+            String name = MetricRegistry.name(PREFIX, "provider", bulkhead.getProviderName(), "bulkhead");
+            gauge(MetricRegistry.name(name, "calls", "active"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return bulkhead.getActiveCalls();
+                }
+            });
+            gauge(MetricRegistry.name(name, "calls", "queued"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return bulkhead.getQueuedCalls();
+                }
+            });
+            gauge(MetricRegistry.name(name, "calls", "rejected"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return bulkhead.getRejectedCalls();
+                }
+            });
+            gauge(MetricRegistry.name(name, "asyncSends", "pending"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return bulkhead.getPendingAsyncSends();
+                }
+            });
+            gauge(MetricRegistry.name(name, "consumers", "active"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return bulkhead.getActiveConsumers();
+                }
+            });
+            gauge(MetricRegistry.name(name, "consumers", "rejected"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return bulkhead.getRejectedConsumers();
+                }
+            });
+            gauge(MetricRegistry.name(name, "dispatchers", "active"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return bulkhead.getActiveDispatchers();
+                }
+            });
+        }
+
+        static void register(String name, final MessagingStats.Counter counter) {
+            gauge(name, new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return counter.get();
+                }
+            });
+        }
+
+        // The Metrics plugin has no use for the buckets, only for what can
+        // be computed from them.
+        static void register(String name, final MessagingStats.Distribution histogram) {
+            gauge(MetricRegistry.name(name, "count"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return histogram.getCount();
+                }
+            });
+            gauge(MetricRegistry.name(name, "sum"), new Gauge<Double>() {
+                @Override
+                public Double getValue() {
+                    return histogram.getSum();
+                }
+            });
+            for (final double q : QUANTILES) {
+                gauge(MetricRegistry.name(name, "p" + Math.round(q * 100)), new Gauge<Double>() {
+                    @Override
+                    public Double getValue() {
+                        return histogram.getQuantile(q);
+                    }
+                });
+            }
+        }
+
+        static void remove(String name, boolean histogram) {
+            MetricRegistry registry = Metrics.metricRegistry();
+            if (!histogram) {
+                registry.remove(name);
+                return;
+            }
+            registry.remove(MetricRegistry.name(name, "count"));
+            registry.remove(MetricRegistry.name(name, "sum"));
+            for (double q : QUANTILES) {
+                registry.remove(MetricRegistry.name(name, "p" + Math.round(q * 100)));
+            }
+        }
+
+        private static void gauge(String name, Gauge<?> gauge) {
+            MetricRegistry registry = Metrics.metricRegistry();
+            registry.remove(name);
+            registry.register(name, gauge);
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Counters and histograms of the messaging hot paths. Recording one is a map
+ * lookup and a few atomic operations, so they are always on. They are served
+ * in the Prometheus text format by {@link MessagingStatsAction}, and published
+ * through the Metrics plugin when it is installed.
+ */
+public final class MessagingStats {
+
+    public static final String PREFIX = "jms_messaging_";
+
+    private static final double[] SECONDS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60};
+    private static final double[] SELECTOR_SECONDS = {1e-6, 5e-6, 1e-5, 5e-5, 1e-4, 5e-4, 1e-3, 5e-3, 1e-2};
+    private static final double[] SIZES = {256, 1024, 4096, 16384, 65536, 262144, 1048576};
+
+    private static final List<Family<?>> families = new CopyOnWriteArrayList<Family<?>>();
+
+    public static final CounterFamily RECEIVED = new CounterFamily("messages_received_total",
+            "Messages received by job subscriptions.", false, "provider", "job");
+    public static final CounterFamily MATCHED = new CounterFamily("messages_matched_total",
+            "Messages that matched the selector of a job and were handed to its trigger.", false, "provider", "job");
+    public static final CounterFamily DROPPED = new CounterFamily("messages_dropped_total",
+            "Matched messages that did not schedule a build of their own.", false, "provider", "job", "reason");
+    public static final CounterFamily SENT = new CounterFamily("messages_sent_total",
+            "Messages published.", false, "provider", "result");
+    public static final CounterFamily RECONNECTS = new CounterFamily("reconnects_total",
+            "Times job subscriptions connected again after losing their connection.", false, "provider");
+    public static final CounterFamily SUBSCRIPTIONS = new CounterFamily("subscriptions_active",
+            "Job subscriptions currently open.", true, "provider");
+    public static final HistogramFamily SELECTOR_TIME = new HistogramFamily("selector_evaluation_seconds",
+            "Time spent evaluating selectors in Jenkins, for providers without server side selectors.",
+            SELECTOR_SECONDS, "provider");
+    public static final HistogramFamily QUEUE_LATENCY = new HistogramFamily("receive_to_queue_seconds",
+            "Time from receiving a message to putting its build in the queue.", SECONDS, "provider", "job");
+    public static final HistogramFamily SEND_TIME = new HistogramFamily("send_seconds",
+            "Time spent publishing a batch of messages.", SECONDS, "provider");
+    public static final HistogramFamily MESSAGE_SIZE = new HistogramFamily("message_size_characters",
+            "Length of message bodies.", SIZES, "provider", "direction");
+    public static final SummaryFamily TRIGGER_LATENCY = new SummaryFamily("trigger_latency_seconds",
+            "Time from publishing a message to its build being received, queued and started, per job.",
+            "provider", "job", "stage");
+
+    private MessagingStats() {
+    }
+
+    /**
+     * Drops the series of a job that was deleted or renamed.
+     */
+    public static void forgetJob(String jobname) {
+        for (Family<?> f : families) {
+            f.forget("job", jobname);
+        }
+    }
+
+    public static void writePrometheus(Writer w) throws IOException {
+        for (Family<?> f : families) {
+            f.write(w);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Series sharing a name and label names, told apart by their label values.
+     */
+    public abstract static class Family<S> {
+        private final String name;
+        private final String help;
+        private final String[] labelNames;
+        private final ConcurrentMap<List<String>, S> series = new ConcurrentHashMap<List<String>, S>();
+
+        Family(String name, String help, String... labelNames) {
+            this.name = name;
+            this.help = help;
+            this.labelNames = labelNames;
+            families.add(this);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param values one per label name, in order
+         */
+        public S labels(String... values) {
+            if (values.length != labelNames.length) {
+                throw new IllegalArgumentException(name + " takes " + labelNames.length + " label value(s)");
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    values[i] = "";
+                }
+            }
+            List<String> key = Arrays.asList(values);
+            S s = series.get(key);
+            if (s == null) {
+                S created = create();
+                s = series.putIfAbsent(key, created);
+                if (s == null) {
+                    s = created;
+                    MessagingMetrics.register(metricName(key), created);
+                }
+            }
+            return s;
+        }
+
+        abstract S create();
+
+        abstract String type();
+
+        abstract void write(Writer w, String labels, S s) throws IOException;
+
+        private String metricName(List<String> values) {
+            StringBuilder sb = new StringBuilder(MessagingMetrics.PREFIX).append('.').append(name);
+            for (String v : values) {
+                sb.append('.').append(v);
+            }
+            return sb.toString();
+        }
+
+        void forget(String labelName, String value) {
+            int index = Arrays.asList(labelNames).indexOf(labelName);
+            if (index < 0) {
+                return;
+            }
+            for (Iterator<Map.Entry<List<String>, S>> it = series.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<List<String>, S> e = it.next();
+                if (e.getKey().get(index).equals(value)) {
+                    it.remove();
+                    MessagingMetrics.unregister(metricName(e.getKey()), e.getValue());
+                }
+            }
+        }
+
+        void write(Writer w) throws IOException {
+            if (series.isEmpty()) {
+                return;
+            }
+            w.write("# HELP " + PREFIX + name + " " + help + "\n");
+            w.write("# TYPE " + PREFIX + name + " " + type() + "\n");
+            for (Map.Entry<List<String>, S> e : series.entrySet()) {
+                StringBuilder labels = new StringBuilder();
+                for (int i = 0; i < labelNames.length; i++) {
+                    if (i > 0) {
+                        labels.append(',');
+                    }
+                    labels.append(labelNames[i]).append("=\"").append(escape(e.getKey().get(i))).append('"');
+                }
+                write(w, labels.toString(), e.getValue());
+            }
+        }
+    }
+
+    public static final class SummaryFamily extends Family<Summary> {
+
+        SummaryFamily(String name, String help, String... labelNames) {
+            super(name, help, labelNames);
+        }
+
+        @Override
+        Summary create() {
+            return new Summary();
+        }
+
+        @Override
+        String type() {
+            return "summary";
+        }
+
+        @Override
+        void write(Writer w, String labels, Summary s) throws IOException {
+            String base = PREFIX + getName();
+            for (double q : Summary.QUANTILES) {
+                w.write(base + "{" + labels + ",quantile=\"" + format(q) + "\"} " + format(s.getQuantile(q)) + "\n");
+            }
+            w.write(base + "_sum{" + labels + "} " + format(s.getSum()) + "\n");
+            w.write(base + "_count{" + labels + "} " + s.getCount() + "\n");
+        }
+    }
+
+    public static final class CounterFamily extends Family<Counter> {
+        private final boolean gauge;
+
+        /**
+         * @param gauge true for a value that goes down as well as up
+         */
+        CounterFamily(String name, String help, boolean gauge, String... labelNames) {
+            super(name, help, labelNames);
+            this.gauge = gauge;
+        }
+
+        @Override
+        Counter create() {
+            return new Counter();
+        }
+
+        @Override
+        String type() {
+            return gauge ? "gauge" : "counter";
+        }
+
+        @Override
+        void write(Writer w, String labels, Counter c) throws IOException {
+            w.write(PREFIX + getName() + "{" + labels + "} " + c.get() + "\n");
+        }
+    }
+
+    public static final class HistogramFamily extends Family<Histogram> {
+        private final double[] bounds;
+
+        HistogramFamily(String name, String help, double[] bounds, String... labelNames) {
+            super(name, help, labelNames);
+            this.bounds = bounds;
+        }
+
+        @Override
+        Histogram create() {
+            return new Histogram(bounds);
+        }
+
+        @Override
+        String type() {
+            return "histogram";
+        }
+
+        @Override
+        void write(Writer w, String labels, Histogram h) throws IOException {
+            String base = PREFIX + getName();
+            String sep = labels.isEmpty() ? "" : ",";
+            long[] counts = h.getCounts();
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += counts[i];
+                w.write(base + "_bucket{" + labels + sep + "le=\"" + format(bounds[i]) + "\"} " + cumulative + "\n");
+            }
+            cumulative += counts[bounds.length];
+            w.write(base + "_bucket{" + labels + sep + "le=\"+Inf\"} " + cumulative + "\n");
+            w.write(base + "_sum{" + labels + "} " + format(h.getSum()) + "\n");
+            w.write(base + "_count{" + labels + "} " + cumulative + "\n");
+        }
+    }
+
+    public static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void inc() {
+            value.incrementAndGet();
+        }
+
+        public void inc(long n) {
+            value.addAndGet(n);
+        }
+
+        public void dec() {
+            value.decrementAndGet();
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Observations summarized by their count, sum and quantiles.
+     */
+    public abstract static class Distribution {
+
+        public abstract void observe(double value);
+
+        public void observeNanos(long nanos) {
+            observe(nanos / 1e9);
+        }
+
+        public abstract long getCount();
+
+        public abstract double getSum();
+
+        public abstract double getQuantile(double q);
+    }
+
+    /**
+     * Estimates quantiles as they come with the P-square algorithm (Jain and
+     * Chlamtac), in constant space, so that a trigger lagging behind shows up
+     * without keeping its history.
+     */
+    public static final class Summary extends Distribution {
+        static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+        private final P2[] estimators = new P2[QUANTILES.length];
+        private long count;
+        private double sum;
+
+        Summary() {
+            for (int i = 0; i < QUANTILES.length; i++) {
+                estimators[i] = new P2(QUANTILES[i]);
+            }
+        }
+
+        @Override
+        public synchronized void observe(double value) {
+            count++;
+            sum += value;
+            for (P2 e : estimators) {
+                e.add(value);
+            }
+        }
+
+        @Override
+        public synchronized long getCount() {
+            return count;
+        }
+
+        @Override
+        public synchronized double getSum() {
+            return sum;
+        }
+
+        /**
+         * @return the estimate, 0 without observations, NaN for a quantile
+         * that is not tracked
+         */
+        @Override
+        public synchronized double getQuantile(double q) {
+            for (P2 e : estimators) {
+                if (e.p == q) {
+                    return e.get();
+                }
+            }
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * One quantile, tracked by five markers.
+     */
+    static final class P2 {
+        final double p;
+        private final double[] q = new double[5];
+        private final double[] n = new double[5];
+        private final double[] desired = new double[5];
+        private final double[] increments;
+        private int count;
+
+        P2(double p) {
+            this.p = p;
+            this.increments = new double[] {0, p / 2, p, (1 + p) / 2, 1};
+        }
+
+        void add(double x) {
+            if (count < 5) {
+                q[count++] = x;
+                if (count == 5) {
+                    Arrays.sort(q);
+                    for (int i = 0; i < 5; i++) {
+                        n[i] = i;
+                    }
+                    desired[0] = 0;
+                    desired[1] = 2 * p;
+                    desired[2] = 4 * p;
+                    desired[3] = 2 + 2 * p;
+                    desired[4] = 4;
+                }
+                return;
+            }
+            count++;
+            int k;
+            if (x < q[0]) {
+                q[0] = x;
+                k = 0;
+            } else if (x >= q[4]) {
+                q[4] = x;
+                k = 3;
+            } else {
+                k = 0;
+                while (x >= q[k + 1]) {
+                    k++;
+                }
+            }
+            for (int i = k + 1; i < 5; i++) {
+                n[i]++;
+            }
+            for (int i = 0; i < 5; i++) {
+                desired[i] += increments[i];
+            }
+            for (int i = 1; i <= 3; i++) {
+                double d = desired[i] - n[i];
+                if ((d >= 1 && n[i + 1] - n[i] > 1) || (d <= -1 && n[i - 1] - n[i] < -1)) {
+                    int s = d >= 0 ? 1 : -1;
+                    double candidate = q[i] + s / (n[i + 1] - n[i - 1])
+                            * ((n[i] - n[i - 1] + s) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+                            + (n[i + 1] - n[i] - s) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+                    if (q[i - 1] < candidate && candidate < q[i + 1]) {
+                        q[i] = candidate;
+                    } else {
+                        q[i] = q[i] + s * (q[i + s] - q[i]) / (n[i + s] - n[i]);
+                    }
+                    n[i] += s;
+                }
+            }
+        }
+
+        double get() {
+            if (count == 0) {
+                return 0;
+            }
+            if (count < 5) {
+                double[] sorted = Arrays.copyOf(q, count);
+                Arrays.sort(sorted);
+                return sorted[Math.min(count - 1, (int) Math.round(p * (count - 1)))];
+            }
+            return q[2];
+        }
+    }
+
+    /**
+     * Counts observations in fixed buckets, like a Prometheus histogram.
+     */
+    public static final class Histogram extends Distribution {
+        private final double[] bounds;
+        // One more than the bounds, for the observations above the last one.
+        private final AtomicLongArray counts;
+        private final AtomicLong sum = new AtomicLong(Double.doubleToLongBits(0));
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.counts = new AtomicLongArray(bounds.length + 1);
+        }
+
+        @Override
+        public void observe(double value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+            counts.incrementAndGet(i);
+            long old;
+            do {
+                old = sum.get();
+            } while (!sum.compareAndSet(old, Double.doubleToLongBits(Double.longBitsToDouble(old) + value)));
+        }
+
+        /**
+         * Observations per bucket, not cumulative.
+         */
+        public long[] getCounts() {
+            long[] c = new long[counts.length()];
+            for (int i = 0; i < c.length; i++) {
+                c[i] = counts.get(i);
+            }
+            return c;
+        }
+
+        @Override
+        public long getCount() {
+            long count = 0;
+            for (long c : getCounts()) {
+                count += c;
+            }
+            return count;
+        }
+
+        @Override
+        public double getSum() {
+            return Double.longBitsToDouble(sum.get());
+        }
+
+        /**
+         * Upper bound of the bucket holding the given quantile, the last bound
+         * when it is above all of them, 0 without observations.
+         */
+        @Override
+        public double getQuantile(double q) {
+            long[] c = getCounts();
+            long total = 0;
+            for (long n : c) {
+                total += n;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * total);
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += c[i];
+                if (cumulative >= rank) {
+                    return bounds[i];
+                }
+            }
+            return bounds[bounds.length - 1];
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import com.redhat.jenkins.plugins.ci.Messages;
+import hudson.Extension;
+import hudson.model.RootAction;
+import hudson.security.Permission;
+import hudson.security.PermissionGroup;
+import hudson.security.PermissionScope;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Serves {@link MessagingStats} in the Prometheus text format at
+ * <code>/jms-messaging-metrics/</code>.
+ */
+@Extension
+public class MessagingStatsAction implements RootAction {
+
+    public static final PermissionGroup PERMISSIONS = new PermissionGroup(MessagingStatsAction.class, Messages._MessagingPermissions());
+
+    /**
+     * Lets a metrics scraper read the endpoint without administering Jenkins.
+     */
+    public static final Permission VIEW_METRICS = new Permission(PERMISSIONS, "ViewMetrics",
+            Messages._ViewMetricsPermissionDescription(), Jenkins.ADMINISTER, PermissionScope.JENKINS);
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "CI Messaging Metrics";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "jms-messaging-metrics";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins jenkins = Jenkins.getInstance();
+        jenkins.checkPermission(Jenkins.READ);
+        jenkins.checkPermission(VIEW_METRICS);
+        rsp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        Writer w = rsp.getWriter();
+        MessagingStats.writePrometheus(w);
+        w.flush();
+    }
+}
@@ -0,0 +1,178 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import com.redhat.jenkins.plugins.ci.CIBuildCause;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.apache.commons.lang.text.StrSubstitutor;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class OutgoingMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Message property carrying {@link #getId()}, so that consumers can drop
+     * copies of a message that was delivered more than once.
+     */
+    public static final String ID_PROPERTY = "CI_MESSAGE_ID";
+
+    private final String id;
+    private final String jobname;
+    private final MESSAGE_TYPE type;
+    private final Map<String, String> properties;
+    private final String content;
+    private final SendOptions options;
+    private final long created;
+    private final String parentSpanId;
+
+    public OutgoingMessage(String id, String jobname, MESSAGE_TYPE type, Map<String, String> properties,
+                           String content, SendOptions options, long created) {
+        this(id, jobname, type, properties, content, options, created, null);
+    }
+
+    /**
+     * @param parentSpanId span of the sending build, when it was itself
+     * triggered by a traced message
+     */
+    public OutgoingMessage(String id, String jobname, MESSAGE_TYPE type, Map<String, String> properties,
+                           String content, SendOptions options, long created, String parentSpanId) {
+        this.id = id;
+        this.jobname = jobname;
+        this.type = type;
+        this.properties = Collections.unmodifiableMap(new LinkedHashMap<String, String>(properties));
+        this.content = content;
+        this.options = options;
+        this.created = created;
+        this.parentSpanId = parentSpanId;
+    }
+
+    /**
+     * Unique and stable for the life of the message, including retries.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getJobname() {
+        return jobname;
+    }
+
+    public MESSAGE_TYPE getType() {
+        return type;
+    }
+
+    /**
+     * The CI_* properties followed by the user ones, all substituted.
+     */
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return the options overriding the provider ones, may be null
+     */
+    public SendOptions getOptions() {
+        return options;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * The send span, which the receiving side continues.
+     */
+    public TraceContext getTraceContext() {
+        return TraceContext.parse(properties.get(TraceContext.PROPERTY));
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    /**
+     * Resolves the messages against the build environment, so that they can
+     * be delivered once the build is gone.
+     */
+    public static List<OutgoingMessage> create(Run<?, ?> build, TaskListener listener,
+                                               List<CIMessage> messages,
+                                               SendOptions options) throws IOException, InterruptedException {
+        StrSubstitutor sub = new StrSubstitutor(build.getEnvironment(listener));
+        List<OutgoingMessage> result = new ArrayList<OutgoingMessage>(messages.size());
+        for (CIMessage m : messages) {
+            result.add(create(build, sub, m, options));
+        }
+        return result;
+    }
+
+    private static OutgoingMessage create(Run<?, ?> build, StrSubstitutor sub,
+                                          CIMessage m, SendOptions options) throws IOException {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put("CI_NAME", build.getParent().getName());
+        properties.put("CI_TYPE", m.getMessageType().getMessage());
+        if (!build.isBuilding()) {
+            properties.put("CI_STATUS", (build.getResult() == Result.SUCCESS ? "passed" : "failed"));
+        }
+        // Continues the trace of the message that triggered the build, if any.
+        CIBuildCause cause = build.getCause(CIBuildCause.class);
+        TraceContext parent = cause == null ? null : TraceContext.parse(cause.getTraceparent());
+        TraceContext trace = parent == null ? TraceContext.newRoot() : parent.newChild();
+        properties.put(TraceContext.PROPERTY, trace.toString());
+
+        String props = m.getMessageProperties();
+        if (props != null && !props.trim().equals("")) {
+            Properties p = new Properties();
+            p.load(new StringReader(props));
+            @SuppressWarnings("unchecked")
+            Enumeration<String> e = (Enumeration<String>) p.propertyNames();
+            while (e.hasMoreElements()) {
+                String key = e.nextElement();
+                properties.put(key, sub.replace(p.getProperty(key)));
+            }
+        }
+
+        return new OutgoingMessage(UUID.randomUUID().toString(), build.getParent().getName(), m.getMessageType(),
+                properties, sub.replace(m.getMessageContent()), options, System.currentTimeMillis(),
+                parent == null ? null : parent.getSpanId());
+    }
+}
@@ -0,0 +1,252 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * What the selector of a trigger, or of a build waiting for a message, costs
+ * and how much it lets through. Jenkins evaluates the FedMsg selectors, so
+ * their CPU time and evaluations are known; the JMS broker evaluates the
+ * ActiveMQ ones, only their matches are.
+ */
+public final class SelectorProfile {
+
+    public enum Kind {
+        TRIGGER("Trigger"),
+        WAIT("Wait for message");
+
+        private final String displayName;
+
+        Kind(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private static final int MAX_PROFILES = Integer.getInteger(SelectorProfile.class.getName() + ".maxProfiles", 1000);
+
+    private static final ConcurrentMap<String, SelectorProfile> profiles = new ConcurrentHashMap<String, SelectorProfile>();
+    // Wait selectors usually differ from build to build, the least recently
+    // used of them make room for new ones. Trigger profiles live as long as
+    // their job does.
+    private static final AtomicInteger waitProfiles = new AtomicInteger();
+    private static final AtomicLong clock = new AtomicLong();
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+
+    private final String providerName;
+    private final Kind kind;
+    private final String jobName;
+    private final String selector;
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+    private volatile long lastUsed;
+
+    private SelectorProfile(String providerName, Kind kind, String jobName, String selector) {
+        this.providerName = providerName;
+        this.kind = kind;
+        this.jobName = jobName;
+        this.selector = selector;
+        this.lastUsed = clock.incrementAndGet();
+    }
+
+    /**
+     * Looked up once per subscription or wait, the caller keeps the profile
+     * for the messages it receives.
+     */
+    public static SelectorProfile get(String providerName, Kind kind, String jobName, String selector) {
+        String key = providerName + '\0' + kind + '\0' + jobName + '\0' + selector;
+        SelectorProfile p = profiles.get(key);
+        if (p != null) {
+            p.lastUsed = clock.incrementAndGet();
+            return p;
+        }
+        SelectorProfile created = new SelectorProfile(providerName, kind, jobName, selector);
+        p = profiles.putIfAbsent(key, created);
+        if (p != null) {
+            p.lastUsed = clock.incrementAndGet();
+            return p;
+        }
+        if (kind == Kind.WAIT && waitProfiles.incrementAndGet() > MAX_PROFILES) {
+            dropLeastRecentlyUsedWaits();
+        }
+        return created;
+    }
+
+    private static void dropLeastRecentlyUsedWaits() {
+        while (waitProfiles.get() > MAX_PROFILES) {
+            Map.Entry<String, SelectorProfile> eldest = null;
+            for (Map.Entry<String, SelectorProfile> e : profiles.entrySet()) {
+                if (e.getValue().kind == Kind.WAIT && (eldest == null || e.getValue().lastUsed < eldest.getValue().lastUsed)) {
+                    eldest = e;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            if (profiles.remove(eldest.getKey(), eldest.getValue())) {
+                waitProfiles.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops the profiles of a job that was deleted or renamed.
+     */
+    public static void forgetJob(String jobName) {
+        for (Map.Entry<String, SelectorProfile> e : profiles.entrySet()) {
+            SelectorProfile p = e.getValue();
+            if (jobName.equals(p.jobName) && profiles.remove(e.getKey(), p) && p.kind == Kind.WAIT) {
+                waitProfiles.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * CPU time of the current thread in ns where the JVM measures it, elapsed
+     * time otherwise. Only differences between two calls mean anything.
+     */
+    public static long time() {
+        return CPU_TIME ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    public static boolean isCpuTime() {
+        return CPU_TIME;
+    }
+
+    /**
+     * Records an evaluation in Jenkins.
+     *
+     * @param start {@link #time()} before parsing or evaluating
+     */
+    public void evaluated(boolean matched, long start) {
+        nanos.addAndGet(time() - start);
+        evaluations.incrementAndGet();
+        if (matched) {
+            matches.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records messages that matched on the messaging server.
+     */
+    public void matched(int count) {
+        matches.addAndGet(count);
+    }
+
+    public String getProviderName() {
+        return providerName;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    /**
+     * @return 0 when the messaging server evaluates the selector
+     */
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+    public long getMatches() {
+        return matches.get();
+    }
+
+    public long getNanos() {
+        return nanos.get();
+    }
+
+    public long getNanosPerEvaluation() {
+        long e = evaluations.get();
+        return e == 0 ? 0 : nanos.get() / e;
+    }
+
+    /**
+     * Share of the evaluated messages that matched, -1 when unknown.
+     */
+    public double getMatchRatio() {
+        long e = evaluations.get();
+        return e == 0 ? -1 : (double) matches.get() / e;
+    }
+
+    /**
+     * Highest total time spent evaluating first.
+     */
+    public static List<SelectorProfile> mostExpensive(int limit) {
+        return ranked(new Comparator<SelectorProfile>() {
+            @Override
+            public int compare(SelectorProfile a, SelectorProfile b) {
+                return compareLongs(b.getNanos(), a.getNanos());
+            }
+        }, limit);
+    }
+
+    /**
+     * Highest match ratio first, then the selectors evaluated by the server
+     * by number of matches.
+     */
+    public static List<SelectorProfile> leastSelective(int limit) {
+        return ranked(new Comparator<SelectorProfile>() {
+            @Override
+            public int compare(SelectorProfile a, SelectorProfile b) {
+                int c = Double.compare(b.getMatchRatio(), a.getMatchRatio());
+                return c != 0 ? c : compareLongs(b.getMatches(), a.getMatches());
+            }
+        }, limit);
+    }
+
+    private static List<SelectorProfile> ranked(Comparator<SelectorProfile> order, int limit) {
+        List<SelectorProfile> all = new ArrayList<SelectorProfile>(profiles.values());
+        Collections.sort(all, order);
+        return all.subList(0, Math.min(limit, all.size()));
+    }
+
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : a == b ? 0 : 1;
+    }
+}
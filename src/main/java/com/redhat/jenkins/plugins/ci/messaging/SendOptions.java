@@ -0,0 +1,194 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Serializable;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class SendOptions implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final SendOptions DEFAULT = new SendOptions(null, null, null);
+
+    public static enum DeliveryMode {
+        PERSISTENT("Persistent"),
+        NON_PERSISTENT("Non-persistent");
+
+        private final String displayName;
+
+        DeliveryMode(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public static DeliveryMode fromString(String value) {
+            for (DeliveryMode m : values()) {
+                if (m.name().equalsIgnoreCase(value)) {
+                    return m;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Items for a delivery mode select box, with a leading "provider
+         * default" entry when the mode is optional.
+         */
+        public static ListBoxModel items(String current, boolean optional) {
+            DeliveryMode selected = fromString(current);
+            ListBoxModel items = new ListBoxModel();
+            if (optional) {
+                items.add(new ListBoxModel.Option("Provider default", "", selected == null));
+            }
+            for (DeliveryMode m : values()) {
+                items.add(new ListBoxModel.Option(m.getDisplayName(), m.name(), m == selected));
+            }
+            return items;
+        }
+    }
+
+    private final DeliveryMode deliveryMode;
+    private final Integer priority;
+    private final Integer timeToLive;
+
+    /**
+     * @param deliveryMode null to use the provider default
+     * @param priority 0 (lowest) to 9 (highest), null to use the provider default
+     * @param timeToLive in minutes, 0 for no expiration, null to use the provider default
+     */
+    public SendOptions(DeliveryMode deliveryMode, Integer priority, Integer timeToLive) {
+        this.deliveryMode = deliveryMode;
+        this.priority = priority;
+        this.timeToLive = timeToLive;
+    }
+
+    public DeliveryMode getDeliveryMode() {
+        return deliveryMode;
+    }
+
+    public Integer getPriority() {
+        return priority;
+    }
+
+    public Integer getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Fills the unset options from the given defaults.
+     */
+    public SendOptions withDefaults(SendOptions defaults) {
+        if (defaults == null) {
+            return this;
+        }
+        return new SendOptions(deliveryMode != null ? deliveryMode : defaults.getDeliveryMode(),
+                priority != null ? priority : defaults.getPriority(),
+                timeToLive != null ? timeToLive : defaults.getTimeToLive());
+    }
+
+    private static final String PRIORITY_RANGE = "Priority must be between 0 (lowest) and 9 (highest).";
+    private static final String TIME_TO_LIVE_RANGE = "Time to live must be a number of minutes, 0 for no expiration.";
+
+    public static FormValidation checkPriority(String value) {
+        try {
+            Integer p = parseInteger(value);
+            if (p == null || (p >= 0 && p <= 9)) {
+                return FormValidation.ok();
+            }
+        } catch (NumberFormatException e) {
+        }
+        return FormValidation.error(PRIORITY_RANGE);
+    }
+
+    public static FormValidation checkTimeToLive(String value) {
+        try {
+            Integer ttl = parseInteger(value);
+            if (ttl == null || ttl >= 0) {
+                return FormValidation.ok();
+            }
+        } catch (NumberFormatException e) {
+        }
+        return FormValidation.error(TIME_TO_LIVE_RANGE);
+    }
+
+    /**
+     * Parses the optional priority of a submitted form.
+     *
+     * @throws Descriptor.FormException if it is not a valid priority
+     */
+    public static Integer parsePriority(String value, String field) throws Descriptor.FormException {
+        if (checkPriority(value).kind != FormValidation.Kind.OK) {
+            throw new Descriptor.FormException(PRIORITY_RANGE, field);
+        }
+        return parseInteger(value);
+    }
+
+    /**
+     * Parses the optional time to live of a submitted form.
+     *
+     * @throws Descriptor.FormException if it is not a valid time to live
+     */
+    public static Integer parseTimeToLive(String value, String field) throws Descriptor.FormException {
+        if (checkTimeToLive(value).kind != FormValidation.Kind.OK) {
+            throw new Descriptor.FormException(TIME_TO_LIVE_RANGE, field);
+        }
+        return parseInteger(value);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the priority is out of range
+     */
+    public static Integer validatePriority(Integer priority) {
+        if (priority != null && (priority < 0 || priority > 9)) {
+            throw new IllegalArgumentException(PRIORITY_RANGE);
+        }
+        return priority;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the time to live is negative
+     */
+    public static Integer validateTimeToLive(Integer timeToLive) {
+        if (timeToLive != null && timeToLive < 0) {
+            throw new IllegalArgumentException(TIME_TO_LIVE_RANGE);
+        }
+        return timeToLive;
+    }
+
+    /**
+     * Parses an optional integer form value, blank meaning not set.
+     */
+    public static Integer parseInteger(String value) {
+        value = StringUtils.trimToNull(value);
+        return value == null ? null : Integer.valueOf(value);
+    }
+}
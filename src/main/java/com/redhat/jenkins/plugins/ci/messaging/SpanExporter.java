@@ -0,0 +1,66 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import hudson.ExtensionPoint;
+import jenkins.model.Jenkins;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Receives the spans of the messages going through the plugin: send, broker
+ * dwell, match and queue wait. Trace contexts are propagated whether or not
+ * there is an exporter, spans are only built when there is one.
+ */
+public abstract class SpanExporter implements ExtensionPoint {
+
+    private static final Logger log = Logger.getLogger(SpanExporter.class.getName());
+
+    public abstract void export(TraceSpan span);
+
+    public static List<SpanExporter> all() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return Collections.emptyList();
+        }
+        return jenkins.getExtensionList(SpanExporter.class);
+    }
+
+    public static boolean isEnabled() {
+        return !all().isEmpty();
+    }
+
+    public static void exportSpan(TraceSpan span) {
+        for (SpanExporter exporter : all()) {
+            try {
+                exporter.export(span);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Span exporter " + exporter.getClass().getName() + " failed.", e);
+            }
+        }
+    }
+}
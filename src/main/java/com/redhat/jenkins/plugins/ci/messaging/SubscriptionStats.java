@@ -0,0 +1,145 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Activity of one job subscription over the last minutes, kept in per-second
+ * ring buffers of fixed size, for the subscriptions page.
+ */
+public class SubscriptionStats {
+
+    /** Sliding windows shown, in seconds. */
+    public static final int[] WINDOWS = {60, 300, 900};
+
+    private static final int SIZE = 900;
+
+    // The second each slot is for, a slot for an older second counts as empty.
+    private final long[] seconds = new long[SIZE];
+    private final int[] received = new int[SIZE];
+    private final int[] matched = new int[SIZE];
+    private long totalReceived;
+    private long totalMatched;
+    private long lastReceived;
+    private volatile int buffered;
+
+    public void received(int count) {
+        received(count, System.currentTimeMillis());
+    }
+
+    synchronized void received(int count, long now) {
+        received[slot(now / 1000)] += count;
+        totalReceived += count;
+        lastReceived = now;
+    }
+
+    public void matched(int count) {
+        matched(count, System.currentTimeMillis());
+    }
+
+    synchronized void matched(int count, long now) {
+        matched[slot(now / 1000)] += count;
+        totalMatched += count;
+    }
+
+    private int slot(long second) {
+        int i = (int) (second % SIZE);
+        if (seconds[i] != second) {
+            seconds[i] = second;
+            received[i] = 0;
+            matched[i] = 0;
+        }
+        return i;
+    }
+
+    private long sum(int[] counts, int window, long now) {
+        long second = now / 1000;
+        long sum = 0;
+        for (long s = second - Math.min(window, SIZE) + 1; s <= second; s++) {
+            int i = (int) (s % SIZE);
+            if (seconds[i] == s) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Messages received per second over the last window seconds.
+     */
+    public double getReceivedRate(int window) {
+        return getReceivedRate(window, System.currentTimeMillis());
+    }
+
+    synchronized double getReceivedRate(int window, long now) {
+        return (double) sum(received, window, now) / window;
+    }
+
+    public double getMatchedRate(int window) {
+        return getMatchedRate(window, System.currentTimeMillis());
+    }
+
+    synchronized double getMatchedRate(int window, long now) {
+        return (double) sum(matched, window, now) / window;
+    }
+
+    /**
+     * Share of the messages received over the last window seconds that
+     * matched, -1 if none was received.
+     */
+    public double getMatchRatio(int window) {
+        return getMatchRatio(window, System.currentTimeMillis());
+    }
+
+    synchronized double getMatchRatio(int window, long now) {
+        long r = sum(received, window, now);
+        return r == 0 ? -1 : Math.min(1.0, (double) sum(matched, window, now) / r);
+    }
+
+    public synchronized long getTotalReceived() {
+        return totalReceived;
+    }
+
+    public synchronized long getTotalMatched() {
+        return totalMatched;
+    }
+
+    /**
+     * Time of the last message in ms, 0 if none yet.
+     */
+    public synchronized long getLastReceived() {
+        return lastReceived;
+    }
+
+    /**
+     * Messages received and being turned into builds, see
+     * {@link JMSMessagingWorker#getBuffered} for all those waiting.
+     */
+    public int getBuffered() {
+        return buffered;
+    }
+
+    public void setBuffered(int buffered) {
+        this.buffered = buffered;
+    }
+}
@@ -0,0 +1,101 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * A finished span, handed to the {@link SpanExporter}s. Times are in ms since
+ * the epoch, as they may come from another host.
+ */
+public final class TraceSpan {
+
+    public static final String SEND = "send";
+    public static final String BROKER_DWELL = "broker dwell";
+    public static final String MATCH = "match";
+    public static final String QUEUE_WAIT = "queue wait";
+
+    private final String name;
+    private final TraceContext context;
+    private final String parentSpanId;
+    private final long start;
+    private final long end;
+    private final Map<String, String> attributes;
+
+    /**
+     * @param parentSpanId null for the root span of a trace
+     */
+    public TraceSpan(String name, TraceContext context, String parentSpanId, long start, long end,
+                     Map<String, String> attributes) {
+        this.name = name;
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.start = start;
+        this.end = end;
+        this.attributes = Collections.unmodifiableMap(new LinkedHashMap<String, String>(attributes));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TraceContext getContext() {
+        return context;
+    }
+
+    public String getTraceId() {
+        return context.getTraceId();
+    }
+
+    public String getSpanId() {
+        return context.getSpanId();
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getDuration() {
+        return end - start;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + context + " parent=" + parentSpanId + " " + getDuration() + "ms " + attributes;
+    }
+}
@@ -0,0 +1,112 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import java.util.Map;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class TriggerMessage {
+
+    private final String messageId;
+    private final String summary;
+    private final Map<String, String> params;
+    private final long timestamp;
+    private final long expiration;
+    private final long received = System.nanoTime();
+    private final long receivedTime = System.currentTimeMillis();
+
+    /**
+     * @param summary human readable form of the message, for logging
+     * @param params build parameters extracted from the message
+     * @param timestamp time the message was published in ms, 0 if unknown
+     * @param expiration time the message expires in ms, 0 if it never does
+     */
+    public TriggerMessage(String summary, Map<String, String> params, long timestamp, long expiration) {
+        this(null, summary, params, timestamp, expiration);
+    }
+
+    /**
+     * @param messageId identifies the message on the messaging server, and
+     * stays the same when the message is delivered again; null if unknown
+     */
+    public TriggerMessage(String messageId, String summary, Map<String, String> params, long timestamp, long expiration) {
+        this.messageId = messageId;
+        this.summary = summary;
+        this.params = params;
+        this.timestamp = timestamp;
+        this.expiration = expiration;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * Only needed for logging, so workers may override it to format the
+     * message when it is logged rather than when it is received.
+     */
+    public String getSummary() {
+        return summary;
+    }
+
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the message was received.
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * Time the message was received in ms, comparable with the timestamp.
+     */
+    public long getReceivedTime() {
+        return receivedTime;
+    }
+
+    /**
+     * @return the trace of the sender, null if it sent none
+     */
+    public TraceContext getTraceContext() {
+        return params == null ? null : TraceContext.parse(params.get(TraceContext.PROPERTY));
+    }
+
+    public boolean isExpired(long now) {
+        return expiration != 0 && expiration <= now;
+    }
+
+    public boolean isOlderThan(long now, long maxAgeInMs) {
+        return timestamp != 0 && maxAgeInMs > 0 && now - timestamp > maxAgeInMs;
+    }
+}
@@ -100,6 +100,11 @@ public class FedmsgMessage {
         return this.msgId;
     }
 
+    @JsonProperty("msg_id")
+    public void setMsgId(String msgId) {
+        this.msgId = msgId;
+    }
+
     public final long getI() {
         return this.i;
     }
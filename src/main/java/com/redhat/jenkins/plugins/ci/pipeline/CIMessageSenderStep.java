@@ -5,11 +5,13 @@ import javax.inject.Inject;
 import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
 import com.redhat.jenkins.plugins.ci.Messages;
 import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.SendOptions;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousStepExecution;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import com.redhat.utils.MessageUtils;
@@ -18,6 +20,7 @@ import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
 import hudson.Extension;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 
 /*
@@ -49,6 +52,9 @@ public class CIMessageSenderStep extends AbstractStepImpl {
     private MESSAGE_TYPE messageType;
     private String messageProperties;
     private String messageContent;
+    private SendOptions.DeliveryMode deliveryMode;
+    private Integer priority;
+    private Integer timeToLive;
 
     @DataBoundConstructor
     public CIMessageSenderStep(final String providerName,
@@ -81,6 +87,32 @@ public class CIMessageSenderStep extends AbstractStepImpl {
         this.messageContent = messageContent;
     }
 
+    public SendOptions.DeliveryMode getDeliveryMode() {
+        return deliveryMode;
+    }
+    @DataBoundSetter
+    public void setDeliveryMode(SendOptions.DeliveryMode deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
+    public Integer getPriority() {
+        return priority;
+    }
+    @DataBoundSetter
+    public void setPriority(Integer priority) {
+        this.priority = SendOptions.validatePriority(priority);
+    }
+    public Integer getTimeToLive() {
+        return timeToLive;
+    }
+    @DataBoundSetter
+    public void setTimeToLive(Integer timeToLive) {
+        this.timeToLive = SendOptions.validateTimeToLive(timeToLive);
+    }
+
+    public SendOptions getSendOptions() {
+        return new SendOptions(deliveryMode, priority, timeToLive);
+    }
+
     public String getProviderName() {
         return providerName;
     }
@@ -114,7 +146,8 @@ public class CIMessageSenderStep extends AbstractStepImpl {
                     step.getProviderName(),
                     step.getMessageType(),
                     step.getMessageProperties(),
-                    step.getMessageContent());
+                    step.getMessageContent(),
+                    step.getSendOptions());
             return null;
         }
 
@@ -144,6 +177,18 @@ public class CIMessageSenderStep extends AbstractStepImpl {
             return Messages.MessageNotifier();
         }
 
+        public ListBoxModel doFillDeliveryModeItems(@QueryParameter String deliveryMode) {
+            return SendOptions.DeliveryMode.items(deliveryMode, true);
+        }
+
+        public FormValidation doCheckPriority(@QueryParameter String priority) {
+            return SendOptions.checkPriority(priority);
+        }
+
+        public FormValidation doCheckTimeToLive(@QueryParameter String timeToLive) {
+            return SendOptions.checkTimeToLive(timeToLive);
+        }
+
         public ListBoxModel doFillProviderNameItems() {
             ListBoxModel items = new ListBoxModel();
             for (JMSMessagingProvider provider: GlobalCIConfiguration.get().getConfigs()) {
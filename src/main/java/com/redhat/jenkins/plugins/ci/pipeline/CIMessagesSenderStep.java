@@ -0,0 +1,186 @@
+package com.redhat.jenkins.plugins.ci.pipeline;
+
+import javax.inject.Inject;
+
+import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
+import com.redhat.jenkins.plugins.ci.messaging.CIMessage;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.SendOptions;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import com.redhat.utils.MessageUtils;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CIMessagesSenderStep extends AbstractStepImpl {
+
+    private String providerName;
+    private List<CIMessage> messages;
+    private SendOptions.DeliveryMode deliveryMode;
+    private Integer priority;
+    private Integer timeToLive;
+
+    @DataBoundConstructor
+    public CIMessagesSenderStep(final String providerName,
+                                final List<CIMessage> messages) {
+        super();
+        this.providerName = providerName;
+        this.messages = messages != null ? messages : new ArrayList<CIMessage>();
+    }
+
+    public String getProviderName() {
+        return providerName;
+    }
+
+    public void setProviderName(String providerName) {
+        this.providerName = providerName;
+    }
+
+    public List<CIMessage> getMessages() {
+        return messages;
+    }
+
+    public SendOptions.DeliveryMode getDeliveryMode() {
+        return deliveryMode;
+    }
+    @DataBoundSetter
+    public void setDeliveryMode(SendOptions.DeliveryMode deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
+    public Integer getPriority() {
+        return priority;
+    }
+    @DataBoundSetter
+    public void setPriority(Integer priority) {
+        this.priority = SendOptions.validatePriority(priority);
+    }
+    public Integer getTimeToLive() {
+        return timeToLive;
+    }
+    @DataBoundSetter
+    public void setTimeToLive(Integer timeToLive) {
+        this.timeToLive = SendOptions.validateTimeToLive(timeToLive);
+    }
+
+    public SendOptions getSendOptions() {
+        return new SendOptions(deliveryMode, priority, timeToLive);
+    }
+
+    /**
+     * Executes the sendCIMessages step.
+     */
+    public static class Execution extends AbstractSynchronousStepExecution<Void> {
+
+        @StepContextParameter
+        private transient Run build;
+
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        @Inject
+        private transient CIMessagesSenderStep step;
+
+        @Override
+        protected Void run() throws Exception {
+            if (step.getProviderName() == null) {
+                throw new Exception("providerName not specified!");
+            }
+            if (step.getMessages().isEmpty()) {
+                return null;
+            }
+
+            if (!MessageUtils.sendMessages(build,
+                    listener,
+                    step.getProviderName(),
+                    step.getMessages(),
+                    step.getSendOptions())) {
+                throw new Exception("Failed to send " + step.getMessages().size() + " CI message(s)!");
+            }
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Adds the step as a workflow extension.
+     */
+    @Extension(optional = true)
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        /**
+         * Constructor.
+         */
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "sendCIMessages";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "CI Notifier (batch)";
+        }
+
+        public ListBoxModel doFillProviderNameItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (JMSMessagingProvider provider: GlobalCIConfiguration.get().getConfigs()) {
+                items.add(provider.getName());
+            }
+            return items;
+        }
+
+        public ListBoxModel doFillDeliveryModeItems(@QueryParameter String deliveryMode) {
+            return SendOptions.DeliveryMode.items(deliveryMode, true);
+        }
+
+        public FormValidation doCheckPriority(@QueryParameter String priority) {
+            return SendOptions.checkPriority(priority);
+        }
+
+        public FormValidation doCheckTimeToLive(@QueryParameter String timeToLive) {
+            return SendOptions.checkTimeToLive(timeToLive);
+        }
+
+    }
+
+}
@@ -1,11 +1,28 @@
 package com.redhat.utils;
 
+import com.redhat.jenkins.plugins.ci.messaging.Bulkhead;
+import com.redhat.jenkins.plugins.ci.messaging.CIMessage;
+import com.redhat.jenkins.plugins.ci.messaging.CircuitBreaker;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
 import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingWorker;
+import com.redhat.jenkins.plugins.ci.messaging.MessageOutbox;
+import com.redhat.jenkins.plugins.ci.messaging.OutgoingMessage;
+import com.redhat.jenkins.plugins.ci.messaging.SendOptions;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import jenkins.util.Timer;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
@@ -38,6 +55,7 @@ import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
 
     public static final String JSON_TYPE = "application/json";
 
+
     public static enum MESSAGE_TYPE {
         CodeQualityChecksDone("code-quality-checks-done"),
         ComponentBuildDone("component-build-done"),
@@ -107,16 +125,210 @@ import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
                                       MESSAGE_TYPE type,
                                       String props,
                                       String content) throws InterruptedException, IOException {
+        return sendMessage(build, listener, providerName, type, props, content, null);
+    }
+
+    public static boolean sendMessage(final Run<?, ?> build, final TaskListener listener,
+                                      String providerName,
+                                      final MESSAGE_TYPE type,
+                                      final String props,
+                                      final String content,
+                                      final SendOptions options) throws InterruptedException, IOException {
+        GlobalCIConfiguration config = GlobalCIConfiguration.get();
+        JMSMessagingProvider provider = config.getProvider(providerName);
+        if (provider.isUseOutbox() && queue(build, listener, providerName,
+                Collections.singletonList(new CIMessage(type, props, content)), options)) {
+            return true;
+        }
         log.info("Sending CI message for job '" + build.getParent().getName() + "'.");
+        final JMSMessagingWorker worker =
+                provider.createWorker(build.getParent
+                        ().getName());
+        return send(provider, build, worker.forCircuitBreaker(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return worker.sendMessage(build,
+                        listener,
+                        type,
+                        props,
+                        content,
+                        options);
+            }
+        }), provider.getBulkhead().getExecutor());
+    }
+
+    /**
+     * Sends all the messages in one go, see {@link JMSMessagingWorker#sendMessages}.
+     */
+    public static boolean sendMessages(final Run<?, ?> build, final TaskListener listener,
+                                       String providerName,
+                                       final List<CIMessage> messages,
+                                       final SendOptions options) throws InterruptedException, IOException {
         GlobalCIConfiguration config = GlobalCIConfiguration.get();
-        JMSMessagingWorker worker =
-                config.getProvider(providerName).createWorker(build.getParent
+        JMSMessagingProvider provider = config.getProvider(providerName);
+        if (provider.isUseOutbox() && queue(build, listener, providerName, messages, options)) {
+            return true;
+        }
+        log.info("Sending " + messages.size() + " CI message(s) for job '" + build.getParent().getName() + "'.");
+        final JMSMessagingWorker worker =
+                provider.createWorker(build.getParent
                         ().getName());
-        return worker.sendMessage(build,
-                listener,
-                type,
-                props,
-                content);
+        return send(provider, build, worker.forCircuitBreaker(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return worker.sendMessages(build, listener, messages, options);
+            }
+        }), provider.getBulkhead().getExecutor());
+    }
+
+    /**
+     * Sends through the provider circuit breaker, failing fast while the
+     * provider is unhealthy and giving up after its send deadline.
+     */
+    private static boolean send(JMSMessagingProvider provider, Run<?, ?> build,
+                                Callable<Boolean> task, ExecutorService executor) throws InterruptedException {
+        try {
+            return provider.getCircuitBreaker().call(task, provider.getSendDeadlineMillis(), executor);
+        } catch (CircuitBreaker.OpenException e) {
+            log.warning(e.getMessage() + " CI message(s) of job '" + build.getParent().getName() + "' not sent.");
+        } catch (CircuitBreaker.LocalFailure e) {
+            log.warning(e.getMessage() + " CI message(s) of job '" + build.getParent().getName() + "' not sent.");
+        } catch (RejectedExecutionException e) {
+            log.warning(e.getMessage() + " CI message(s) of job '" + build.getParent().getName() + "' not sent.");
+        } catch (TimeoutException e) {
+            log.warning("Sending CI message(s) of job '" + build.getParent().getName() + "' through '" + provider.getName()
+                    + "' took more than " + provider.getSendDeadline() + " seconds, giving up.");
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Unhandled exception sending CI message(s) of job '" + build.getParent().getName() + "'.", e);
+        }
+        return false;
+    }
+
+    /**
+     * Hands the messages over to the {@link MessageOutbox}.
+     *
+     * @return false if the outbox did not take them and they must be sent right away
+     */
+    private static boolean queue(Run<?, ?> build, TaskListener listener,
+                                 String providerName,
+                                 List<CIMessage> messages,
+                                 SendOptions options) throws InterruptedException, IOException {
+        if (MessageOutbox.get().enqueue(providerName, OutgoingMessage.create(build, listener, messages, options))) {
+            log.info("Queued " + messages.size() + " CI message(s) for job '" + build.getParent().getName() + "' in the outbox.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Notified once a message handed to {@link #sendMessageAsync} was sent, or
+     * failed to be.
+     */
+    public interface SendCallback {
+        void onCompletion(boolean sent);
+    }
+
+    /**
+     * Sends a message in the background, on a thread of the provider
+     * {@link Bulkhead} reserved to that, within the provider send deadline.
+     * The message is resolved against the build right away,
+     * so it carries the environment and status the build has now rather than
+     * when it gets sent. Callers block while the provider already has
+     * {@code maxAsyncSends} messages pending.
+     */
+    public static void sendMessageAsync(final Run<?, ?> build, TaskListener listener,
+                                        String providerName,
+                                        MESSAGE_TYPE type,
+                                        String props,
+                                        String content,
+                                        SendOptions options,
+                                        final SendCallback callback) throws InterruptedException, IOException {
+        final JMSMessagingProvider provider = GlobalCIConfiguration.get().getProvider(providerName);
+        final List<OutgoingMessage> outgoing = OutgoingMessage.create(build, listener,
+                Collections.singletonList(new CIMessage(type, props, content)), options);
+        if (provider.isUseOutbox() && MessageOutbox.get().enqueue(providerName, outgoing)) {
+            log.info("Queued CI message for job '" + build.getParent().getName() + "' in the outbox.");
+            callback.onCompletion(true);
+            return;
+        }
+        final JMSMessagingWorker worker = provider.createWorker(build.getParent().getName());
+        final Bulkhead bulkhead = provider.getBulkhead();
+        bulkhead.acquireAsyncSend();
+        try {
+            bulkhead.getAsyncExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean sent = false;
+                    Deadline deadline = new Deadline(provider, build);
+                    try {
+                        sent = send(provider, build, worker.forCircuitBreaker(new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() {
+                                return worker.deliver(outgoing);
+                            }
+                        }), null);
+                    } catch (InterruptedException e) {
+                        // Past the deadline.
+                    } catch (Exception e) {
+                        log.log(Level.SEVERE, "Unhandled exception sending CI message for job '" + build.getParent().getName() + "'.", e);
+                    } finally {
+                        deadline.cancel();
+                        bulkhead.releaseAsyncSend();
+                    }
+                    callback.onCompletion(sent && !deadline.isExpired());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            bulkhead.releaseAsyncSend();
+            log.warning(e.getMessage() + " CI message of job '" + build.getParent().getName() + "' not sent.");
+            callback.onCompletion(false);
+        }
+    }
+
+    /**
+     * Interrupts the calling thread once the provider send deadline is over,
+     * background sends have nobody waiting on them to give up.
+     */
+    private static final class Deadline implements Runnable {
+        private final JMSMessagingProvider provider;
+        private final Run<?, ?> build;
+        private final Thread thread = Thread.currentThread();
+        private final Future<?> timer;
+        // Guarded by this.
+        private boolean done;
+        private boolean expired;
+
+        Deadline(JMSMessagingProvider provider, Run<?, ?> build) {
+            this.provider = provider;
+            this.build = build;
+            long millis = provider.getSendDeadlineMillis();
+            this.timer = millis > 0 ? Timer.get().schedule(this, millis, TimeUnit.MILLISECONDS) : null;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (!done) {
+                expired = true;
+                log.warning("Sending CI message of job '" + build.getParent().getName() + "' through '" + provider.getName()
+                        + "' took more than " + provider.getSendDeadline() + " seconds, giving up.");
+                thread.interrupt();
+            }
+        }
+
+        synchronized void cancel() {
+            done = true;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            // The pool thread goes on with the next send.
+            Thread.interrupted();
+        }
+
+        synchronized boolean isExpired() {
+            return expired;
+        }
     }
 
     private static void logIfPossible(PrintStream stream, String logMessage) {
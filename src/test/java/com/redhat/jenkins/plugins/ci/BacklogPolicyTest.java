@@ -0,0 +1,109 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.jenkins.plugins.ci.messaging.TriggerMessage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class BacklogPolicyTest {
+
+    private static final long NOW = 1000000000L;
+
+    private static TriggerMessage message(String content, long timestamp, long expiration) {
+        return new TriggerMessage(content, Collections.singletonMap("CI_MESSAGE", content), timestamp, expiration);
+    }
+
+    private static List<TriggerMessage> backlog(int count) {
+        List<TriggerMessage> messages = new ArrayList<TriggerMessage>();
+        for (int i = 0; i < count; i++) {
+            messages.add(message("m" + i, NOW - (count - i) * 1000, 0));
+        }
+        return messages;
+    }
+
+    @Test
+    public void testDropStale() {
+        List<TriggerMessage> messages = new ArrayList<TriggerMessage>();
+        messages.add(message("old", NOW - 120000, 0));
+        messages.add(message("expired", NOW - 1000, NOW - 1));
+        messages.add(message("unknown", 0, 0));
+        messages.add(message("fresh", NOW - 1000, NOW + 1000));
+
+        List<TriggerMessage> fresh = BacklogPolicy.dropStale(messages, NOW, 60000);
+        assertEquals(2, fresh.size());
+        assertEquals("unknown", fresh.get(0).getSummary());
+        assertEquals("fresh", fresh.get(1).getSummary());
+
+        assertEquals(3, BacklogPolicy.dropStale(messages, NOW, 0).size());
+    }
+
+    @Test
+    public void testAll() {
+        assertEquals(5, BacklogPolicy.ALL.apply(backlog(5), 1).size());
+    }
+
+    @Test
+    public void testLatest() {
+        List<Map<String, String>> builds = BacklogPolicy.LATEST.apply(backlog(5), 2);
+        assertEquals(2, builds.size());
+        assertEquals("m3", builds.get(0).get("CI_MESSAGE"));
+        assertEquals("m4", builds.get(1).get("CI_MESSAGE"));
+
+        assertEquals(3, BacklogPolicy.LATEST.apply(backlog(3), 10).size());
+    }
+
+    @Test
+    public void testAggregate() {
+        List<Map<String, String>> builds = BacklogPolicy.AGGREGATE.apply(backlog(3), 1);
+        assertEquals(1, builds.size());
+        assertEquals("m2", builds.get(0).get("CI_MESSAGE"));
+        assertEquals("3", builds.get(0).get(BacklogPolicy.MESSAGE_COUNT));
+        assertEquals("[\"m0\",\"m1\",\"m2\"]", builds.get(0).get(BacklogPolicy.MESSAGES));
+
+        assertEquals(0, BacklogPolicy.AGGREGATE.apply(new ArrayList<TriggerMessage>(), 1).size());
+    }
+
+    @Test
+    public void testAggregateKeepsJsonBodies() throws Exception {
+        List<TriggerMessage> messages = new ArrayList<TriggerMessage>();
+        messages.add(message("{\"build\": 1}", NOW, 0));
+        messages.add(message("[1, 2]", NOW, 0));
+        messages.add(message("plain \"quoted\"", NOW, 0));
+
+        String all = BacklogPolicy.AGGREGATE.apply(messages, 1).get(0).get(BacklogPolicy.MESSAGES);
+        List<?> bodies = new ObjectMapper().readValue(all, List.class);
+        assertEquals(3, bodies.size());
+        assertEquals("{\"build\": 1}", bodies.get(0));
+        assertEquals("[1, 2]", bodies.get(1));
+        assertEquals("plain \"quoted\"", bodies.get(2));
+    }
+}
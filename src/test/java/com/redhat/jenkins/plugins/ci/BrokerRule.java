@@ -0,0 +1,121 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.ActiveMqMessagingProvider;
+import com.redhat.jenkins.plugins.ci.perf.EmbeddedBroker;
+import hudson.util.Secret;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.junit.rules.ExternalResource;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Runs an {@link EmbeddedBroker} for each test, and makes ActiveMQ providers
+ * and client connections for it.
+ *
+ * Providers can only be added once Jenkins is up, so do that from a
+ * {@code @Before} method rather than from the rule.
+ */
+public class BrokerRule extends ExternalResource {
+
+    private static final Logger log = Logger.getLogger(BrokerRule.class.getName());
+
+    public static final String TOPIC = "CI";
+
+    private final String name;
+    private final List<Connection> connections = new ArrayList<Connection>();
+    private EmbeddedBroker broker;
+
+    public BrokerRule(String name) {
+        this.name = name;
+    }
+
+    @Override
+    protected void before() throws Throwable {
+        broker = new EmbeddedBroker(name);
+        broker.start();
+    }
+
+    @Override
+    protected void after() {
+        for (Connection c : connections) {
+            try {
+                c.close();
+            } catch (JMSException e) {
+                log.log(Level.FINE, "Closing test connection", e);
+            }
+        }
+        connections.clear();
+        try {
+            broker.stop();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Unable to stop broker " + name, e);
+        }
+    }
+
+    /**
+     * In-JVM address of the broker.
+     */
+    public String getUrl() {
+        return broker.getVmUrl();
+    }
+
+    public BrokerService getService() {
+        return broker.getService();
+    }
+
+    public ActiveMqMessagingProvider provider(String providerName) {
+        return provider(providerName, TOPIC);
+    }
+
+    public ActiveMqMessagingProvider provider(String providerName, String topic) {
+        return new ActiveMqMessagingProvider(providerName, getUrl(), topic, "admin", Secret.fromString("redhat"));
+    }
+
+    /**
+     * Adds a provider for this broker to the global configuration.
+     */
+    public ActiveMqMessagingProvider addProvider(String providerName) {
+        ActiveMqMessagingProvider provider = provider(providerName);
+        GlobalCIConfiguration.get().addMessageProvider(provider);
+        return provider;
+    }
+
+    /**
+     * A started client connection, closed after the test.
+     */
+    public Connection createConnection() throws JMSException {
+        Connection connection = new ActiveMQConnectionFactory(getUrl()).createConnection();
+        connections.add(connection);
+        connection.start();
+        return connection;
+    }
+}
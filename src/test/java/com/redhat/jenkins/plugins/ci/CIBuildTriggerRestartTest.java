@@ -0,0 +1,156 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import hudson.model.FreeStyleProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CIBuildTriggerRestartTest {
+
+    private static final String SELECTOR = "CI_TYPE = 'code-quality-checks-done'";
+    private static final int WAIT_SECONDS = 30;
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public final BrokerRule broker = new BrokerRule("restart");
+
+    @Before
+    public void setUp() throws Exception {
+        broker.addProvider("test");
+        broker.addProvider("other");
+    }
+
+    private static CITriggerThread awaitReceiving(String jobname) throws InterruptedException {
+        for (int i = 0; i < WAIT_SECONDS * 10; i++) {
+            CITriggerThread thread = CIBuildTrigger.getTriggerThreads().get(jobname);
+            if (thread != null && thread.getSubscriptionState() == CITriggerThread.SubscriptionState.RECEIVING) {
+                return thread;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("Trigger thread of '" + jobname + "' is not receiving");
+    }
+
+    private static void awaitStopped(Thread thread) throws InterruptedException {
+        thread.join(WAIT_SECONDS * 1000);
+        assertFalse(thread.getName() + " still running", thread.isAlive());
+    }
+
+    /**
+     * What a job save does: the old trigger is stopped, the new one started.
+     */
+    private static CIBuildTrigger replace(FreeStyleProject p, String selector, String providerName) throws Exception {
+        CIBuildTrigger old = p.getTrigger(CIBuildTrigger.class);
+        CIBuildTrigger trigger = new CIBuildTrigger(selector, providerName);
+        old.stop();
+        p.addTrigger(trigger);
+        trigger.start(p, false);
+        return trigger;
+    }
+
+    private FreeStyleProject createTriggeredJob(String name) throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject(name);
+        CIBuildTrigger trigger = new CIBuildTrigger(SELECTOR, "test");
+        p.addTrigger(trigger);
+        trigger.start(p, true);
+        return p;
+    }
+
+    @Test
+    public void testUnchangedSaveKeepsSubscription() throws Exception {
+        FreeStyleProject p = createTriggeredJob("kept");
+        CITriggerThread thread = awaitReceiving("kept");
+
+        replace(p, SELECTOR, "test");
+        assertSame(thread, CIBuildTrigger.getTriggerThreads().get("kept"));
+        // Past the grace period, the stop was taken over.
+        Thread.sleep(7000);
+        assertTrue(thread.isAlive());
+    }
+
+    @Test
+    public void testRecreatedProviderKeepsSubscription() throws Exception {
+        FreeStyleProject p = createTriggeredJob("recreated");
+        CITriggerThread thread = awaitReceiving("recreated");
+
+        // Saving the global configuration recreates the providers.
+        List<JMSMessagingProvider> configs = new ArrayList<JMSMessagingProvider>();
+        configs.add(broker.provider("test"));
+        configs.add(broker.provider("other"));
+        GlobalCIConfiguration.get().setConfigs(configs);
+
+        replace(p, SELECTOR, "test");
+        assertSame(thread, CIBuildTrigger.getTriggerThreads().get("recreated"));
+    }
+
+    @Test
+    public void testChangedSelectorRestarts() throws Exception {
+        FreeStyleProject p = createTriggeredJob("restarted");
+        CITriggerThread thread = awaitReceiving("restarted");
+
+        replace(p, "CI_TYPE = 'component-build-done'", "test");
+        awaitStopped(thread);
+        CITriggerThread replacement = awaitReceiving("restarted");
+        assertNotSame(thread, replacement);
+        assertTrue(replacement.getSelector().contains("component-build-done"));
+    }
+
+    @Test
+    public void testChangedProviderStopsOldOnceNewIsUp() throws Exception {
+        FreeStyleProject p = createTriggeredJob("moved");
+        CITriggerThread thread = awaitReceiving("moved");
+
+        replace(p, SELECTOR, "other");
+        CITriggerThread replacement = awaitReceiving("moved");
+        assertNotSame(thread, replacement);
+        assertTrue(replacement.getProvider().getName().equals("other"));
+        awaitStopped(thread);
+        assertTrue(replacement.isAlive());
+    }
+
+    @Test
+    public void testStopWithoutRestartStopsAfterGrace() throws Exception {
+        FreeStyleProject p = createTriggeredJob("stopped");
+        CITriggerThread thread = awaitReceiving("stopped");
+
+        p.getTrigger(CIBuildTrigger.class).stop();
+        assertTrue("stopped before the grace period", thread.isAlive());
+        awaitStopped(thread);
+        assertFalse(CIBuildTrigger.getTriggerThreads().containsKey("stopped"));
+    }
+}
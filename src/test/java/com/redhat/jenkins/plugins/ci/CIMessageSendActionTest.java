@@ -0,0 +1,113 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.ActiveMqMessagingProvider;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.util.Secret;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CIMessageSendActionTest {
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public final BrokerRule broker = new BrokerRule("async");
+
+    @Before
+    public void setUp() throws Exception {
+        broker.addProvider("async");
+    }
+
+    @Test
+    public void testAsyncSendIsRecorded() throws Exception {
+        Session session = broker.createConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(session.createTopic(BrokerRule.TOPIC));
+
+        FreeStyleProject p = j.createFreeStyleProject("async");
+        CIMessageNotifier notifier = new CIMessageNotifier("async", MESSAGE_TYPE.CodeQualityChecksDone,
+                "BUILD=${BUILD_NUMBER}", "build ${BUILD_NUMBER}");
+        notifier.setAsync(true);
+        p.getPublishersList().add(notifier);
+        FreeStyleBuild build = j.buildAndAssertSuccess(p);
+        // Attached by the build itself, so that it is saved with it.
+        assertNotNull(build.getAction(CIMessageSendAction.class));
+
+        TextMessage m = (TextMessage) consumer.receive(10000);
+        assertNotNull(m);
+        assertEquals("build 1", m.getText());
+        assertEquals("1", m.getStringProperty("BUILD"));
+        // Resolved while the build was running, not once the send got its turn.
+        assertNull(m.getStringProperty("CI_STATUS"));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        CIMessageSendAction action = build.getAction(CIMessageSendAction.class);
+        while ((action == null || action.getOutcomes().get(0).isPending()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            action = build.getAction(CIMessageSendAction.class);
+        }
+        assertNotNull(action);
+        List<CIMessageSendAction.Outcome> outcomes = action.getOutcomes();
+        assertEquals(1, outcomes.size());
+        assertEquals(MESSAGE_TYPE.CodeQualityChecksDone, outcomes.get(0).getMessageType());
+        assertTrue(outcomes.get(0).isSent());
+    }
+
+    @Test
+    public void testFailedAsyncSendIsRecorded() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("unreachable");
+        GlobalCIConfiguration.get().addMessageProvider(new ActiveMqMessagingProvider("unreachable",
+                "vm://unreachable?create=false", "CI", "admin", Secret.fromString("redhat")));
+        CIMessageNotifier notifier = new CIMessageNotifier("unreachable", MESSAGE_TYPE.CodeQualityChecksDone,
+                "", "content");
+        notifier.setAsync(true);
+        p.getPublishersList().add(notifier);
+        FreeStyleBuild build = j.buildAndAssertSuccess(p);
+
+        long deadline = System.currentTimeMillis() + 30000;
+        CIMessageSendAction action = build.getAction(CIMessageSendAction.class);
+        while ((action == null || action.getOutcomes().get(0).isPending()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            action = build.getAction(CIMessageSendAction.class);
+        }
+        assertNotNull(action);
+        assertEquals(false, action.getOutcomes().get(0).isSent());
+    }
+}
@@ -0,0 +1,97 @@
+package com.redhat.jenkins.plugins.ci;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CIMessageSubscriberBuilderTest {
+
+    static {
+        // Only one build may wait for a message at a time.
+        System.setProperty("com.redhat.jenkins.plugins.ci.messaging.Bulkhead.maxConsumers", "1");
+    }
+
+    private static final int WAIT_SECONDS = 60;
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public final BrokerRule broker = new BrokerRule("waiters");
+
+    @Before
+    public void setUp() throws Exception {
+        broker.addProvider("test");
+        j.jenkins.setNumExecutors(3);
+    }
+
+    @Test
+    public void testMoreWaitersThanConsumers() throws Exception {
+        FreeStyleProject first = j.createFreeStyleProject("first");
+        first.getBuildersList().add(new CIMessageSubscriberBuilder("test", "CI_TYPE = 'code-quality-checks-done'", 5));
+        FreeStyleProject second = j.createFreeStyleProject("second");
+        second.getBuildersList().add(new CIMessageSubscriberBuilder("test", "CI_TYPE = 'code-quality-checks-done'", 5));
+
+        Future<FreeStyleBuild> firstBuild = first.scheduleBuild2(0);
+        Future<FreeStyleBuild> secondBuild = second.scheduleBuild2(0);
+        for (int i = 0; i < WAIT_SECONDS * 10 && !waitsForSlot(first) && !waitsForSlot(second); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue("no build waited for a free slot", waitsForSlot(first) || waitsForSlot(second));
+
+        // Topics do not keep messages for consumers that are not there yet, so keep sending until both got one.
+        Session session = broker.createConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(session.createTopic(BrokerRule.TOPIC));
+        for (int i = 0; i < WAIT_SECONDS * 2 && !(firstBuild.isDone() && secondBuild.isDone()); i++) {
+            TextMessage message = session.createTextMessage("content");
+            message.setStringProperty("CI_TYPE", "code-quality-checks-done");
+            producer.send(message);
+            Thread.sleep(500);
+        }
+
+        FreeStyleBuild a = firstBuild.get();
+        FreeStyleBuild b = secondBuild.get();
+        assertEquals(Result.SUCCESS, a.getResult());
+        assertEquals(Result.SUCCESS, b.getResult());
+    }
+
+    private boolean waitsForSlot(FreeStyleProject project) throws Exception {
+        FreeStyleBuild build = project.getLastBuild();
+        return build != null && j.getLog(build).contains("already waiting");
+    }
+}
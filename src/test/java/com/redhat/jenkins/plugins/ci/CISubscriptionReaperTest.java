@@ -0,0 +1,125 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.DurableSubscriptions;
+import hudson.model.FreeStyleProject;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.Topic;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CISubscriptionReaperTest {
+
+    private static final String TOPIC = BrokerRule.TOPIC;
+    private static final int WAIT_SECONDS = 30;
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public final BrokerRule broker = new BrokerRule("reaper");
+
+    @Before
+    public void setUp() throws Exception {
+        broker.addProvider("test");
+    }
+
+    private int durableSubscriptions() throws Exception {
+        Destination d = broker.getService().getDestination(new ActiveMQTopic(TOPIC));
+        if (d instanceof Topic) {
+            return ((Topic) d).getDurableTopicSubs().size();
+        }
+        return 0;
+    }
+
+    private void waitForDurableSubscriptions(int expected) throws Exception {
+        for (int i = 0; i < WAIT_SECONDS * 10 && durableSubscriptions() != expected; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(expected, durableSubscriptions());
+    }
+
+    private FreeStyleProject createTriggeredJob(String name) throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject(name);
+        CIBuildTrigger trigger = new CIBuildTrigger("CI_TYPE = 'code-quality-checks-done'", "test");
+        p.addTrigger(trigger);
+        trigger.start(p, true);
+        return p;
+    }
+
+    @Test
+    public void testDeletedJobSubscriptionIsRemoved() throws Exception {
+        FreeStyleProject p = createTriggeredJob("deleted");
+        waitForDurableSubscriptions(1);
+
+        p.delete();
+        waitForDurableSubscriptions(0);
+        assertTrue(DurableSubscriptions.get().getSubscriptions("deleted").isEmpty());
+    }
+
+    @Test
+    public void testUnrecordedSubscriptionIsRemoved() throws Exception {
+        FreeStyleProject p = createTriggeredJob("unrecorded");
+        waitForDurableSubscriptions(1);
+        // As if made before subscriptions were recorded.
+        DurableSubscriptions.get().forget(DurableSubscriptions.get().getCurrent("test", "unrecorded"));
+
+        p.delete();
+        waitForDurableSubscriptions(0);
+        assertTrue(DurableSubscriptions.get().getSubscriptions("unrecorded").isEmpty());
+    }
+
+    @Test
+    public void testDisabledJobSubscriptionIsRemoved() throws Exception {
+        FreeStyleProject p = createTriggeredJob("disabled");
+        waitForDurableSubscriptions(1);
+
+        p.disable();
+        waitForDurableSubscriptions(0);
+
+        p.enable();
+        waitForDurableSubscriptions(1);
+    }
+
+    @Test
+    public void testRenamedJobResubscribes() throws Exception {
+        FreeStyleProject p = createTriggeredJob("before");
+        waitForDurableSubscriptions(1);
+
+        p.renameTo("after");
+        for (int i = 0; i < WAIT_SECONDS * 10 && DurableSubscriptions.get().getSubscriptions("after").isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        waitForDurableSubscriptions(1);
+        assertTrue(DurableSubscriptions.get().getSubscriptions("before").isEmpty());
+        assertEquals(1, DurableSubscriptions.get().getSubscriptions("after").size());
+    }
+}
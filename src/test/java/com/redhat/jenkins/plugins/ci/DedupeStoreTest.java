@@ -0,0 +1,118 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.TriggerMessage;
+import hudson.model.FreeStyleProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class DedupeStoreTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private static TriggerMessage message(String id, String key) {
+        return new TriggerMessage(id, id, Collections.singletonMap("KEY", key), 0, 0);
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        assertNull(DedupeStore.getIfLoaded(p.getFullName()));
+        DedupeStore store = DedupeStore.forJob(p, 10);
+        assertSame(store, DedupeStore.getIfLoaded(p.getFullName()));
+
+        List<TriggerMessage> messages = new ArrayList<TriggerMessage>();
+        messages.add(message("a", "1"));
+        messages.add(message("b", "1"));
+        messages.add(message("a", "2"));
+        messages.add(message(null, "3"));
+        assertEquals(3, store.filter(messages, null).size());
+        assertEquals(1, store.getSuppressedCount());
+
+        List<TriggerMessage> byKey = store.filter(messages, "KEY");
+        assertEquals(3, byKey.size());
+        assertEquals("a", byKey.get(0).getMessageId());
+        assertEquals(2, store.getSuppressedCount());
+    }
+
+    @Test
+    public void testSurvivesRestart() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        DedupeStore store = DedupeStore.forJob(p, 100);
+        for (int i = 0; i < 250; i++) {
+            assertFalse(store.isDuplicate("id-" + i));
+        }
+        store.save();
+
+        DedupeStore.forget(p.getFullName());
+        store = DedupeStore.forJob(p, 100);
+        // The last 100 to 200 IDs are still remembered.
+        for (int i = 150; i < 250; i++) {
+            assertTrue("id-" + i, store.isDuplicate("id-" + i));
+        }
+        assertFalse(store.isDuplicate("id-new"));
+        assertEquals(100, store.getSuppressedCount());
+
+        // A new window size starts over.
+        store = DedupeStore.forJob(p, 50);
+        assertFalse(store.isDuplicate("id-249"));
+    }
+
+    @Test
+    public void testSavesOnRotation() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        DedupeStore store = DedupeStore.forJob(p, 10);
+        store.isDuplicate("first");
+        store.saveIfDue();
+        File file = new File(p.getRootDir(), "jms-messaging-dedupe.xml");
+        assertTrue(file.exists());
+
+        // Not again within the save interval.
+        assertTrue(file.delete());
+        store.isDuplicate("second");
+        store.saveIfDue();
+        assertFalse(file.exists());
+
+        // Unless the window is full.
+        for (int i = 0; i < 10; i++) {
+            store.isDuplicate("id-" + i);
+        }
+        store.saveIfDue();
+        assertTrue(file.exists());
+    }
+}
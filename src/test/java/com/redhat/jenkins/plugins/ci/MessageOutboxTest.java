@@ -0,0 +1,80 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.ActiveMqMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.MessageOutbox;
+import com.redhat.jenkins.plugins.ci.messaging.OutgoingMessage;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.model.FreeStyleProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class MessageOutboxTest {
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public final BrokerRule broker = new BrokerRule("outbox");
+
+    @Test
+    public void testMessagesAreDeliveredOnceTheProviderWorks() throws Exception {
+        // Without a topic the provider cannot send anything.
+        ActiveMqMessagingProvider provider = broker.provider("test", null);
+        provider.setUseOutbox(true);
+        GlobalCIConfiguration.get().addMessageProvider(provider);
+
+        FreeStyleProject p = j.createFreeStyleProject("sender");
+        p.getBuildersList().add(new CIMessageBuilder("test", MESSAGE_TYPE.CodeQualityChecksDone,
+                "KEY=value", "content"));
+
+        // The build neither waits for the broker nor fails.
+        j.buildAndAssertSuccess(p);
+        assertEquals(1, MessageOutbox.get().getPendingCount("test"));
+
+        Session session = broker.createConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(session.createTopic(BrokerRule.TOPIC));
+
+        provider.setTopic(BrokerRule.TOPIC);
+        Message m = consumer.receive(60 * 1000);
+        assertNotNull("message was not delivered from the outbox", m);
+        assertEquals("content", ((TextMessage) m).getText());
+        assertEquals("value", m.getStringProperty("KEY"));
+        assertNotNull(m.getStringProperty(OutgoingMessage.ID_PROPERTY));
+        for (int i = 0; i < 100 && MessageOutbox.get().getPendingCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, MessageOutbox.get().getPendingCount());
+    }
+}
@@ -0,0 +1,88 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.DurableSubscriptions;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.model.FreeStyleProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class ShadowTriggerTest {
+
+    private static final int WAIT_SECONDS = 30;
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public final BrokerRule broker = new BrokerRule("shadow");
+
+    @Before
+    public void setUp() throws Exception {
+        broker.addProvider("test");
+    }
+
+    @Test
+    public void testShadowTriggerDoesNotBuild() throws Exception {
+        FreeStyleProject receiver = j.createFreeStyleProject("receiver");
+        CIBuildTrigger trigger = new CIBuildTrigger("CI_TYPE = 'code-quality-checks-done'", "test");
+        trigger.setShadow(true);
+        receiver.addTrigger(trigger);
+        trigger.start(receiver, true);
+        for (int i = 0; i < WAIT_SECONDS * 10 && DurableSubscriptions.get().getSubscriptions("receiver").isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+
+        FreeStyleProject sender = j.createFreeStyleProject("sender");
+        sender.getBuildersList().add(new CIMessageBuilder("test", MESSAGE_TYPE.CodeQualityChecksDone, "", "content"));
+        j.buildAndAssertSuccess(sender);
+
+        ShadowProjection projection = ShadowProjection.forJob("receiver");
+        for (int i = 0; i < WAIT_SECONDS * 10 && projection.getStats().getTotalMatched() == 0; i++) {
+            Thread.sleep(100);
+        }
+        j.waitUntilNoActivity();
+        assertNull("shadow trigger scheduled a build", receiver.getLastBuild());
+        assertEquals(1, projection.getStats().getTotalReceived());
+        assertEquals(1, projection.getStats().getTotalMatched());
+
+        List<ShadowProjection.Build> recent = projection.getRecent();
+        assertEquals(1, recent.size());
+        assertEquals("content", recent.get(0).getParams().get("CI_MESSAGE"));
+        assertNotNull(receiver.getAction(ShadowTriggerAction.class));
+
+        String page = j.createWebClient().getPage(receiver, "ci-shadow").asText();
+        assertTrue(page, page.contains("Would-be builds"));
+    }
+}
@@ -0,0 +1,148 @@
+package com.redhat.jenkins.plugins.ci;
+
+import com.redhat.jenkins.plugins.ci.messaging.DurableSubscriptions;
+import com.redhat.jenkins.plugins.ci.messaging.MessagingStats;
+import com.redhat.jenkins.plugins.ci.messaging.SpanExporter;
+import com.redhat.jenkins.plugins.ci.messaging.TraceContext;
+import com.redhat.jenkins.plugins.ci.messaging.TraceSpan;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class TracingTest {
+
+    private static final int WAIT_SECONDS = 30;
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public final BrokerRule broker = new BrokerRule("tracing");
+
+    @Before
+    public void setUp() throws Exception {
+        broker.addProvider("test");
+    }
+
+    @TestExtension("testTraceCrossesTheBroker")
+    public static class InMemorySpanExporter extends SpanExporter {
+        final List<TraceSpan> spans = new CopyOnWriteArrayList<TraceSpan>();
+
+        @Override
+        public void export(TraceSpan span) {
+            spans.add(span);
+        }
+
+        TraceSpan get(String name) {
+            for (TraceSpan span : spans) {
+                if (span.getName().equals(name)) {
+                    return span;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Test
+    public void testParse() {
+        TraceContext trace = TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+        assertNotNull(trace);
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", trace.getTraceId());
+        assertEquals("00f067aa0ba902b7", trace.getSpanId());
+        assertEquals("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01", trace.toString());
+
+        assertNull(TraceContext.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01-extra"));
+        assertNull(TraceContext.parse("ff-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parse("00-4BF92F3577B34DA6A3CE929D0E0E4736-00f067aa0ba902b7-01"));
+        assertNotNull(TraceContext.parse("01-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01-extra"));
+
+        TraceContext child = trace.newChild();
+        assertEquals(trace.getTraceId(), child.getTraceId());
+        assertEquals(16, child.getSpanId().length());
+        assertEquals(32, TraceContext.newRoot().getTraceId().length());
+    }
+
+    @Test
+    public void testTraceCrossesTheBroker() throws Exception {
+        FreeStyleProject receiver = j.createFreeStyleProject("receiver");
+        CIBuildTrigger trigger = new CIBuildTrigger("CI_TYPE = 'code-quality-checks-done'", "test");
+        receiver.addTrigger(trigger);
+        trigger.start(receiver, true);
+        for (int i = 0; i < WAIT_SECONDS * 10 && DurableSubscriptions.get().getSubscriptions("receiver").isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+
+        FreeStyleProject sender = j.createFreeStyleProject("sender");
+        sender.getBuildersList().add(new CIMessageBuilder("test", MESSAGE_TYPE.CodeQualityChecksDone, "", "content"));
+        j.buildAndAssertSuccess(sender);
+
+        for (int i = 0; i < WAIT_SECONDS * 10 && receiver.getLastBuild() == null; i++) {
+            Thread.sleep(100);
+        }
+        j.waitUntilNoActivity();
+        FreeStyleBuild build = receiver.getLastBuild();
+        assertNotNull("message did not trigger a build", build);
+
+        InMemorySpanExporter exporter = j.jenkins.getExtensionList(SpanExporter.class).get(InMemorySpanExporter.class);
+        TraceSpan send = exporter.get(TraceSpan.SEND);
+        assertNotNull(exporter.spans.toString(), send);
+        assertNull(send.getParentSpanId());
+        for (String name : new String[] {TraceSpan.BROKER_DWELL, TraceSpan.MATCH, TraceSpan.QUEUE_WAIT}) {
+            TraceSpan span = exporter.get(name);
+            assertNotNull(name + " in " + exporter.spans, span);
+            assertEquals(send.getTraceId(), span.getTraceId());
+            assertEquals(send.getSpanId(), span.getParentSpanId());
+        }
+
+        CIBuildCause cause = build.getCause(CIBuildCause.class);
+        assertEquals("test", cause.getProviderName());
+        assertTrue(cause.getPublished() > 0);
+        assertTrue(cause.getPublished() <= cause.getReceived());
+        assertTrue(cause.getReceived() <= cause.getMatched());
+        assertTrue(cause.getMatched() <= cause.getQueued());
+        assertTrue(cause.getQueued() <= cause.getStarted());
+        assertEquals(1, MessagingStats.TRIGGER_LATENCY.labels("test", "receiver", "started").getCount());
+
+        TraceContext trace = TraceContext.parse(cause.getTraceparent());
+        assertNotNull(trace);
+        assertEquals(send.getTraceId(), trace.getTraceId());
+        assertEquals(trace.getSpanId(), exporter.get(TraceSpan.QUEUE_WAIT).getSpanId());
+    }
+}
@@ -0,0 +1,77 @@
+package com.redhat.jenkins.plugins.ci.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.jenkins.plugins.ci.messaging.data.FedmsgMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * JSON round-trips of fedmsg messages, as sent and received by the FedMsg
+ * worker.
+ */
+@State(Scope.Thread)
+public class FedmsgMessageBenchmark {
+
+    /** Size of the body field in characters. */
+    @Param({"256", "16384", "1048576"})
+    public int size;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private FedmsgMessage message;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        message = new FedmsgMessage();
+        message.setTopic("org.fedoraproject.dev.logger.log");
+        message.setTimestamp(System.currentTimeMillis() / 1000);
+        message.setMsg(Payloads.fields(size));
+        json = message.toJson();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return message.toJson();
+    }
+
+    /**
+     * As the receive loop does, with a mapper reused across messages.
+     */
+    @Benchmark
+    public FedmsgMessage read() throws IOException {
+        return mapper.readValue(json, FedmsgMessage.class);
+    }
+
+    @Benchmark
+    public FedmsgMessage readWithNewMapper() throws IOException {
+        return new ObjectMapper().readValue(json, FedmsgMessage.class);
+    }
+}
@@ -0,0 +1,98 @@
+package com.redhat.jenkins.plugins.ci.benchmark;
+
+import com.redhat.jenkins.plugins.ci.messaging.ActiveMqMessagingWorker;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMapMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import java.nio.charset.Charset;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Decoding and formatting of received ActiveMQ messages, no broker involved.
+ */
+@State(Scope.Thread)
+public class MessageBodyBenchmark {
+
+    public enum Type { TEXT, MAP, BYTES }
+
+    @Param({"TEXT", "MAP", "BYTES"})
+    public Type type;
+
+    /** Body size in characters. */
+    @Param({"256", "16384", "1048576"})
+    public int size;
+
+    private ActiveMQMessage message;
+
+    @Setup
+    public void setUp() throws JMSException {
+        switch (type) {
+            case TEXT:
+                ActiveMQTextMessage text = new ActiveMQTextMessage();
+                text.setText(Payloads.json(size));
+                message = text;
+                break;
+            case MAP:
+                ActiveMQMapMessage map = new ActiveMQMapMessage();
+                // Fields of 64 characters.
+                for (int i = 0; i < Math.max(1, size / 64); i++) {
+                    map.setString("field" + i, Payloads.text(64 - 8));
+                }
+                message = map;
+                break;
+            default:
+                ActiveMQBytesMessage bytes = new ActiveMQBytesMessage();
+                bytes.writeBytes(Payloads.json(size).getBytes(Charset.forName("UTF-8")));
+                bytes.reset();
+                message = bytes;
+        }
+        message.setStringProperty("CI_TYPE", "code-quality-checks-done");
+        message.setStringProperty("CI_NAME", "benchmark");
+        message.setJMSMessageID("ID:benchmark-1:1:1:1:1");
+    }
+
+    @Benchmark
+    public String getMessageBody() throws JMSException {
+        if (message instanceof BytesMessage) {
+            // Reading consumes the body.
+            ((BytesMessage) message).reset();
+        }
+        return ActiveMqMessagingWorker.getMessageBody(message);
+    }
+
+    @Benchmark
+    public String formatMessage() {
+        return ActiveMqMessagingWorker.formatMessage(message);
+    }
+}
@@ -0,0 +1,73 @@
+package com.redhat.jenkins.plugins.ci.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Synthetic message contents of a given size.
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    static String text(int size) {
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A JSON object of about size characters.
+     */
+    static String json(int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        sb.append('{');
+        for (int i = 0; sb.length() < size - 1; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("\"field").append(i).append("\":\"").append(text(Math.min(48, Math.max(1, size - sb.length() - 12)))).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Fields of a CI message as the fedmsg relay carries them.
+     */
+    static Map<String, Object> fields(int size) {
+        Map<String, Object> msg = new HashMap<String, Object>();
+        msg.put("CI_TYPE", "code-quality-checks-done");
+        msg.put("CI_NAME", "benchmark");
+        msg.put("CI_STATUS", "passed");
+        msg.put("BUILD_NUMBER", 42);
+        msg.put("topic", "org.fedoraproject.dev.logger.log");
+        msg.put("body", text(size));
+        return msg;
+    }
+}
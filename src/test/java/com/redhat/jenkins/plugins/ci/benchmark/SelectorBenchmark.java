@@ -0,0 +1,68 @@
+package com.redhat.jenkins.plugins.ci.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.zeromq.jms.selector.ZmqMessageSelector;
+import org.zeromq.jms.selector.ZmqSimpleMessageSelector;
+
+import java.util.Map;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Parsing and evaluation of the selectors the FedMsg worker evaluates in
+ * Jenkins.
+ */
+@State(Scope.Thread)
+public class SelectorBenchmark {
+
+    @Param({
+            "CI_TYPE = 'code-quality-checks-done'",
+            "CI_TYPE = 'code-quality-checks-done' AND CI_NAME = 'benchmark' AND BUILD_NUMBER > 10",
+            "CI_TYPE = 'component-build-done' OR CI_STATUS = 'failed' OR CI_NAME = 'other'"
+    })
+    public String selector;
+
+    private ZmqMessageSelector parsed;
+    private Map<String, Object> fields;
+
+    @Setup
+    public void setUp() throws Exception {
+        parsed = ZmqSimpleMessageSelector.parse(selector);
+        fields = Payloads.fields(256);
+    }
+
+    @Benchmark
+    public ZmqMessageSelector parse() throws Exception {
+        return ZmqSimpleMessageSelector.parse(selector);
+    }
+
+    @Benchmark
+    public boolean evaluate() {
+        return parsed.evaluate(fields);
+    }
+}
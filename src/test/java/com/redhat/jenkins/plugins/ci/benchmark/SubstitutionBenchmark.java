@@ -0,0 +1,64 @@
+package com.redhat.jenkins.plugins.ci.benchmark;
+
+import com.redhat.utils.PluginUtils;
+import hudson.EnvVars;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Variable substitution in message properties and contents before sending.
+ */
+@State(Scope.Thread)
+public class SubstitutionBenchmark {
+
+    /** Size of the text substituted in characters. */
+    @Param({"64", "4096", "65536"})
+    public int size;
+
+    private EnvVars env;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        env = new EnvVars();
+        for (int i = 0; i < 100; i++) {
+            env.put("VAR_" + i, "value-" + i);
+        }
+        StringBuilder sb = new StringBuilder(size + 16);
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append(i % 2 == 0 ? "name=$VAR_" + i % 100 + "\n" : "url=${VAR_" + i % 100 + "}/job\n");
+        }
+        text = sb.toString();
+    }
+
+    @Benchmark
+    public String getSubstitutedValue() {
+        return PluginUtils.getSubstitutedValue(text, env);
+    }
+}
@@ -0,0 +1,142 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import org.junit.Test;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class BulkheadTest {
+
+    @Test
+    public void testCallsAreBounded() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 2, 1, 1, 1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        try {
+            // Two running, one queued.
+            bulkhead.getExecutor().execute(blocked);
+            bulkhead.getExecutor().execute(blocked);
+            bulkhead.getExecutor().execute(blocked);
+            try {
+                bulkhead.getExecutor().execute(blocked);
+                fail("call accepted beyond the bulkhead capacity");
+            } catch (RejectedExecutionException e) {
+                assertEquals(1, bulkhead.getRejectedCalls());
+            }
+            assertEquals(1, bulkhead.getQueuedCalls());
+        } finally {
+            release.countDown();
+            bulkhead.getExecutor().shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncSendsDoNotWaitForCalls() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, 1, 1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch sent = new CountDownLatch(1);
+        try {
+            // The only call thread is busy and its queue full.
+            for (int i = 0; i < 2; i++) {
+                bulkhead.getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            bulkhead.acquireAsyncSend();
+            bulkhead.getAsyncExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    sent.countDown();
+                }
+            });
+            assertTrue(sent.await(10, TimeUnit.SECONDS));
+        } finally {
+            bulkhead.releaseAsyncSend();
+            release.countDown();
+            bulkhead.getExecutor().shutdown();
+            bulkhead.getAsyncExecutor().shutdown();
+        }
+    }
+
+    @Test
+    public void testConsumersAreBounded() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, 1, 2, 1);
+        assertTrue(bulkhead.tryAcquireConsumer());
+        assertTrue(bulkhead.tryAcquireConsumer());
+        assertFalse(bulkhead.tryAcquireConsumer());
+        assertEquals(2, bulkhead.getActiveConsumers());
+        assertEquals(1, bulkhead.getRejectedConsumers());
+
+        bulkhead.releaseConsumer();
+        assertTrue(bulkhead.tryAcquireConsumer());
+        bulkhead.getExecutor().shutdown();
+    }
+
+    @Test
+    public void testConsumerWaitsForFreeSlot() throws Exception {
+        final Bulkhead bulkhead = new Bulkhead("test", 1, 1, 1, 1, 1);
+        try {
+            assertTrue(bulkhead.acquireConsumer(1, TimeUnit.SECONDS));
+            assertFalse(bulkhead.acquireConsumer(100, TimeUnit.MILLISECONDS));
+            assertEquals(1, bulkhead.getRejectedConsumers());
+
+            new Timer(true).schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    bulkhead.releaseConsumer();
+                }
+            }, 200);
+            assertTrue(bulkhead.acquireConsumer(10, TimeUnit.SECONDS));
+            assertEquals(1, bulkhead.getActiveConsumers());
+        } finally {
+            bulkhead.getExecutor().shutdown();
+        }
+    }
+}
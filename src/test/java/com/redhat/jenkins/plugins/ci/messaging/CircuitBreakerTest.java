@@ -0,0 +1,140 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CircuitBreakerTest {
+
+    private static final Callable<Boolean> SUCCEED = new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+            return true;
+        }
+    };
+
+    private static final Callable<Boolean> FAIL = new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+            return false;
+        }
+    };
+
+    private static final Callable<Boolean> HANG = new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws InterruptedException {
+            Thread.sleep(60000);
+            return true;
+        }
+    };
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000);
+        breaker.call(FAIL, 0, null);
+        breaker.call(FAIL, 0, null);
+        breaker.call(SUCCEED, 0, null);
+        breaker.call(FAIL, 0, null);
+        breaker.call(FAIL, 0, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.call(FAIL, 0, null);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getTripCount());
+        try {
+            breaker.call(SUCCEED, 0, null);
+            fail("call went through an open circuit");
+        } catch (CircuitBreaker.OpenException e) {
+            assertEquals(1, breaker.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void testHalfOpenAllowsOneTrial() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 100);
+        breaker.call(FAIL, 0, null);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(200);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(200);
+        assertTrue(breaker.call(SUCCEED, 0, null));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testLocalFailuresAreNoVerdict() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 60000);
+        Callable<Boolean> misconfigured = new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                throw new CircuitBreaker.LocalFailure("no topic");
+            }
+        };
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (ExecutorService e : new ExecutorService[] {null, executor}) {
+                try {
+                    breaker.call(misconfigured, 0, e);
+                    fail("local failure was not reported");
+                } catch (CircuitBreaker.LocalFailure expected) {
+                }
+                assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 60000);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        long start = System.currentTimeMillis();
+        try {
+            breaker.call(HANG, 100, executor);
+            fail("call did not time out");
+        } catch (TimeoutException e) {
+            assertTrue(System.currentTimeMillis() - start < 10000);
+        }
+        assertEquals(1, breaker.getTimeoutCount());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        executor.shutdownNow();
+    }
+}
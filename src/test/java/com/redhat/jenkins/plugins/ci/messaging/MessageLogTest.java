@@ -0,0 +1,63 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class MessageLogTest {
+
+    @Test
+    public void testRateLimit() {
+        MessageLog l = new MessageLog("p", 2);
+        long now = System.nanoTime();
+        assertTrue(l.tryAcquire(now));
+        assertTrue(l.tryAcquire(now));
+        assertFalse(l.tryAcquire(now));
+        assertTrue(l.tryAcquire(now + 500000000L));
+        assertFalse(l.tryAcquire(now + 500000000L));
+        // Never more than a second worth of lines at once.
+        now += 60000000000L;
+        assertTrue(l.tryAcquire(now));
+        assertTrue(l.tryAcquire(now));
+        assertFalse(l.tryAcquire(now));
+    }
+
+    @Test
+    public void testFormat() {
+        MessageLog l = new MessageLog("test", 1);
+        assertEquals("ci-message event=sent provider=test job=\"my job\" messageId=ID:1 size=10",
+                l.format(MessageLog.Event.SENT, "my job", "ID:1", 10, 0, null));
+        assertEquals("ci-message event=rejected provider=test job=a suppressed=3\n{}",
+                l.format(MessageLog.Event.REJECTED, "a", null, -1, 3, new MessageLog.Payload() {
+                    @Override
+                    public String format() {
+                        return "{}";
+                    }
+                }));
+    }
+}
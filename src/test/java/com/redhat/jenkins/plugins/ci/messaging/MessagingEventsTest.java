@@ -0,0 +1,87 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * The JFR API is not part of Java 7, which the plugin builds for,
+ * so it is used reflectively here as well.
+ */
+public class MessagingEventsTest {
+
+    @Test
+    public void testNoOpWithoutRecording() {
+        // Nothing enables the events, or there is no JFR at all.
+        for (MessagingEvents.Stage stage : MessagingEvents.Stage.values()) {
+            MessagingEvents.Span span = MessagingEvents.begin(stage);
+            assertSame(MessagingEvents.Span.NONE, span);
+            span.end("provider", "job", null, 0, 0);
+            span.end(null, null, null, -1, -1);
+        }
+    }
+
+    @Test
+    public void testSpanIsRecorded() throws Exception {
+        Assume.assumeTrue("no JDK Flight Recorder", MessagingEvents.isAvailable());
+
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.newInstance();
+        File dump = File.createTempFile("messaging", ".jfr");
+        try {
+            recordingClass.getMethod("enable", String.class).invoke(recording, "com.redhat.jenkins.plugins.ci.Send");
+            recordingClass.getMethod("disable", String.class).invoke(recording, "com.redhat.jenkins.plugins.ci.Receive");
+            recordingClass.getMethod("start").invoke(recording);
+            MessagingEvents.begin(MessagingEvents.Stage.SEND).end("provider", "job", "ID:1", 7, 1);
+            // Disabled, not even timed.
+            assertSame(MessagingEvents.Span.NONE, MessagingEvents.begin(MessagingEvents.Stage.RECEIVE));
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, dump.toPath());
+
+            List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                    .getMethod("readAllEvents", Path.class).invoke(null, dump.toPath());
+            assertEquals(1, events.size());
+            Object event = events.get(0);
+            Class<?> recordedObject = Class.forName("jdk.jfr.consumer.RecordedObject");
+            Object type = event.getClass().getMethod("getEventType").invoke(event);
+            assertEquals("com.redhat.jenkins.plugins.ci.Send", type.getClass().getMethod("getName").invoke(type));
+            assertEquals("provider", recordedObject.getMethod("getValue", String.class).invoke(event, "provider"));
+            assertEquals("job", recordedObject.getMethod("getValue", String.class).invoke(event, "job"));
+            assertEquals("ID:1", recordedObject.getMethod("getValue", String.class).invoke(event, "messageId"));
+            assertEquals(7L, recordedObject.getMethod("getValue", String.class).invoke(event, "size"));
+            assertEquals(1, recordedObject.getMethod("getValue", String.class).invoke(event, "count"));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            dump.delete();
+        }
+    }
+}
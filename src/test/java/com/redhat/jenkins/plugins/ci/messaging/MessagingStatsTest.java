@@ -0,0 +1,105 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class MessagingStatsTest {
+
+    @Test
+    public void testCounter() {
+        MessagingStats.Counter c = MessagingStats.RECEIVED.labels("counter-test", "job");
+        assertSame(c, MessagingStats.RECEIVED.labels("counter-test", "job"));
+        c.inc();
+        c.inc(2);
+        assertEquals(3, c.get());
+    }
+
+    @Test
+    public void testHistogram() {
+        MessagingStats.Histogram h = MessagingStats.SEND_TIME.labels("histogram-test");
+        h.observe(0.0005);
+        h.observe(0.002);
+        h.observe(0.002);
+        h.observe(100);
+        assertEquals(4, h.getCount());
+        assertEquals(100.0045, h.getSum(), 1e-9);
+        assertEquals(0.005, h.getQuantile(0.5), 0);
+        assertEquals(60, h.getQuantile(0.99), 0);
+        assertEquals(1, h.getCounts()[0]);
+        assertEquals(1, h.getCounts()[h.getCounts().length - 1]);
+    }
+
+    @Test
+    public void testSummary() {
+        MessagingStats.Summary s = MessagingStats.TRIGGER_LATENCY.labels("summary-test", "job", "queued");
+        assertEquals(0, s.getQuantile(0.5), 0);
+        for (int i = 1; i <= 1000; i++) {
+            s.observe(i);
+        }
+        assertEquals(1000, s.getCount());
+        assertEquals(500500, s.getSum(), 0);
+        assertEquals(500, s.getQuantile(0.5), 10);
+        assertEquals(950, s.getQuantile(0.95), 10);
+        assertEquals(990, s.getQuantile(0.99), 10);
+        assertTrue(Double.isNaN(s.getQuantile(0.75)));
+    }
+
+    @Test
+    public void testPrometheus() throws Exception {
+        MessagingStats.DROPPED.labels("prometheus-test", "a \"job\"", "stale").inc(5);
+        MessagingStats.QUEUE_LATENCY.labels("prometheus-test", "job").observe(0.02);
+        MessagingStats.TRIGGER_LATENCY.labels("prometheus-test", "job", "started").observe(2);
+
+        StringWriter w = new StringWriter();
+        MessagingStats.writePrometheus(w);
+        String text = w.toString();
+        assertTrue(text, text.contains("# TYPE jms_messaging_messages_dropped_total counter\n"));
+        assertTrue(text, text.contains(
+                "jms_messaging_messages_dropped_total{provider=\"prometheus-test\",job=\"a \\\"job\\\"\",reason=\"stale\"} 5\n"));
+        assertTrue(text, text.contains("# TYPE jms_messaging_receive_to_queue_seconds histogram\n"));
+        assertTrue(text, text.contains(
+                "jms_messaging_receive_to_queue_seconds_bucket{provider=\"prometheus-test\",job=\"job\",le=\"0.01\"} 0\n"));
+        assertTrue(text, text.contains(
+                "jms_messaging_receive_to_queue_seconds_bucket{provider=\"prometheus-test\",job=\"job\",le=\"0.05\"} 1\n"));
+        assertTrue(text, text.contains(
+                "jms_messaging_receive_to_queue_seconds_count{provider=\"prometheus-test\",job=\"job\"} 1\n"));
+
+        assertTrue(text, text.contains("# TYPE jms_messaging_trigger_latency_seconds summary\n"));
+        assertTrue(text, text.contains(
+                "jms_messaging_trigger_latency_seconds{provider=\"prometheus-test\",job=\"job\",stage=\"started\",quantile=\"0.99\"} 2\n"));
+
+        MessagingStats.forgetJob("job");
+        w = new StringWriter();
+        MessagingStats.writePrometheus(w);
+        assertFalse(w.toString().contains("job=\"job\""));
+    }
+}
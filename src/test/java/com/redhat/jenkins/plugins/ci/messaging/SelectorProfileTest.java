@@ -0,0 +1,111 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class SelectorProfileTest {
+
+    @After
+    public void forget() {
+        SelectorProfile.forgetJob("cheap");
+        SelectorProfile.forgetJob("costly");
+        SelectorProfile.forgetJob("server");
+        SelectorProfile.forgetJob("waiting");
+    }
+
+    @Test
+    public void testRanking() {
+        SelectorProfile cheap = SelectorProfile.get("p", SelectorProfile.Kind.TRIGGER, "cheap", "a = 1");
+        assertSame(cheap, SelectorProfile.get("p", SelectorProfile.Kind.TRIGGER, "cheap", "a = 1"));
+        SelectorProfile costly = SelectorProfile.get("p", SelectorProfile.Kind.TRIGGER, "costly", "b = 2");
+        SelectorProfile server = SelectorProfile.get("p", SelectorProfile.Kind.WAIT, "server", null);
+
+        cheap.evaluated(false, SelectorProfile.time());
+        cheap.evaluated(true, SelectorProfile.time());
+        long start = SelectorProfile.time();
+        while (SelectorProfile.time() - start < 5000000L) {
+            // Burn some time in the "evaluation".
+        }
+        costly.evaluated(true, start);
+        server.matched(3);
+
+        assertEquals(2, cheap.getEvaluations());
+        assertEquals(1, cheap.getMatches());
+        assertEquals(0.5, cheap.getMatchRatio(), 0);
+        assertEquals(-1, server.getMatchRatio(), 0);
+        assertEquals(3, server.getMatches());
+        assertTrue(costly.getNanosPerEvaluation() >= 5000000L);
+
+        List<SelectorProfile> expensive = ours(SelectorProfile.mostExpensive(Integer.MAX_VALUE));
+        assertSame(costly, expensive.get(0));
+
+        List<SelectorProfile> unselective = ours(SelectorProfile.leastSelective(Integer.MAX_VALUE));
+        assertEquals(3, unselective.size());
+        assertSame(costly, unselective.get(0));
+        assertSame(cheap, unselective.get(1));
+        assertSame(server, unselective.get(2));
+
+        SelectorProfile.forgetJob("costly");
+        assertEquals(2, ours(SelectorProfile.leastSelective(Integer.MAX_VALUE)).size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedWaitsAreDropped() {
+        SelectorProfile trigger = SelectorProfile.get("p", SelectorProfile.Kind.TRIGGER, "cheap", "a = 1");
+        SelectorProfile first = SelectorProfile.get("p", SelectorProfile.Kind.WAIT, "waiting", "build = 0");
+        SelectorProfile used = SelectorProfile.get("p", SelectorProfile.Kind.WAIT, "waiting", "build = 1");
+        for (int i = 2; i < 1001; i++) {
+            SelectorProfile.get("p", SelectorProfile.Kind.WAIT, "waiting", "build = " + i);
+            if (i % 100 == 0) {
+                assertSame(used, SelectorProfile.get("p", SelectorProfile.Kind.WAIT, "waiting", "build = 1"));
+            }
+        }
+        List<SelectorProfile> kept = ours(SelectorProfile.mostExpensive(Integer.MAX_VALUE));
+        assertEquals(1001, kept.size());
+        assertFalse(kept.contains(first));
+        assertTrue(kept.contains(used));
+        assertTrue("trigger profiles are kept", kept.contains(trigger));
+    }
+
+    // Other tests in this JVM may have profiled selectors too.
+    private static List<SelectorProfile> ours(List<SelectorProfile> ranked) {
+        List<SelectorProfile> ours = new ArrayList<SelectorProfile>();
+        for (SelectorProfile p : ranked) {
+            if ("p".equals(p.getProviderName())) {
+                ours.add(p);
+            }
+        }
+        return ours;
+    }
+}
@@ -0,0 +1,143 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import com.redhat.jenkins.plugins.ci.BrokerRule;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class SendOptionsTest {
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public final BrokerRule broker = new BrokerRule("options");
+
+    @Test
+    public void testWithDefaults() {
+        SendOptions defaults = new SendOptions(SendOptions.DeliveryMode.PERSISTENT, 4, 0);
+        SendOptions o = new SendOptions(SendOptions.DeliveryMode.NON_PERSISTENT, null, 10).withDefaults(defaults);
+        assertEquals(SendOptions.DeliveryMode.NON_PERSISTENT, o.getDeliveryMode());
+        assertEquals(Integer.valueOf(4), o.getPriority());
+        assertEquals(Integer.valueOf(10), o.getTimeToLive());
+    }
+
+    @Test
+    public void testFormValues() throws Exception {
+        assertNull(SendOptions.parsePriority(" ", "priority"));
+        assertEquals(Integer.valueOf(9), SendOptions.parsePriority("9", "priority"));
+        assertEquals(Integer.valueOf(0), SendOptions.parseTimeToLive("0", "timeToLive"));
+        for (String invalid : new String[] {"high", "10", "-1"}) {
+            assertEquals(invalid, FormValidation.Kind.ERROR, SendOptions.checkPriority(invalid).kind);
+            try {
+                SendOptions.parsePriority(invalid, "priority");
+                fail("accepted priority " + invalid);
+            } catch (Descriptor.FormException e) {
+                assertEquals("priority", e.getFormField());
+            }
+        }
+        for (String invalid : new String[] {"forever", "-5"}) {
+            assertEquals(invalid, FormValidation.Kind.ERROR, SendOptions.checkTimeToLive(invalid).kind);
+            try {
+                SendOptions.parseTimeToLive(invalid, "timeToLive");
+                fail("accepted time to live " + invalid);
+            } catch (Descriptor.FormException e) {
+                assertEquals("timeToLive", e.getFormField());
+            }
+        }
+        try {
+            SendOptions.validatePriority(12);
+            fail("accepted priority 12");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testProviderDefaultsAreValidated() {
+        ActiveMqMessagingProvider provider = broker.provider("defaults");
+        try {
+            provider.setPriority(10);
+            fail("accepted priority 10");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            provider.setTimeToLive(-1);
+            fail("accepted time to live -1");
+        } catch (IllegalArgumentException e) {
+        }
+        assertEquals(Message.DEFAULT_PRIORITY, provider.getPriority());
+        assertEquals(0, provider.getTimeToLive());
+    }
+
+    @Test
+    public void testMessagesCarryOptions() throws Exception {
+        ActiveMqMessagingProvider provider = broker.addProvider("options");
+        provider.setPriority(2);
+        Session session = broker.createConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(session.createTopic(BrokerRule.TOPIC));
+
+        JMSMessagingWorker worker = provider.createWorker("sender");
+        long sent = System.currentTimeMillis();
+        assertTrue(worker.deliver(Collections.singletonList(message(
+                new SendOptions(SendOptions.DeliveryMode.NON_PERSISTENT, 7, 5)))));
+        Message m = consumer.receive(10000);
+        assertNotNull(m);
+        assertEquals(DeliveryMode.NON_PERSISTENT, m.getJMSDeliveryMode());
+        assertEquals(7, m.getJMSPriority());
+        assertTrue(m.getJMSExpiration() >= sent + TimeUnit.MINUTES.toMillis(5));
+        assertTrue(m.getJMSExpiration() <= System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5));
+
+        // The provider defaults apply to what the step leaves unset.
+        assertTrue(worker.deliver(Collections.singletonList(message(null))));
+        m = consumer.receive(10000);
+        assertNotNull(m);
+        assertEquals(DeliveryMode.PERSISTENT, m.getJMSDeliveryMode());
+        assertEquals(2, m.getJMSPriority());
+        assertEquals(0, m.getJMSExpiration());
+    }
+
+    private static OutgoingMessage message(SendOptions options) {
+        return new OutgoingMessage(UUID.randomUUID().toString(), "sender", MESSAGE_TYPE.CodeQualityChecksDone,
+                Collections.<String, String>emptyMap(), "content", options, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,58 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class SubscriptionStatsTest {
+
+    private static final long NOW = 1000000000000L;
+
+    @Test
+    public void testSlidingWindows() {
+        SubscriptionStats stats = new SubscriptionStats();
+        assertEquals(-1, stats.getMatchRatio(60, NOW), 0);
+
+        stats.received(60, NOW - 600 * 1000);
+        stats.received(30, NOW - 30 * 1000);
+        stats.matched(15, NOW - 30 * 1000);
+        stats.received(30, NOW);
+        stats.matched(15, NOW);
+
+        assertEquals(1.0, stats.getReceivedRate(60, NOW), 0);
+        assertEquals(0.5, stats.getMatchedRate(60, NOW), 0);
+        assertEquals(0.5, stats.getMatchRatio(60, NOW), 0);
+        assertEquals(120.0 / 900, stats.getReceivedRate(900, NOW), 1e-9);
+        assertEquals(120, stats.getTotalReceived());
+        assertEquals(30, stats.getTotalMatched());
+        assertEquals(NOW, stats.getLastReceived());
+
+        // Slots are reused once the ring went around.
+        stats.received(1, NOW + 900 * 1000);
+        assertEquals(1.0 / 60, stats.getReceivedRate(60, NOW + 900 * 1000), 1e-9);
+        assertEquals(1.0 / 900, stats.getReceivedRate(900, NOW + 900 * 1000), 1e-9);
+    }
+}
@@ -0,0 +1,122 @@
+package com.redhat.jenkins.plugins.ci.messaging;
+
+import com.redhat.jenkins.plugins.ci.BrokerRule;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Batches of messages, as sent by the sendCIMessages step, are delivered in
+ * one transaction.
+ */
+public class TransactedSendTest {
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public final BrokerRule broker = new BrokerRule("transacted");
+
+    private MessageConsumer consumer;
+    private JMSMessagingWorker worker;
+
+    @Before
+    public void setUp() throws Exception {
+        worker = broker.addProvider("transacted").createWorker("sender");
+        Session session = broker.createConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+        consumer = session.createConsumer(session.createTopic(BrokerRule.TOPIC));
+    }
+
+    @Test
+    public void testBatchIsCommitted() throws Exception {
+        List<OutgoingMessage> batch = new ArrayList<OutgoingMessage>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(message("message " + i, Collections.<String, String>emptyMap()));
+        }
+        assertTrue(worker.deliver(batch));
+        for (int i = 0; i < 3; i++) {
+            TextMessage m = (TextMessage) consumer.receive(10000);
+            assertNotNull(m);
+            assertEquals("message " + i, m.getText());
+            assertEquals(batch.get(i).getId(), m.getStringProperty(OutgoingMessage.ID_PROPERTY));
+        }
+    }
+
+    @Test
+    public void testFailedBatchIsRolledBack() throws Exception {
+        List<OutgoingMessage> batch = new ArrayList<OutgoingMessage>();
+        batch.add(message("first", Collections.<String, String>emptyMap()));
+        batch.add(message("second", Collections.<String, String>emptyMap()));
+        // JMS refuses empty property names, the third message cannot be sent.
+        batch.add(message("third", Collections.singletonMap("", "invalid")));
+        assertFalse(worker.deliver(batch));
+        assertNull(consumer.receive(2000));
+
+        // Nothing is left behind for the next send.
+        assertTrue(worker.deliver(Collections.singletonList(message("after", Collections.<String, String>emptyMap()))));
+        TextMessage m = (TextMessage) consumer.receive(10000);
+        assertNotNull(m);
+        assertEquals("after", m.getText());
+    }
+
+    @Test
+    public void testStepSendsBatch() throws Exception {
+        WorkflowJob job = j.jenkins.createProject(WorkflowJob.class, "sender");
+        job.setDefinition(new CpsFlowDefinition("sendCIMessages providerName: 'transacted', messages: ["
+                + "[$class: 'CIMessage', messageType: 'CodeQualityChecksDone', messageProperties: '', messageContent: 'first'],"
+                + "[$class: 'CIMessage', messageType: 'CodeQualityChecksDone', messageProperties: '', messageContent: 'second']]"));
+        j.assertBuildStatusSuccess(job.scheduleBuild2(0));
+        for (String content : new String[] {"first", "second"}) {
+            TextMessage m = (TextMessage) consumer.receive(10000);
+            assertNotNull(m);
+            assertEquals(content, m.getText());
+        }
+    }
+
+    private static OutgoingMessage message(String content, Map<String, String> properties) {
+        return new OutgoingMessage(UUID.randomUUID().toString(), "sender", MESSAGE_TYPE.CodeQualityChecksDone,
+                properties, content, null, System.currentTimeMillis());
+    }
+}
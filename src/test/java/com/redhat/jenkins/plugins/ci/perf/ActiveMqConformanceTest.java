@@ -0,0 +1,103 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import com.redhat.jenkins.plugins.ci.messaging.ActiveMqMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import hudson.util.Secret;
+
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Runs the {@link ProviderConformanceKit} against an embedded broker, over
+ * tcp://localhost.
+ */
+public class ActiveMqConformanceTest extends ProviderConformanceKit {
+
+    private static final Logger log = Logger.getLogger(ActiveMqConformanceTest.class.getName());
+
+    private EmbeddedBroker broker;
+    private AmqPublisher publisher;
+
+    @Override
+    protected void startStandIn() throws Exception {
+        if (broker == null) {
+            broker = new EmbeddedBroker("conformance");
+        }
+        broker.start();
+        publisher = new AmqPublisher(broker.getTcpUrl(), "CI");
+    }
+
+    @Override
+    protected void stopStandIn() throws Exception {
+        close();
+        broker.stop();
+    }
+
+    @Override
+    protected JMSMessagingProvider createProvider() {
+        return new ActiveMqMessagingProvider(NAME, broker.getTcpUrl(), "CI", "admin", Secret.fromString("redhat"));
+    }
+
+    @Override
+    protected void publish(String target, int sequence) throws Exception {
+        try {
+            if (publisher == null) {
+                publisher = new AmqPublisher(broker.getTcpUrl(), "CI");
+            }
+            publisher.send(Collections.singletonMap(Triggers.TARGET, target), "{\"sequence\":" + sequence + "}");
+        } catch (Exception e) {
+            // Connect again next time, the broker may be restarting.
+            close();
+            throw e;
+        }
+    }
+
+    private void close() {
+        if (publisher != null) {
+            try {
+                publisher.close();
+            } catch (Exception e) {
+                log.log(Level.FINE, "Closing publisher", e);
+            }
+            publisher = null;
+        }
+    }
+
+    @Override
+    protected long getConnects() {
+        return broker.getConnects();
+    }
+
+    @Override
+    protected int getOpenConnections() {
+        try {
+            return broker.getConnections();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
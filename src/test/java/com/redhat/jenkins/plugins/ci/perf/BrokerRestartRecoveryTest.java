@@ -0,0 +1,297 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
+import com.redhat.jenkins.plugins.ci.messaging.ActiveMqMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.FedMsgMessagingProvider;
+import hudson.model.FreeStyleProject;
+import hudson.util.Secret;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Restarts the embedded broker and the fedmsg relay under load and measures
+ * how the triggers recover: the time until the broker sees every subscriber
+ * again, the time until every job is triggered by a message published after
+ * the restart, the messages lost and delivered twice, and the rate at which
+ * the subscribers reconnect.
+ *
+ * The broker is persistent, so the durable subscriptions and the messages
+ * published for them while they reconnect survive the restart. The relay
+ * keeps nothing, what is published while it is down is lost by design.
+ *
+ * Scale it with e.g. -Dperf.jobs=200 -Dperf.rate=500 -Dperf.outage=10
+ */
+public class BrokerRestartRecoveryTest {
+
+    private static final Logger log = Logger.getLogger(BrokerRestartRecoveryTest.class.getName());
+
+    static final String TOPIC = "org.fedoraproject.perf";
+    /** Seconds both are down. */
+    static final int OUTAGE = Integer.getInteger("perf.outage", 3);
+    /** Seconds of traffic before the restart, and after the recovery. */
+    static final int STEADY = Integer.getInteger("perf.steady", 2);
+    static final Pattern SEQUENCE = Pattern.compile("\"sequence\"\\s*:\\s*(\\d+)");
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public final TemporaryFolder data = new TemporaryFolder();
+
+    private EmbeddedBroker broker;
+    private FedmsgRelay relay;
+    private volatile boolean flowing;
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    /** Job of every message published, by sequence. */
+    private final Map<Integer, String> published = new ConcurrentHashMap<Integer, String>();
+    /** Sequences of the messages the broker did not take. */
+    private final Set<Integer> rejected = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new EmbeddedBroker("recovery");
+        broker.setDataDirectory(data.newFolder("broker"));
+        broker.start();
+        relay = new FedmsgRelay();
+        relay.start();
+        GlobalCIConfiguration.get().addMessageProvider(new ActiveMqMessagingProvider("amq", broker.getTcpUrl(), "CI",
+                "admin", Secret.fromString("redhat")));
+        GlobalCIConfiguration.get().addMessageProvider(new FedMsgMessagingProvider("fedmsg", relay.getHubAddr(),
+                relay.getPubAddr(), TOPIC));
+        j.jenkins.setNumExecutors(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        flowing = false;
+        j.jenkins.getQueue().clear();
+        relay.stop();
+        broker.stop();
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        int perProvider = Math.max(1, TriggerThroughputTest.JOBS / 2);
+        List<FreeStyleProject> amqJobs = Triggers.create(j, "amq", "amq-", perProvider);
+        List<FreeStyleProject> fedmsgJobs = Triggers.create(j, "fedmsg", "fedmsg-", perProvider);
+        List<FreeStyleProject> jobs = new ArrayList<FreeStyleProject>(amqJobs);
+        jobs.addAll(fedmsgJobs);
+        assertTrue("jobs did not subscribe", Triggers.awaitReceiving(jobs, TriggerThroughputTest.TIMEOUT));
+        // Let the fedmsg subscribers join the relay, what they miss before
+        // would be counted as lost.
+        Thread.sleep(FedmsgPublisher.JOIN_MILLIS);
+        int connections = broker.getConnections();
+
+        Thread traffic = startTraffic(jobs);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(STEADY));
+
+        broker.stop();
+        relay.stop();
+        int lastBefore = sequence.get();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(OUTAGE));
+        broker.resetCounts();
+        broker.start();
+        relay.start();
+        long restarted = System.currentTimeMillis();
+        int firstAfter = sequence.get();
+
+        long connectionsRecovered = -1;
+        Map<String, Long> recovered = new HashMap<String, Long>();
+        while (recovered.size() < jobs.size()
+                && System.currentTimeMillis() - restarted < TriggerThroughputTest.TIMEOUT) {
+            long now = System.currentTimeMillis();
+            // The publisher is connected as well.
+            if (connectionsRecovered < 0 && broker.getConnections() >= connections + 1) {
+                connectionsRecovered = now - restarted;
+            }
+            for (Map.Entry<Integer, Integer> queued : queuedSequences().entrySet()) {
+                String job = published.get(queued.getKey());
+                if (queued.getKey() >= firstAfter && job != null && !recovered.containsKey(job)) {
+                    recovered.put(job, now - restarted);
+                }
+            }
+            Thread.sleep(50);
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(STEADY));
+        flowing = false;
+        traffic.join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        // Let the last messages be queued.
+        Thread.sleep(1000);
+
+        PerfReport report = new PerfReport("broker-restart")
+                .add("jobs", jobs.size())
+                .add("outageSeconds", OUTAGE)
+                .add("published", sequence.get())
+                .add("publishedDuringOutage", firstAfter - lastBefore)
+                .add("broker.connectionsBefore", connections)
+                .add("broker.connectionsRecoveredMs", connectionsRecovered)
+                .add("broker.connects", broker.getConnects())
+                .add("broker.peakConnectRate", broker.getPeakConnectRate());
+        Map<Integer, Integer> queued = queuedSequences();
+        for (List<FreeStyleProject> provider : Arrays.asList(amqJobs, fedmsgJobs)) {
+            String name = provider == amqJobs ? "amq" : "fedmsg";
+            Set<String> names = new HashSet<String>();
+            List<Long> times = new ArrayList<Long>();
+            for (FreeStyleProject job : provider) {
+                names.add(job.getFullName());
+                if (recovered.containsKey(job.getFullName())) {
+                    times.add(recovered.get(job.getFullName()));
+                }
+            }
+            int lost = 0;
+            int lostDuringOutage = 0;
+            int duplicated = 0;
+            for (Map.Entry<Integer, String> message : published.entrySet()) {
+                if (!names.contains(message.getValue()) || rejected.contains(message.getKey())) {
+                    continue;
+                }
+                Integer count = queued.get(message.getKey());
+                if (count == null) {
+                    lost++;
+                    if (message.getKey() >= lastBefore && message.getKey() < firstAfter) {
+                        lostDuringOutage++;
+                    }
+                } else if (count > 1) {
+                    duplicated += count - 1;
+                }
+            }
+            report.addLatencies(name + ".recoveredMs", times)
+                    .add(name + ".recovered", times.size())
+                    .add(name + ".lost", lost)
+                    .add(name + ".lostDuringOutage", lostDuringOutage)
+                    .add(name + ".duplicated", duplicated);
+        }
+        report.add("rejected", rejected.size()).write();
+        assertTrue("jobs did not recover: " + recovered.keySet(), recovered.size() == jobs.size());
+    }
+
+    /**
+     * Times each queued message was triggered, by sequence.
+     */
+    private static Map<Integer, Integer> queuedSequences() {
+        Map<Integer, Integer> sequences = new HashMap<Integer, Integer>();
+        for (Map.Entry<String, Integer> message : Triggers.queuedMessages().entrySet()) {
+            Matcher m = SEQUENCE.matcher(message.getKey());
+            if (m.find()) {
+                Integer key = Integer.valueOf(m.group(1));
+                Integer before = sequences.get(key);
+                sequences.put(key, before == null ? message.getValue() : before + message.getValue());
+            }
+        }
+        return sequences;
+    }
+
+    /**
+     * Publishes to the jobs in turn, on both providers, at perf.rate. The
+     * ActiveMQ publisher reconnects once the broker is back, the messages it
+     * could not send are not counted as lost. The fedmsg one does not notice
+     * the relay is gone.
+     */
+    private Thread startTraffic(final List<FreeStyleProject> jobs) throws InterruptedException {
+        final FedmsgPublisher fedmsg = new FedmsgPublisher(relay.getPubAddr(), TOPIC);
+        flowing = true;
+        Thread traffic = new Thread("broker restart traffic") {
+            @Override
+            public void run() {
+                AmqPublisher amq = null;
+                Map<String, String> properties = new HashMap<String, String>();
+                properties.put("CI_TYPE", "code-quality-checks-done");
+                long start = System.nanoTime();
+                try {
+                    for (int i = 0; flowing; i++) {
+                        long wait = start + TimeUnit.SECONDS.toNanos(i) / TriggerThroughputTest.RATE - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        String job = jobs.get(i % jobs.size()).getFullName();
+                        int next = sequence.getAndIncrement();
+                        published.put(next, job);
+                        if (job.startsWith("fedmsg-")) {
+                            fedmsg.send(FedMsgThroughputTest.fields(job, next));
+                            continue;
+                        }
+                        try {
+                            if (amq == null) {
+                                amq = new AmqPublisher(broker.getTcpUrl(), "CI");
+                            }
+                            properties.put(Triggers.TARGET, job);
+                            amq.send(properties, "{\"sequence\":" + next + "}");
+                        } catch (Exception e) {
+                            rejected.add(next);
+                            log.log(Level.FINE, "Broker did not take message " + next, e);
+                            amq = close(amq);
+                        }
+                    }
+                } catch (Exception e) {
+                    failure.set(e);
+                } finally {
+                    close(amq);
+                    fedmsg.close();
+                }
+            }
+        };
+        traffic.start();
+        return traffic;
+    }
+
+    private static AmqPublisher close(AmqPublisher amq) {
+        if (amq != null) {
+            try {
+                amq.close();
+            } catch (Exception e) {
+                log.log(Level.FINE, "Closing publisher", e);
+            }
+        }
+        return null;
+    }
+}
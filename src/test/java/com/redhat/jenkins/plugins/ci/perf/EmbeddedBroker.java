@@ -0,0 +1,174 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerFilter;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ConnectionInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * ActiveMQ broker in the test JVM, reachable through vm:// and through
+ * tcp://localhost, counting the connections made to it. It can be stopped and
+ * started again on the same addresses.
+ */
+public class EmbeddedBroker {
+
+    private final String name;
+    private final int port;
+    private final AtomicInteger connects = new AtomicInteger();
+    private final Map<Long, Integer> connectsPerSecond = new HashMap<Long, Integer>();
+    private File dataDirectory;
+    private BrokerService broker;
+
+    public EmbeddedBroker(String name) throws IOException {
+        this.name = name;
+        this.port = freePort();
+    }
+
+    /**
+     * Keeps messages and durable subscriptions in the directory, across
+     * restarts. Without one nothing survives a restart.
+     */
+    public void setDataDirectory(File dataDirectory) {
+        this.dataDirectory = dataDirectory;
+    }
+
+    static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    public synchronized void start() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName(name);
+        broker.setPersistent(dataDirectory != null);
+        if (dataDirectory != null) {
+            broker.setDataDirectoryFile(dataDirectory);
+        }
+        broker.setUseJmx(false);
+        broker.setUseShutdownHook(false);
+        broker.addConnector("tcp://localhost:" + port);
+        broker.setPlugins(new BrokerPlugin[] {new BrokerPlugin() {
+            @Override
+            public Broker installPlugin(Broker next) {
+                return new BrokerFilter(next) {
+                    @Override
+                    public void addConnection(ConnectionContext context, ConnectionInfo info) throws Exception {
+                        connected(System.currentTimeMillis());
+                        super.addConnection(context, info);
+                    }
+                };
+            }
+        }});
+        broker.start();
+        broker.waitUntilStarted();
+    }
+
+    public synchronized void stop() throws Exception {
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+            broker = null;
+        }
+    }
+
+    /**
+     * @return null while stopped
+     */
+    public synchronized BrokerService getService() {
+        return broker;
+    }
+
+    public synchronized boolean isStarted() {
+        return broker != null;
+    }
+
+    /**
+     * In-JVM address, for clients that must not outlive the broker.
+     */
+    public String getVmUrl() {
+        return "vm://" + name + "?create=false";
+    }
+
+    public String getTcpUrl() {
+        return "tcp://localhost:" + port;
+    }
+
+    private void connected(long now) {
+        connects.incrementAndGet();
+        synchronized (connectsPerSecond) {
+            Long second = now / 1000;
+            Integer n = connectsPerSecond.get(second);
+            connectsPerSecond.put(second, n == null ? 1 : n + 1);
+        }
+    }
+
+    /**
+     * Connections open right now.
+     */
+    public synchronized int getConnections() throws Exception {
+        return broker == null ? 0 : broker.getBroker().getClients().length;
+    }
+
+    /**
+     * Connections made since the broker was first started.
+     */
+    public int getConnects() {
+        return connects.get();
+    }
+
+    /**
+     * Most connections made within one second.
+     */
+    public int getPeakConnectRate() {
+        int peak = 0;
+        synchronized (connectsPerSecond) {
+            for (int n : connectsPerSecond.values()) {
+                peak = Math.max(peak, n);
+            }
+        }
+        return peak;
+    }
+
+    public void resetCounts() {
+        connects.set(0);
+        synchronized (connectsPerSecond) {
+            connectsPerSecond.clear();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import com.redhat.jenkins.plugins.ci.messaging.FedMsgMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Runs the {@link ProviderConformanceKit} against the in-JVM fedmsg relay.
+ */
+public class FedMsgConformanceTest extends ProviderConformanceKit {
+
+    static final String TOPIC = "org.fedoraproject.conformance";
+
+    private FedmsgRelay relay;
+    private FedmsgPublisher publisher;
+
+    @Override
+    protected void startStandIn() throws Exception {
+        if (relay == null) {
+            relay = new FedmsgRelay();
+        }
+        relay.start();
+        publisher = new FedmsgPublisher(relay.getPubAddr(), TOPIC);
+    }
+
+    @Override
+    protected void stopStandIn() throws Exception {
+        publisher.close();
+        relay.stop();
+    }
+
+    @Override
+    protected JMSMessagingProvider createProvider() {
+        return new FedMsgMessagingProvider(NAME, relay.getHubAddr(), relay.getPubAddr(), TOPIC);
+    }
+
+    @Override
+    protected void publish(String target, int sequence) {
+        publisher.send(FedMsgThroughputTest.fields(target, sequence));
+    }
+
+    /**
+     * Every delivery connects a new socket and waits 5 seconds for the relay
+     * to see it.
+     */
+    @Override
+    protected double getSendRateFloor() {
+        return 0.1;
+    }
+}
@@ -0,0 +1,204 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import com.redhat.jenkins.plugins.ci.CIBuildCause;
+import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
+import com.redhat.jenkins.plugins.ci.messaging.FedMsgMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingWorker;
+import com.redhat.jenkins.plugins.ci.messaging.OutgoingMessage;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.model.FreeStyleProject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * FedMsg worker throughput and latency through an in-JVM relay: subscribing
+ * many jobs, triggering them, waiting for a message and sending one. No
+ * executor runs the builds.
+ *
+ * Scale it with e.g. -Dperf.jobs=50 -Dperf.messages=10000 -Dperf.rate=500
+ */
+public class FedMsgThroughputTest {
+
+    static final String TOPIC = "org.fedoraproject.perf";
+    static final int WAITS = Integer.getInteger("perf.waits", 3);
+    static final int SENDS = Integer.getInteger("perf.sends", 2);
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    private FedmsgRelay relay;
+    private FedmsgPublisher publisher;
+    private FedMsgMessagingProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        relay = new FedmsgRelay();
+        relay.start();
+        publisher = new FedmsgPublisher(relay.getPubAddr(), TOPIC);
+        provider = new FedMsgMessagingProvider("fedmsg", relay.getHubAddr(), relay.getPubAddr(), TOPIC);
+        GlobalCIConfiguration.get().addMessageProvider(provider);
+        j.jenkins.setNumExecutors(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        j.jenkins.getQueue().clear();
+        publisher.close();
+        relay.stop();
+    }
+
+    static Map<String, Object> fields(String target, int sequence) {
+        Map<String, Object> fields = new HashMap<String, Object>();
+        fields.put("CI_TYPE", "code-quality-checks-done");
+        fields.put(Triggers.TARGET, target);
+        fields.put("sequence", sequence);
+        return fields;
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        PerfReport report = new PerfReport("fedmsg");
+        int threadsBefore = PerfReport.threadCount();
+
+        long start = System.currentTimeMillis();
+        List<FreeStyleProject> jobs = Triggers.create(j, "fedmsg", TriggerThroughputTest.JOBS);
+        assertTrue("jobs did not subscribe", Triggers.awaitReceiving(jobs, TriggerThroughputTest.TIMEOUT));
+        report.add("subscribeMs", System.currentTimeMillis() - start);
+
+        // Subscribers connect in the background, until the relay sees them
+        // the messages for them are lost.
+        start = System.currentTimeMillis();
+        while (Triggers.queuedJobs().size() < jobs.size()) {
+            assertTrue("subscribers did not join", System.currentTimeMillis() - start < TriggerThroughputTest.TIMEOUT);
+            for (FreeStyleProject job : jobs) {
+                publisher.send(fields(job.getFullName(), -1));
+            }
+            Thread.sleep(250);
+        }
+        report.add("joinMs", System.currentTimeMillis() - start);
+        j.jenkins.getQueue().clear();
+        report.add("threads.subscribed", PerfReport.threadCount());
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < TriggerThroughputTest.MESSAGES; i++) {
+            long due = start + TimeUnit.SECONDS.toMillis(i) / TriggerThroughputTest.RATE;
+            long wait = due - System.currentTimeMillis();
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+            publisher.send(fields(Triggers.jobName(i % jobs.size()), i));
+        }
+        long published = System.currentTimeMillis();
+        List<CIBuildCause> causes = Triggers.awaitQueued(TriggerThroughputTest.MESSAGES, TriggerThroughputTest.TIMEOUT);
+        List<Long> receiveToQueue = new ArrayList<Long>();
+        long lastQueued = start;
+        for (CIBuildCause cause : causes) {
+            receiveToQueue.add(cause.getQueued() - cause.getReceived());
+            lastQueued = Math.max(lastQueued, cause.getQueued());
+        }
+        j.jenkins.getQueue().clear();
+        report.add("jobs", jobs.size())
+                .add("messages", TriggerThroughputTest.MESSAGES)
+                .add("publishRate", TriggerThroughputTest.MESSAGES * 1000.0 / Math.max(1, published - start))
+                .add("triggerRate", causes.size() * 1000.0 / Math.max(1, lastQueued - start))
+                .addLatencies("receiveToQueueMs", receiveToQueue);
+
+        report.addLatencies("waitForMessageMs", waitForMessage());
+        report.addLatencies("sendMs", send());
+        report.add("threads.before", threadsBefore)
+                .add("threads.after", PerfReport.threadCount())
+                .add("relay.forwarded", relay.getForwarded())
+                .write();
+        assertEquals("builds queued", TriggerThroughputTest.MESSAGES, causes.size());
+    }
+
+    /**
+     * Time until waitForMessage returns a message published every 50 ms,
+     * which includes joining the relay.
+     */
+    private List<Long> waitForMessage() throws Exception {
+        List<Long> latencies = new ArrayList<Long>();
+        for (int i = 0; i < WAITS; i++) {
+            final String target = "waiter-" + i;
+            final JMSMessagingWorker worker = provider.createWorker(target);
+            final AtomicReference<String> value = new AtomicReference<String>();
+            Thread waiter = new Thread("waitForMessage " + target) {
+                @Override
+                public void run() {
+                    value.set(worker.waitForMessage(null, Triggers.TARGET + " = '" + target + "'", null, 1));
+                }
+            };
+            long start = System.currentTimeMillis();
+            waiter.start();
+            while (waiter.isAlive()) {
+                publisher.send(fields(target, i));
+                waiter.join(50);
+            }
+            latencies.add(System.currentTimeMillis() - start);
+            assertNotNull("no message for " + target, value.get());
+        }
+        return latencies;
+    }
+
+    /**
+     * Time to send one message, which includes the delay the worker leaves
+     * the relay to see it.
+     */
+    private List<Long> send() throws InterruptedException {
+        List<Long> latencies = new ArrayList<Long>();
+        for (int i = 0; i < SENDS; i++) {
+            long forwarded = relay.getForwarded();
+            JMSMessagingWorker worker = provider.createWorker("sender");
+            OutgoingMessage message = new OutgoingMessage(UUID.randomUUID().toString(), "sender",
+                    MESSAGE_TYPE.CodeQualityChecksDone, Collections.singletonMap(Triggers.TARGET, "nobody"),
+                    "content", null, System.currentTimeMillis());
+            long start = System.currentTimeMillis();
+            assertTrue("send failed", worker.deliver(Collections.singletonList(message)));
+            latencies.add(System.currentTimeMillis() - start);
+            for (int wait = 0; wait < 50 && relay.getForwarded() == forwarded; wait++) {
+                Thread.sleep(100);
+            }
+            assertTrue("relay did not forward", relay.getForwarded() > forwarded);
+        }
+        return latencies;
+    }
+}
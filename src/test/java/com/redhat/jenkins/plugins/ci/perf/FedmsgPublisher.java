@@ -0,0 +1,70 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import com.redhat.jenkins.plugins.ci.messaging.data.FedmsgMessage;
+import org.zeromq.ZMQ;
+
+import java.util.Map;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Publishes synthetic fedmsg messages to a relay, in the format the FedMsg
+ * worker sends them.
+ */
+public class FedmsgPublisher {
+
+    /** Time for the relay to see a new publisher, messages sent before are lost. */
+    public static final long JOIN_MILLIS = 1000;
+
+    private final ZMQ.Context context;
+    private final ZMQ.Socket socket;
+    private final String topic;
+
+    public FedmsgPublisher(String pubAddr, String topic) throws InterruptedException {
+        this.topic = topic;
+        context = ZMQ.context(1);
+        socket = context.socket(ZMQ.PUB);
+        socket.setLinger(0);
+        socket.connect(pubAddr);
+        Thread.sleep(JOIN_MILLIS);
+    }
+
+    /**
+     * @return the message sent
+     */
+    public FedmsgMessage send(Map<String, Object> fields) {
+        FedmsgMessage message = new FedmsgMessage();
+        message.setTopic(topic);
+        message.setTimestamp(System.currentTimeMillis() / 1000);
+        message.setMsg(fields);
+        socket.sendMore(topic);
+        socket.send(message.toJson());
+        return message;
+    }
+
+    public void close() {
+        socket.close();
+        context.term();
+    }
+}
@@ -0,0 +1,127 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import org.zeromq.ZMQ;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Stand-in for the fedmsg relay: forwards what publishers send to the
+ * publish address to the subscribers of the hub address, on localhost.
+ */
+public class FedmsgRelay {
+
+    private final int hubPort;
+    private final int pubPort;
+    private final AtomicLong forwarded = new AtomicLong();
+    private volatile boolean running;
+    private Thread thread;
+    private CountDownLatch bound;
+
+    public FedmsgRelay() throws IOException {
+        this.hubPort = EmbeddedBroker.freePort();
+        this.pubPort = EmbeddedBroker.freePort();
+    }
+
+    /**
+     * Where the subscribers connect.
+     */
+    public String getHubAddr() {
+        return "tcp://localhost:" + hubPort;
+    }
+
+    /**
+     * Where the publishers connect.
+     */
+    public String getPubAddr() {
+        return "tcp://localhost:" + pubPort;
+    }
+
+    /**
+     * Messages forwarded since the relay was created.
+     */
+    public long getForwarded() {
+        return forwarded.get();
+    }
+
+    public synchronized void start() throws InterruptedException {
+        running = true;
+        bound = new CountDownLatch(1);
+        thread = new Thread("fedmsg relay " + getHubAddr()) {
+            @Override
+            public void run() {
+                relay();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        if (!bound.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Relay did not start");
+        }
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+            thread = null;
+        }
+    }
+
+    private void relay() {
+        ZMQ.Context context = ZMQ.context(1);
+        ZMQ.Socket in = context.socket(ZMQ.SUB);
+        ZMQ.Socket out = context.socket(ZMQ.PUB);
+        try {
+            in.setLinger(0);
+            out.setLinger(0);
+            in.subscribe(new byte[0]);
+            in.bind("tcp://*:" + pubPort);
+            out.bind("tcp://*:" + hubPort);
+            bound.countDown();
+            ZMQ.Poller poller = new ZMQ.Poller(1);
+            poller.register(in, ZMQ.Poller.POLLIN);
+            while (running) {
+                if (poller.poll(100) > 0 && poller.pollin(0)) {
+                    // Topic frame, then the JSON one.
+                    boolean more = true;
+                    while (more) {
+                        byte[] frame = in.recv(0);
+                        more = in.hasReceiveMore();
+                        out.send(frame, more ? ZMQ.SNDMORE : 0);
+                    }
+                    forwarded.incrementAndGet();
+                }
+            }
+        } finally {
+            in.close();
+            out.close();
+            context.term();
+        }
+    }
+}
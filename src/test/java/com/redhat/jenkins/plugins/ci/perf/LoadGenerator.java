@@ -0,0 +1,359 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import com.redhat.jenkins.plugins.ci.messaging.ActiveMqMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingWorker;
+import com.redhat.jenkins.plugins.ci.messaging.OutgoingMessage;
+import com.redhat.jenkins.plugins.ci.messaging.data.FedmsgMessage;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.util.Secret;
+import org.zeromq.ZMQ;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Publishes a synthetic mix of CI messages at a controlled rate, through the
+ * ActiveMQ send code of the plugin or as fedmsg messages, and reports the
+ * rate achieved and the errors:
+ *
+ * <pre>
+ * mvn -Pload test-compile exec:exec -Dload.args="--provider=amq --url=tcp://localhost:61616 --rate=100 --duration=60"
+ * </pre>
+ *
+ * Options, all --name=value:
+ * <ul>
+ * <li>provider: amq or fedmsg</li>
+ * <li>url: broker URL, or the publish address of the fedmsg relay</li>
+ * <li>topic, user, password</li>
+ * <li>rate: messages per second, duration: seconds</li>
+ * <li>profile: constant, burst (burstRate for burstLength seconds every
+ * burstEvery seconds) or ramp (from rate to rampTo)</li>
+ * <li>mix: message types and weights, e.g. ComponentBuildDone:3,TestingStarted:1;
+ * all types equally by default</li>
+ * <li>sizes: content sizes in characters and weights, e.g. 256:70,4096:25,65536:5</li>
+ * <li>property: KEY=VALUE added to every message, may be repeated</li>
+ * </ul>
+ */
+public class LoadGenerator {
+
+    /** Messages are sent in a batch per tick. */
+    static final long TICK_MILLIS = 100;
+
+    public enum Profile {
+        CONSTANT, BURST, RAMP
+    }
+
+    /**
+     * Picks values in proportion to their weights.
+     */
+    static final class Weighted<T> {
+        private final List<T> values = new ArrayList<T>();
+        private final List<Integer> cumulated = new ArrayList<Integer>();
+        private int total;
+
+        void add(T value, int weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weight of " + value + " must be positive");
+            }
+            total += weight;
+            values.add(value);
+            cumulated.add(total);
+        }
+
+        T pick(Random random) {
+            int n = random.nextInt(total);
+            for (int i = 0; ; i++) {
+                if (n < cumulated.get(i)) {
+                    return values.get(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends one batch of messages.
+     */
+    interface Sender {
+        boolean send(List<OutgoingMessage> batch) throws Exception;
+
+        void close();
+    }
+
+    private String provider = "amq";
+    private String url;
+    private String topic;
+    private String user = "admin";
+    private String password = "redhat";
+    private double rate = 10;
+    private int duration = 60;
+    private Profile profile = Profile.CONSTANT;
+    private double burstRate = 100;
+    private int burstEvery = 30;
+    private int burstLength = 5;
+    private double rampTo = 100;
+    private final Weighted<MESSAGE_TYPE> mix = new Weighted<MESSAGE_TYPE>();
+    private final Weighted<Integer> sizes = new Weighted<Integer>();
+    private final Map<String, String> properties = new LinkedHashMap<String, String>();
+    private final Random random = new Random();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        for (String arg : args) {
+            generator.option(arg);
+        }
+        generator.run().write();
+    }
+
+    void option(String arg) {
+        if (arg.isEmpty()) {
+            return;
+        }
+        int eq = arg.indexOf('=');
+        if (!arg.startsWith("--") || eq < 0) {
+            throw new IllegalArgumentException("Expected --name=value, got " + arg);
+        }
+        String name = arg.substring(2, eq);
+        String value = arg.substring(eq + 1);
+        if (name.equals("provider")) {
+            provider = value;
+        } else if (name.equals("url")) {
+            url = value;
+        } else if (name.equals("topic")) {
+            topic = value;
+        } else if (name.equals("user")) {
+            user = value;
+        } else if (name.equals("password")) {
+            password = value;
+        } else if (name.equals("rate")) {
+            rate = Double.parseDouble(value);
+        } else if (name.equals("duration")) {
+            duration = Integer.parseInt(value);
+        } else if (name.equals("profile")) {
+            profile = Profile.valueOf(value.toUpperCase());
+        } else if (name.equals("burstRate")) {
+            burstRate = Double.parseDouble(value);
+        } else if (name.equals("burstEvery")) {
+            burstEvery = Integer.parseInt(value);
+        } else if (name.equals("burstLength")) {
+            burstLength = Integer.parseInt(value);
+        } else if (name.equals("rampTo")) {
+            rampTo = Double.parseDouble(value);
+        } else if (name.equals("mix")) {
+            for (String entry : value.split(",")) {
+                String[] typeAndWeight = entry.split(":");
+                MESSAGE_TYPE type = MESSAGE_TYPE.fromString(typeAndWeight[0].trim());
+                if (type == null) {
+                    throw new IllegalArgumentException("Unknown message type " + typeAndWeight[0]);
+                }
+                mix.add(type, typeAndWeight.length > 1 ? Integer.parseInt(typeAndWeight[1].trim()) : 1);
+            }
+        } else if (name.equals("sizes")) {
+            for (String entry : value.split(",")) {
+                String[] sizeAndWeight = entry.split(":");
+                sizes.add(Integer.parseInt(sizeAndWeight[0].trim()),
+                        sizeAndWeight.length > 1 ? Integer.parseInt(sizeAndWeight[1].trim()) : 1);
+            }
+        } else if (name.equals("property")) {
+            int kv = value.indexOf('=');
+            if (kv < 0) {
+                throw new IllegalArgumentException("Expected --property=KEY=VALUE, got " + arg);
+            }
+            properties.put(value.substring(0, kv), value.substring(kv + 1));
+        } else {
+            throw new IllegalArgumentException("Unknown option " + name);
+        }
+    }
+
+    /**
+     * Messages per second due at the given time since the start.
+     */
+    double rateAt(double seconds) {
+        switch (profile) {
+            case BURST:
+                return seconds % burstEvery < burstLength ? burstRate : rate;
+            case RAMP:
+                return rate + (rampTo - rate) * Math.min(1, seconds / duration);
+            default:
+                return rate;
+        }
+    }
+
+    public PerfReport run() throws Exception {
+        if (url == null) {
+            throw new IllegalArgumentException("--url is required");
+        }
+        if (mix.total == 0) {
+            for (MESSAGE_TYPE type : MESSAGE_TYPE.values()) {
+                mix.add(type, 1);
+            }
+        }
+        if (sizes.total == 0) {
+            sizes.add(1024, 1);
+        }
+        Sender sender = provider.equals("fedmsg") ? fedmsg() : amq();
+        int sent = 0;
+        int errors = 0;
+        double due = 0;
+        List<Long> batchMillis = new ArrayList<Long>();
+        long start = System.currentTimeMillis();
+        long end = start + TimeUnit.SECONDS.toMillis(duration);
+        try {
+            for (long tick = start; tick < end; tick += TICK_MILLIS) {
+                long wait = tick - System.currentTimeMillis();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+                due += rateAt((tick - start) / 1000.0) * TICK_MILLIS / 1000;
+                int n = (int) due;
+                if (n == 0) {
+                    continue;
+                }
+                due -= n;
+                List<OutgoingMessage> batch = new ArrayList<OutgoingMessage>(n);
+                for (int i = 0; i < n; i++) {
+                    batch.add(message());
+                }
+                long sending = System.currentTimeMillis();
+                try {
+                    if (sender.send(batch)) {
+                        sent += n;
+                    } else {
+                        errors += n;
+                    }
+                } catch (Exception e) {
+                    errors += n;
+                }
+                batchMillis.add(System.currentTimeMillis() - sending);
+            }
+        } finally {
+            sender.close();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        return new PerfReport("load-generator")
+                .add("provider", provider)
+                .add("profile", profile.name().toLowerCase())
+                .add("sent", sent)
+                .add("errors", errors)
+                .add("elapsedMs", elapsed)
+                .add("achievedRate", sent * 1000.0 / Math.max(1, elapsed))
+                .addLatencies("batchMs", batchMillis);
+    }
+
+    private OutgoingMessage message() {
+        MESSAGE_TYPE type = mix.pick(random);
+        Map<String, String> props = new LinkedHashMap<String, String>();
+        props.put("CI_NAME", "load-generator");
+        props.put("CI_TYPE", type.getMessage());
+        props.put("CI_STATUS", random.nextInt(10) == 0 ? "failed" : "passed");
+        props.putAll(properties);
+        return new OutgoingMessage(UUID.randomUUID().toString(), "load-generator", type, props,
+                content(sizes.pick(random)), null, System.currentTimeMillis());
+    }
+
+    private String content(int size) {
+        StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Through the ActiveMQ worker of the plugin: a connection per batch, a
+     * transaction when there is more than one message.
+     */
+    private Sender amq() throws Exception {
+        ActiveMqMessagingProvider p = new ActiveMqMessagingProvider("load-generator", url,
+                topic == null ? "CI" : topic, user, secret(password));
+        final JMSMessagingWorker worker = p.createWorker("load-generator");
+        return new Sender() {
+            @Override
+            public boolean send(List<OutgoingMessage> batch) {
+                return worker.deliver(batch);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Outside of Jenkins there is no key to try decrypting the password with.
+     */
+    static Secret secret(String password) throws Exception {
+        try {
+            return Secret.fromString(password);
+        } catch (IllegalStateException e) {
+            Constructor<Secret> constructor = Secret.class.getDeclaredConstructor(String.class);
+            constructor.setAccessible(true);
+            return constructor.newInstance(password);
+        }
+    }
+
+    /**
+     * Over a single socket, as the FedMsg worker formats them.
+     */
+    private Sender fedmsg() throws InterruptedException {
+        final String fedmsgTopic = topic == null ? "org.fedoraproject.dev.logger.log" : topic;
+        final ZMQ.Context context = ZMQ.context(1);
+        final ZMQ.Socket socket = context.socket(ZMQ.PUB);
+        socket.setLinger(0);
+        socket.connect(url);
+        Thread.sleep(FedmsgPublisher.JOIN_MILLIS);
+        return new Sender() {
+            @Override
+            public boolean send(List<OutgoingMessage> batch) {
+                boolean sent = true;
+                for (OutgoingMessage m : batch) {
+                    HashMap<String, Object> fields = new HashMap<String, Object>(m.getProperties());
+                    fields.put("message-content", m.getContent());
+                    FedmsgMessage message = new FedmsgMessage();
+                    message.setMsgId(m.getId());
+                    message.setMsg(fields);
+                    message.setTopic(fedmsgTopic);
+                    message.setTimestamp(m.getCreated() / 1000);
+                    sent &= socket.sendMore(fedmsgTopic);
+                    sent &= socket.send(message.toJson());
+                }
+                return sent;
+            }
+
+            @Override
+            public void close() {
+                socket.close();
+                context.term();
+            }
+        };
+    }
+}
@@ -0,0 +1,110 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.Test;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class LoadGeneratorTest {
+
+    @Test
+    public void testProfiles() {
+        LoadGenerator g = new LoadGenerator();
+        g.option("--rate=10");
+        g.option("--duration=100");
+        assertEquals(10, g.rateAt(50), 0);
+        g.option("--profile=burst");
+        g.option("--burstRate=200");
+        g.option("--burstEvery=30");
+        g.option("--burstLength=5");
+        assertEquals(200, g.rateAt(62), 0);
+        assertEquals(10, g.rateAt(66), 0);
+        g.option("--profile=ramp");
+        g.option("--rampTo=110");
+        assertEquals(60, g.rateAt(50), 0);
+        assertEquals(110, g.rateAt(150), 0);
+    }
+
+    @Test
+    public void testAgainstEmbeddedBroker() throws Exception {
+        EmbeddedBroker broker = new EmbeddedBroker("load");
+        broker.start();
+        try {
+            Connection connection = new ActiveMQConnectionFactory(broker.getVmUrl()).createConnection();
+            final AtomicInteger received = new AtomicInteger();
+            final Set<String> types = new HashSet<String>();
+            try {
+                connection.start();
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                session.createConsumer(session.createTopic("CI")).setMessageListener(new MessageListener() {
+                    @Override
+                    public void onMessage(Message message) {
+                        try {
+                            synchronized (types) {
+                                types.add(message.getStringProperty("CI_TYPE"));
+                            }
+                            received.incrementAndGet();
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+
+                LoadGenerator g = new LoadGenerator();
+                for (String option : new String[] {"--provider=amq", "--url=" + broker.getVmUrl(), "--rate=50",
+                        "--duration=2", "--mix=ComponentBuildDone:3,TestingStarted:1", "--sizes=64:1,1024:1",
+                        "--property=ORIGIN=test"}) {
+                    g.option(option);
+                }
+                PerfReport report = g.run();
+                assertEquals("0", report.get("errors"));
+                int sent = Integer.parseInt(report.get("sent"));
+                assertTrue(report.get("sent"), sent >= 90);
+                for (int i = 0; i < 50 && received.get() < sent; i++) {
+                    Thread.sleep(100);
+                }
+                assertEquals(sent, received.get());
+                synchronized (types) {
+                    assertTrue(types.toString(), types.contains("component-build-done"));
+                    assertEquals(types.toString(), 2, types.size());
+                }
+            } finally {
+                connection.close();
+            }
+        } finally {
+            broker.stop();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Figures measured by a harness, printed and written to
+ * target/perf-reports/&lt;name&gt;.txt to compare runs.
+ */
+public class PerfReport {
+
+    private final String name;
+    private final Map<String, String> values = new LinkedHashMap<String, String>();
+
+    public PerfReport(String name) {
+        this.name = name;
+    }
+
+    public PerfReport add(String key, long value) {
+        values.put(key, Long.toString(value));
+        return this;
+    }
+
+    public PerfReport add(String key, double value) {
+        values.put(key, String.format(Locale.ENGLISH, "%.2f", value));
+        return this;
+    }
+
+    public PerfReport add(String key, String value) {
+        values.put(key, value);
+        return this;
+    }
+
+    /**
+     * Adds the median, 99th percentile and maximum of the samples.
+     */
+    public PerfReport addLatencies(String key, List<Long> samples) {
+        List<Long> sorted = new ArrayList<Long>(samples);
+        Collections.sort(sorted);
+        add(key + ".count", sorted.size());
+        if (!sorted.isEmpty()) {
+            add(key + ".p50", percentile(sorted, 0.5));
+            add(key + ".p99", percentile(sorted, 0.99));
+            add(key + ".max", sorted.get(sorted.size() - 1));
+        }
+        return this;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted samples.
+     */
+    public static long percentile(List<Long> sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.size());
+        return sorted.get(Math.max(0, Math.min(sorted.size(), rank) - 1));
+    }
+
+    public static int threadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    public void write() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            sb.append(name).append('.').append(e.getKey()).append(" = ").append(e.getValue()).append('\n');
+        }
+        System.out.print(sb);
+        File dir = new File(System.getProperty("basedir", "."), "target/perf-reports");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        Writer w = new OutputStreamWriter(new FileOutputStream(new File(dir, name + ".txt")), "UTF-8");
+        try {
+            w.write(sb.toString());
+        } finally {
+            w.close();
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import com.redhat.jenkins.plugins.ci.CIBuildCause;
+import com.redhat.jenkins.plugins.ci.CITriggerThread;
+import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingWorker;
+import com.redhat.jenkins.plugins.ci.messaging.OutgoingMessage;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.model.FreeStyleProject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.redhat.jenkins.plugins.ci.CIBuildTrigger.getTriggerThreads;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Checks that a {@link JMSMessagingProvider} implementation scales: send and
+ * trigger throughput floors, how fast a trigger thread stops once
+ * interrupted, that subscribing and sending again and again does not leak
+ * threads, files or connections, and that triggers reconnect after the
+ * messaging server restarts without subscribing twice.
+ *
+ * A provider runs it by extending the kit with a local stand-in for its
+ * messaging server, see {@link ActiveMqConformanceTest}. The floors are
+ * system properties, a provider known to be slower at something overrides
+ * the matching getter and says why.
+ */
+public abstract class ProviderConformanceKit {
+
+    private static final Logger log = Logger.getLogger(ProviderConformanceKit.class.getName());
+
+    /** Name of the provider under test. */
+    public static final String NAME = "conformance";
+
+    static final int SENDS = Integer.getInteger("perf.conformance.sends", 100);
+    static final int SEND_SECONDS = Integer.getInteger("perf.conformance.sendSeconds", 5);
+    static final int BATCH = Integer.getInteger("perf.conformance.batch", 50);
+    static final int CYCLES = Integer.getInteger("perf.conformance.cycles", 6);
+    /** Cycles before the resources are taken as the baseline. */
+    static final int WARMUP = 2;
+    static final int OUTAGE = Integer.getInteger("perf.conformance.outage", 2);
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    protected JMSMessagingProvider provider;
+
+    /**
+     * Starts the stand-in, on the same addresses every time.
+     */
+    protected abstract void startStandIn() throws Exception;
+
+    protected abstract void stopStandIn() throws Exception;
+
+    /**
+     * @return the provider under test, named {@link #NAME}, talking to the stand-in
+     */
+    protected abstract JMSMessagingProvider createProvider() throws Exception;
+
+    /**
+     * Publishes a message with the given {@link Triggers#TARGET}, from outside
+     * the provider. Called from one thread at a time, also while the stand-in
+     * is down.
+     */
+    protected abstract void publish(String target, int sequence) throws Exception;
+
+    /**
+     * Connections the stand-in accepted so far.
+     *
+     * @return -1 if it does not tell
+     */
+    protected long getConnects() {
+        return -1;
+    }
+
+    /**
+     * Connections the stand-in has open.
+     *
+     * @return -1 if it does not tell
+     */
+    protected int getOpenConnections() {
+        return -1;
+    }
+
+    /** Messages delivered per second, one at a time. */
+    protected double getSendRateFloor() {
+        return Double.parseDouble(System.getProperty("perf.conformance.sendRate", "10"));
+    }
+
+    /** Builds triggered per second. */
+    protected double getTriggerRateFloor() {
+        return Double.parseDouble(System.getProperty("perf.conformance.triggerRate", "20"));
+    }
+
+    /** Time for a trigger thread to stop once interrupted. */
+    protected long getInterruptMillisCeiling() {
+        return Long.getLong("perf.conformance.interruptMillis", 3000);
+    }
+
+    /**
+     * Time for a trigger to be triggered again after the stand-in restarted.
+     * A failing subscribe waits {@link JMSMessagingWorker#RETRY_MINUTES} at
+     * worst.
+     */
+    protected long getReconnectMillisCeiling() {
+        return Long.getLong("perf.conformance.reconnectMillis",
+                TimeUnit.MINUTES.toMillis(JMSMessagingWorker.RETRY_MINUTES) + TimeUnit.SECONDS.toMillis(30));
+    }
+
+    @Before
+    public void setUpProvider() throws Exception {
+        startStandIn();
+        provider = createProvider();
+        GlobalCIConfiguration.get().addMessageProvider(provider);
+        j.jenkins.setNumExecutors(0);
+    }
+
+    @After
+    public void tearDownProvider() throws Exception {
+        j.jenkins.getQueue().clear();
+        stopStandIn();
+    }
+
+    @Test
+    public void testSendThroughput() throws Exception {
+        JMSMessagingWorker worker = provider.createWorker("sender");
+        int openBefore = getOpenConnections();
+        long connectsBefore = getConnects();
+        long start = System.currentTimeMillis();
+        long deadline = start + TimeUnit.SECONDS.toMillis(SEND_SECONDS);
+        int sent = 0;
+        do {
+            assertTrue("send " + sent + " failed", worker.deliver(Collections.singletonList(message())));
+            sent++;
+        } while (sent < SENDS && System.currentTimeMillis() < deadline);
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        long connectsSingle = getConnects() - connectsBefore;
+
+        List<OutgoingMessage> batch = new ArrayList<OutgoingMessage>();
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(message());
+        }
+        long connectsBatch = getConnects();
+        start = System.currentTimeMillis();
+        assertTrue("batch send failed", worker.deliver(batch));
+        long batchElapsed = Math.max(1, System.currentTimeMillis() - start);
+        connectsBatch = getConnects() - connectsBatch;
+
+        double rate = sent * 1000.0 / elapsed;
+        new PerfReport("conformance-" + getClass().getSimpleName() + "-send")
+                .add("sent", sent)
+                .add("sendRate", rate)
+                .add("batch", BATCH)
+                .add("batchRate", BATCH * 1000.0 / batchElapsed)
+                .add("connectsPerSend", getConnects() < 0 ? -1 : (double) connectsSingle / sent)
+                .add("connectsPerBatch", getConnects() < 0 ? -1 : connectsBatch)
+                .write();
+        assertTrue("send rate " + rate + " below " + getSendRateFloor(), rate >= getSendRateFloor());
+        if (getConnects() >= 0) {
+            assertTrue("a batch used " + connectsBatch + " connections", connectsBatch <= 1);
+        }
+        if (openBefore >= 0) {
+            assertTrue("connections left open", awaitOpenConnections(openBefore));
+        }
+    }
+
+    @Test
+    public void testTriggerThroughput() throws Exception {
+        List<FreeStyleProject> jobs = Triggers.create(j, NAME, TriggerThroughputTest.JOBS);
+        assertTrue("jobs did not subscribe", Triggers.awaitReceiving(jobs, TriggerThroughputTest.TIMEOUT));
+        assertTrue("jobs were not triggered", awaitTriggered(jobs, TriggerThroughputTest.TIMEOUT));
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < TriggerThroughputTest.MESSAGES; i++) {
+            publish(Triggers.jobName(i % jobs.size()), i);
+        }
+        List<CIBuildCause> causes = Triggers.awaitQueued(TriggerThroughputTest.MESSAGES, TriggerThroughputTest.TIMEOUT);
+        long lastQueued = start;
+        for (CIBuildCause cause : causes) {
+            lastQueued = Math.max(lastQueued, cause.getQueued());
+        }
+        double rate = causes.size() * 1000.0 / Math.max(1, lastQueued - start);
+        new PerfReport("conformance-" + getClass().getSimpleName() + "-trigger")
+                .add("jobs", jobs.size())
+                .add("messages", TriggerThroughputTest.MESSAGES)
+                .add("queued", causes.size())
+                .add("triggerRate", rate)
+                .write();
+        assertEquals("builds queued", TriggerThroughputTest.MESSAGES, causes.size());
+        assertTrue("trigger rate " + rate + " below " + getTriggerRateFloor(), rate >= getTriggerRateFloor());
+    }
+
+    @Test
+    public void testInterruptLatency() throws Exception {
+        long idle = interrupt(false);
+        long loaded = interrupt(true);
+        new PerfReport("conformance-" + getClass().getSimpleName() + "-interrupt")
+                .add("idleMs", idle)
+                .add("loadedMs", loaded)
+                .write();
+        assertTrue("idle trigger thread stopped in " + idle + " ms", idle <= getInterruptMillisCeiling());
+        assertTrue("busy trigger thread stopped in " + loaded + " ms", loaded <= getInterruptMillisCeiling());
+    }
+
+    @Test
+    public void testResourceBounds() throws Exception {
+        int openBefore = getOpenConnections();
+        JMSMessagingWorker sender = provider.createWorker("sender");
+        Resources baseline = null;
+        Resources last = null;
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            CITriggerThread thread = new CITriggerThread(provider, "bounded", Triggers.TARGET + " = 'bounded'");
+            thread.start();
+            assertTrue("trigger thread did not subscribe", awaitReceiving(thread));
+            publish("bounded", cycle);
+            assertTrue("send failed", sender.deliver(Collections.singletonList(message())));
+            assertTrue("trigger thread did not stop", stop(thread) >= 0);
+            last = Resources.take();
+            log.info("Cycle " + cycle + ": " + last);
+            if (cycle == WARMUP) {
+                baseline = last;
+            }
+        }
+        new PerfReport("conformance-" + getClass().getSimpleName() + "-resources")
+                .add("baseline", String.valueOf(baseline))
+                .add("last", String.valueOf(last))
+                .write();
+        assertTrue(baseline + " -> " + last, last.getThreads() <= baseline.getThreads() + 4);
+        assertTrue(baseline + " -> " + last, last.getZmqThreads() <= baseline.getZmqThreads() + 2);
+        assertTrue(baseline + " -> " + last, last.getOpenFiles() <= baseline.getOpenFiles() + 16);
+        assertTrue(baseline + " -> " + last, last.getHeap() <= baseline.getHeap() + 32L * 1024 * 1024);
+        if (openBefore >= 0) {
+            assertTrue("connections left open", awaitOpenConnections(openBefore));
+        }
+    }
+
+    @Test
+    public void testReconnection() throws Exception {
+        List<FreeStyleProject> jobs = Triggers.create(j, NAME, 1);
+        assertTrue("job did not subscribe", Triggers.awaitReceiving(jobs, TriggerThroughputTest.TIMEOUT));
+        assertTrue("job was not triggered", awaitTriggered(jobs, TriggerThroughputTest.TIMEOUT));
+        j.jenkins.getQueue().clear();
+
+        stopStandIn();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(OUTAGE));
+        startStandIn();
+        long restarted = System.currentTimeMillis();
+        boolean triggered = awaitTriggered(jobs, getReconnectMillisCeiling());
+        long recovered = System.currentTimeMillis() - restarted;
+        j.jenkins.getQueue().clear();
+
+        // Once reconnected a message triggers once, not once per subscription.
+        publish(Triggers.jobName(0), Integer.MAX_VALUE);
+        Triggers.awaitQueued(1, TriggerThroughputTest.TIMEOUT);
+        Thread.sleep(1000);
+        List<CIBuildCause> causes = Triggers.queuedCauses();
+        new PerfReport("conformance-" + getClass().getSimpleName() + "-reconnect")
+                .add("outageSeconds", OUTAGE)
+                .add("recoveredMs", triggered ? recovered : -1)
+                .add("triggerThreads", getTriggerThreads().size())
+                .write();
+        assertTrue("not triggered " + recovered + " ms after the restart", triggered);
+        assertEquals("builds for one message", 1, causes.size());
+        assertEquals("trigger threads", 1, getTriggerThreads().size());
+    }
+
+    private static OutgoingMessage message() {
+        return new OutgoingMessage(UUID.randomUUID().toString(), "sender", MESSAGE_TYPE.CodeQualityChecksDone,
+                Collections.singletonMap(Triggers.TARGET, "nobody"), "content", null, System.currentTimeMillis());
+    }
+
+    /**
+     * Publishes to every job not triggered yet, until all of them are. Covers
+     * the time for subscribers to join and the messages the stand-in drops
+     * meanwhile.
+     */
+    private boolean awaitTriggered(List<FreeStyleProject> jobs, long timeoutMillis) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < timeoutMillis) {
+            List<String> missing = new ArrayList<String>();
+            for (FreeStyleProject job : jobs) {
+                if (!Triggers.queuedJobs().contains(job.getFullName())) {
+                    missing.add(job.getFullName());
+                }
+            }
+            if (missing.isEmpty()) {
+                j.jenkins.getQueue().clear();
+                return true;
+            }
+            for (String job : missing) {
+                try {
+                    publish(job, -1);
+                } catch (Exception e) {
+                    log.log(Level.FINE, "Unable to publish for " + job, e);
+                }
+            }
+            Thread.sleep(250);
+        }
+        return false;
+    }
+
+    private boolean awaitOpenConnections(int count) throws InterruptedException {
+        for (int i = 0; i < 50 && getOpenConnections() > count; i++) {
+            Thread.sleep(100);
+        }
+        return getOpenConnections() <= count;
+    }
+
+    private static boolean awaitReceiving(CITriggerThread thread) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (thread.getSubscriptionState() != CITriggerThread.SubscriptionState.RECEIVING) {
+            if (System.currentTimeMillis() - start > TriggerThroughputTest.TIMEOUT) {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    /**
+     * Starts a trigger thread, then measures how long it takes to stop, with
+     * other messages flowing or not.
+     */
+    private long interrupt(boolean loaded) throws Exception {
+        CITriggerThread thread = new CITriggerThread(provider, "interrupted", Triggers.TARGET + " = 'interrupted'");
+        thread.start();
+        assertTrue("trigger thread did not subscribe", awaitReceiving(thread));
+        // Let it block in receive.
+        Thread.sleep(1000);
+        Thread traffic = null;
+        final AtomicBoolean flowing = new AtomicBoolean(loaded);
+        if (loaded) {
+            traffic = new Thread("conformance traffic") {
+                @Override
+                public void run() {
+                    for (int i = 0; flowing.get(); i++) {
+                        try {
+                            publish("nobody", i);
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (Exception e) {
+                            log.log(Level.FINE, "Unable to publish", e);
+                        }
+                    }
+                }
+            };
+            traffic.start();
+            Thread.sleep(500);
+        }
+        try {
+            long stopped = stop(thread);
+            assertFalse("trigger thread still running", thread.isAlive());
+            return stopped;
+        } finally {
+            flowing.set(false);
+            if (traffic != null) {
+                traffic.interrupt();
+                traffic.join();
+            }
+        }
+    }
+
+    /**
+     * @return the time the thread took to stop, -1 if it did not within the
+     * test timeout
+     */
+    private static long stop(final CITriggerThread thread) throws InterruptedException {
+        // sendInterrupt() waits for the thread without a timeout.
+        Thread stopper = new Thread("stop " + thread.getName()) {
+            @Override
+            public void run() {
+                thread.sendInterrupt();
+            }
+        };
+        long start = System.currentTimeMillis();
+        stopper.start();
+        stopper.join(TriggerThroughputTest.TIMEOUT);
+        return thread.isAlive() ? -1 : System.currentTimeMillis() - start;
+    }
+}
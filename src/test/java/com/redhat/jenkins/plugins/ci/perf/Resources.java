@@ -0,0 +1,110 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Snapshot of the resources of the test JVM that leak when connections,
+ * sockets or threads are not closed.
+ */
+public final class Resources {
+
+    private final int threads;
+    private final int zmqThreads;
+    private final long openFiles;
+    private final long heap;
+
+    private Resources(int threads, int zmqThreads, long openFiles, long heap) {
+        this.threads = threads;
+        this.zmqThreads = zmqThreads;
+        this.openFiles = openFiles;
+        this.heap = heap;
+    }
+
+    /**
+     * Takes a snapshot after a full GC, so that the heap is what is still
+     * referenced.
+     */
+    public static Resources take() {
+        System.gc();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        int zmq = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            // Every ZMQ context has a reaper and I/O threads.
+            if (thread.getName().startsWith("reaper") || thread.getName().startsWith("iothread")) {
+                zmq++;
+            }
+        }
+        return new Resources(ManagementFactory.getThreadMXBean().getThreadCount(), zmq, openFiles(),
+                memory.getHeapMemoryUsage().getUsed());
+    }
+
+    private static long openFiles() {
+        String[] fds = new File("/proc/self/fd").list();
+        if (fds != null) {
+            return fds.length;
+        }
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        try {
+            Method count = os.getClass().getMethod("getOpenFileDescriptorCount");
+            count.setAccessible(true);
+            return (Long) count.invoke(os);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Threads of the open ZMQ contexts.
+     */
+    public int getZmqThreads() {
+        return zmqThreads;
+    }
+
+    /**
+     * @return -1 if the platform does not tell
+     */
+    public long getOpenFiles() {
+        return openFiles;
+    }
+
+    public long getHeap() {
+        return heap;
+    }
+
+    @Override
+    public String toString() {
+        return "threads=" + threads + " zmqThreads=" + zmqThreads + " openFiles=" + openFiles
+                + " heapMB=" + heap / (1024 * 1024);
+    }
+}
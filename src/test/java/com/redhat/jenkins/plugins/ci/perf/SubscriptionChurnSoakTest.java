@@ -0,0 +1,238 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import com.redhat.jenkins.plugins.ci.CIBuildTrigger;
+import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
+import com.redhat.jenkins.plugins.ci.messaging.ActiveMqMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.FedMsgMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingProvider;
+import com.redhat.jenkins.plugins.ci.messaging.JMSMessagingWorker;
+import com.redhat.jenkins.plugins.ci.messaging.OutgoingMessage;
+import com.redhat.utils.MessageUtils.MESSAGE_TYPE;
+import hudson.model.FreeStyleProject;
+import hudson.util.Secret;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Restarts the triggers of many jobs over and over while messages flow,
+ * sending and waiting for messages in between, and checks that threads, open
+ * files, ZMQ contexts and heap stay bounded. Half the jobs use an embedded
+ * ActiveMQ broker, the other half an in-JVM fedmsg relay.
+ *
+ * Make it a soak with e.g. -Dperf.cycles=500 -Dperf.jobs=40
+ */
+public class SubscriptionChurnSoakTest {
+
+    private static final Logger log = Logger.getLogger(SubscriptionChurnSoakTest.class.getName());
+
+    static final int CYCLES = Integer.getInteger("perf.cycles", 4);
+    /** Cycles before the resources are taken as the baseline. */
+    static final int WARMUP = Math.min(2, CYCLES - 1);
+    static final String TOPIC = "org.fedoraproject.perf";
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    private EmbeddedBroker broker;
+    private FedmsgRelay relay;
+    private AmqPublisher amq;
+    private FedmsgPublisher fedmsg;
+    private volatile boolean flowing;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new EmbeddedBroker("churn");
+        broker.start();
+        relay = new FedmsgRelay();
+        relay.start();
+        amq = new AmqPublisher(broker.getVmUrl(), "CI");
+        fedmsg = new FedmsgPublisher(relay.getPubAddr(), TOPIC);
+        GlobalCIConfiguration.get().addMessageProvider(new ActiveMqMessagingProvider("amq", broker.getVmUrl(), "CI",
+                "admin", Secret.fromString("redhat")));
+        GlobalCIConfiguration.get().addMessageProvider(new FedMsgMessagingProvider("fedmsg", relay.getHubAddr(),
+                relay.getPubAddr(), TOPIC));
+        j.jenkins.setNumExecutors(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        flowing = false;
+        j.jenkins.getQueue().clear();
+        fedmsg.close();
+        amq.close();
+        relay.stop();
+        broker.stop();
+    }
+
+    @Test
+    public void testChurn() throws Exception {
+        int perProvider = Math.max(1, TriggerThroughputTest.JOBS / 2);
+        List<FreeStyleProject> jobs = new ArrayList<FreeStyleProject>();
+        jobs.addAll(Triggers.create(j, "amq", "amq-", perProvider));
+        jobs.addAll(Triggers.create(j, "fedmsg", "fedmsg-", perProvider));
+        assertTrue("jobs did not subscribe", Triggers.awaitReceiving(jobs, TriggerThroughputTest.TIMEOUT));
+        Thread traffic = startTraffic(jobs);
+
+        PerfReport report = new PerfReport("churn");
+        Resources baseline = null;
+        Resources last = null;
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            for (FreeStyleProject job : jobs) {
+                restart(job, cycle);
+            }
+            assertTrue("jobs did not subscribe again", Triggers.awaitReceiving(jobs, TriggerThroughputTest.TIMEOUT));
+            for (String provider : new String[] {"amq", "fedmsg"}) {
+                send(provider);
+                waitForMessage(provider, cycle);
+            }
+            j.jenkins.getQueue().clear();
+            last = Resources.take();
+            log.info("Cycle " + cycle + ": " + last);
+            report.add("cycle" + cycle, last.toString());
+            if (cycle == WARMUP) {
+                baseline = last;
+            }
+        }
+        flowing = false;
+        traffic.join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        assertNotNull(baseline);
+        report.add("messages", sent.get()).write();
+        // Generous slack: only a leak per restart grows past it over many cycles.
+        assertTrue(baseline + " -> " + last, last.getThreads() <= baseline.getThreads() + 10);
+        assertTrue(baseline + " -> " + last, last.getZmqThreads() <= baseline.getZmqThreads() + 4);
+        assertTrue(baseline + " -> " + last, last.getOpenFiles() <= baseline.getOpenFiles() + 32);
+        assertTrue(baseline + " -> " + last, last.getHeap() <= baseline.getHeap() + 64L * 1024 * 1024);
+        assertEquals(jobs.size(), CIBuildTrigger.getTriggerThreads().size());
+    }
+
+    /**
+     * Restarts the trigger as saving the job configuration does. Every other
+     * cycle the selector changes, which replaces the subscription.
+     */
+    private void restart(FreeStyleProject job, int cycle) throws IOException {
+        CIBuildTrigger old = job.getTrigger(CIBuildTrigger.class);
+        String selector = Triggers.TARGET + " = '" + job.getFullName() + "'";
+        if (cycle % 2 == 0) {
+            selector += " OR " + Triggers.TARGET + " = 'nobody'";
+        }
+        old.stop();
+        CIBuildTrigger trigger = new CIBuildTrigger(selector, old.getProviderName());
+        job.addTrigger(trigger);
+        trigger.start(job, false);
+    }
+
+    /**
+     * Publishes to random jobs on both providers until the test ends.
+     */
+    private Thread startTraffic(final List<FreeStyleProject> jobs) {
+        flowing = true;
+        Thread traffic = new Thread("churn traffic") {
+            @Override
+            public void run() {
+                Random random = new Random(0);
+                try {
+                    while (flowing) {
+                        FreeStyleProject job = jobs.get(random.nextInt(jobs.size()));
+                        publish(job.getFullName(), sent.incrementAndGet());
+                        Thread.sleep(20);
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+        traffic.start();
+        return traffic;
+    }
+
+    private void publish(String target, long sequence) throws Exception {
+        if (target.startsWith("amq")) {
+            amq.send(Collections.singletonMap(Triggers.TARGET, target), "{\"sequence\":" + sequence + "}");
+        } else {
+            Map<String, Object> fields = new HashMap<String, Object>();
+            fields.put(Triggers.TARGET, target);
+            fields.put("sequence", sequence);
+            fedmsg.send(fields);
+        }
+    }
+
+    private void send(String provider) {
+        JMSMessagingWorker worker = GlobalCIConfiguration.get().getProvider(provider).createWorker("sender");
+        OutgoingMessage message = new OutgoingMessage(UUID.randomUUID().toString(), "sender",
+                MESSAGE_TYPE.CodeQualityChecksDone, Collections.singletonMap(Triggers.TARGET, "nobody"),
+                "content", null, System.currentTimeMillis());
+        assertTrue("send through " + provider + " failed", worker.deliver(Collections.singletonList(message)));
+    }
+
+    private void waitForMessage(String provider, int cycle) throws Exception {
+        JMSMessagingProvider p = GlobalCIConfiguration.get().getProvider(provider);
+        final JMSMessagingWorker worker = p.createWorker("waiter");
+        final String target = provider + "-waiter-" + cycle;
+        final AtomicReference<String> value = new AtomicReference<String>();
+        Thread waiter = new Thread("waitForMessage " + target) {
+            @Override
+            public void run() {
+                value.set(worker.waitForMessage(null, Triggers.TARGET + " = '" + target + "'", null, 1));
+            }
+        };
+        waiter.start();
+        while (waiter.isAlive()) {
+            try {
+                publish(target, -1);
+            } catch (Exception e) {
+                log.log(Level.FINE, "Unable to publish for " + target, e);
+            }
+            waiter.join(50);
+        }
+        assertNotNull("no message for " + target, value.get());
+    }
+}
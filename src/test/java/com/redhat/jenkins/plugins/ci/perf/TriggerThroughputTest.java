@@ -0,0 +1,150 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import com.redhat.jenkins.plugins.ci.CIBuildCause;
+import com.redhat.jenkins.plugins.ci.GlobalCIConfiguration;
+import com.redhat.jenkins.plugins.ci.messaging.ActiveMqMessagingProvider;
+import hudson.model.FreeStyleProject;
+import hudson.util.Secret;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Trigger throughput and latency against an embedded broker, over vm:// and
+ * over tcp://localhost. No executor runs the builds, so that only receiving,
+ * matching and queuing are measured.
+ *
+ * The defaults keep it short, scale it with e.g.
+ * -Dperf.jobs=50 -Dperf.messages=10000 -Dperf.rate=500
+ */
+public class TriggerThroughputTest {
+
+    static final int JOBS = Integer.getInteger("perf.jobs", 5);
+    static final int MESSAGES = Integer.getInteger("perf.messages", 100);
+    /** Messages published per second. */
+    static final int RATE = Integer.getInteger("perf.rate", 50);
+    static final long TIMEOUT = TimeUnit.SECONDS.toMillis(Integer.getInteger("perf.timeout", 120));
+
+    @Rule
+    public final JenkinsRule j = new JenkinsRule();
+
+    private EmbeddedBroker broker;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new EmbeddedBroker("throughput");
+        broker.start();
+        j.jenkins.setNumExecutors(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        j.jenkins.getQueue().clear();
+        broker.stop();
+    }
+
+    @Test
+    public void testVm() throws Exception {
+        run("vm", broker.getVmUrl());
+    }
+
+    @Test
+    public void testTcp() throws Exception {
+        run("tcp", broker.getTcpUrl());
+    }
+
+    private void run(String transport, String url) throws Exception {
+        GlobalCIConfiguration.get().addMessageProvider(new ActiveMqMessagingProvider("perf", url, "CI", "admin",
+                Secret.fromString("redhat")));
+        int threadsBefore = PerfReport.threadCount();
+        List<FreeStyleProject> jobs = Triggers.create(j, "perf", JOBS);
+        assertTrue("jobs did not subscribe", Triggers.awaitReceiving(jobs, TIMEOUT));
+        int connections = broker.getConnections();
+        int threadsSubscribed = PerfReport.threadCount();
+
+        long started = System.currentTimeMillis();
+        publish(url, MESSAGES, RATE, JOBS);
+        long published = System.currentTimeMillis();
+        List<CIBuildCause> causes = Triggers.awaitQueued(MESSAGES, TIMEOUT);
+
+        List<Long> receiveToQueue = new ArrayList<Long>();
+        List<Long> publishToQueue = new ArrayList<Long>();
+        long lastQueued = started;
+        for (CIBuildCause cause : causes) {
+            receiveToQueue.add(cause.getQueued() - cause.getReceived());
+            publishToQueue.add(cause.getQueued() - cause.getPublished());
+            lastQueued = Math.max(lastQueued, cause.getQueued());
+        }
+        new PerfReport("throughput-" + transport)
+                .add("jobs", JOBS)
+                .add("messages", MESSAGES)
+                .add("publishRate", MESSAGES * 1000.0 / Math.max(1, published - started))
+                .add("triggerRate", causes.size() * 1000.0 / Math.max(1, lastQueued - started))
+                .addLatencies("receiveToQueueMs", receiveToQueue)
+                .addLatencies("publishToQueueMs", publishToQueue)
+                .add("threads.before", threadsBefore)
+                .add("threads.subscribed", threadsSubscribed)
+                .add("threads.after", PerfReport.threadCount())
+                .add("broker.connections", connections)
+                .write();
+        assertEquals("builds queued", MESSAGES, causes.size());
+    }
+
+    /**
+     * Publishes count messages at the given rate, each for one of the jobs in
+     * turn, over a single connection.
+     */
+    static void publish(String url, int count, int rate, int jobs) throws Exception {
+        AmqPublisher publisher = new AmqPublisher(url, "CI");
+        try {
+            Map<String, String> properties = new HashMap<String, String>();
+            properties.put("CI_TYPE", "code-quality-checks-done");
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                long due = start + TimeUnit.SECONDS.toNanos(i) / rate;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                properties.put(Triggers.TARGET, Triggers.jobName(i % jobs));
+                publisher.send(properties, "{\"sequence\":" + i + "}");
+            }
+        } finally {
+            publisher.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.redhat.jenkins.plugins.ci.perf;
+
+import com.redhat.jenkins.plugins.ci.CIBuildCause;
+import com.redhat.jenkins.plugins.ci.CIBuildTrigger;
+import com.redhat.jenkins.plugins.ci.CITriggerThread;
+import hudson.model.Cause;
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Queue;
+import hudson.model.StringParameterDefinition;
+import jenkins.model.Jenkins;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+/**
+ * Jobs triggered by CI messages, for the harnesses.
+ */
+public final class Triggers {
+
+    /** Message property naming the job a message is for. */
+    public static final String TARGET = "TARGET";
+
+    private Triggers() {
+    }
+
+    public static String jobName(int i) {
+        return "job-" + i;
+    }
+
+    /**
+     * Creates jobs job-0 to job-(n-1), each triggered by the messages whose
+     * {@link #TARGET} is its name. The message becomes the CI_MESSAGE
+     * parameter, so that every message queues a build of its own.
+     */
+    public static List<FreeStyleProject> create(JenkinsRule j, String providerName, int n) throws Exception {
+        return create(j, providerName, "job-", n);
+    }
+
+    /**
+     * Same for jobs named prefix0 to prefix(n-1).
+     */
+    public static List<FreeStyleProject> create(JenkinsRule j, String providerName, String prefix, int n) throws Exception {
+        List<FreeStyleProject> jobs = new ArrayList<FreeStyleProject>();
+        for (int i = 0; i < n; i++) {
+            FreeStyleProject job = j.createFreeStyleProject(prefix + i);
+            job.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("CI_MESSAGE", "")));
+            CIBuildTrigger trigger = new CIBuildTrigger(TARGET + " = '" + prefix + i + "'", providerName);
+            job.addTrigger(trigger);
+            trigger.start(job, true);
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    /**
+     * Number of trigger threads of the jobs in the given state.
+     */
+    public static int count(List<FreeStyleProject> jobs, CITriggerThread.SubscriptionState state) {
+        Map<String, CITriggerThread> threads = CIBuildTrigger.getTriggerThreads();
+        int n = 0;
+        for (FreeStyleProject job : jobs) {
+            CITriggerThread thread = threads.get(job.getFullName());
+            if (thread != null && thread.getSubscriptionState() == state) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return whether all of the jobs were receiving within the timeout
+     */
+    public static boolean awaitReceiving(List<FreeStyleProject> jobs, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (count(jobs, CITriggerThread.SubscriptionState.RECEIVING) < jobs.size()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    /**
+     * Causes of the builds waiting in the queue, with no executor to run
+     * them.
+     */
+    public static List<CIBuildCause> queuedCauses() {
+        List<CIBuildCause> causes = new ArrayList<CIBuildCause>();
+        for (Queue.Item item : Jenkins.getInstance().getQueue().getItems()) {
+            for (Cause cause : item.getCauses()) {
+                if (cause instanceof CIBuildCause) {
+                    causes.add((CIBuildCause) cause);
+                }
+            }
+        }
+        return causes;
+    }
+
+    /**
+     * Names of the jobs with a build in the queue.
+     */
+    public static Set<String> queuedJobs() {
+        Set<String> jobs = new HashSet<String>();
+        for (Queue.Item item : Jenkins.getInstance().getQueue().getItems()) {
+            if (item.task instanceof Job) {
+                jobs.add(((Job<?, ?>) item.task).getFullName());
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Number of times each message was queued, by CI_MESSAGE. Builds of the
+     * same message are folded into one queue item, which keeps their causes.
+     */
+    public static Map<String, Integer> queuedMessages() {
+        Map<String, Integer> messages = new HashMap<String, Integer>();
+        for (Queue.Item item : Jenkins.getInstance().getQueue().getItems()) {
+            ParametersAction parameters = item.getAction(ParametersAction.class);
+            ParameterValue message = parameters == null ? null : parameters.getParameter("CI_MESSAGE");
+            if (message == null) {
+                continue;
+            }
+            int count = 0;
+            for (Cause cause : item.getCauses()) {
+                if (cause instanceof CIBuildCause) {
+                    count++;
+                }
+            }
+            String key = String.valueOf(message.getValue());
+            Integer before = messages.get(key);
+            messages.put(key, before == null ? count : before + count);
+        }
+        return messages;
+    }
+
+    /**
+     * @return the causes, once there are at least count or the timeout expired
+     */
+    public static List<CIBuildCause> awaitQueued(int count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        List<CIBuildCause> causes = queuedCauses();
+        while (causes.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            causes = queuedCauses();
+        }
+        return causes;
+    }
+}